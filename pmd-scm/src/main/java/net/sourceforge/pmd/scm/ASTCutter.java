@@ -4,24 +4,20 @@
 
 package net.sourceforge.pmd.scm;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
-import net.sourceforge.pmd.document.DeleteDocumentOperation;
-import net.sourceforge.pmd.document.DocumentFile;
-import net.sourceforge.pmd.document.DocumentOperationsApplierForNonOverlappingRegions;
 import net.sourceforge.pmd.lang.Parser;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.ParseException;
@@ -42,24 +38,148 @@ import net.sourceforge.pmd.lang.ast.ParseException;
  *
  * Please note, that this operation is <b>not required</b> to somehow retain formatting or create
  * nicely formatted files.
+ *
+ * Both the committed and the candidate texts are kept in memory. The scratch file on disk is only updated
+ * by {@link #syncScratchFile()}, when somebody (such as an external compiler) is going to read it.
  */
 public class ASTCutter implements AutoCloseable {
     private static final String WHITESPACE_CHARS = " \t";
+    private static final int RECENT_PARSES_COUNT = 8;
 
-    private final Path lastCommitted = Files.createTempFile("pmd-", ".tmp");
     private final Parser parser;
     private final Charset charset;
 
     private final Path scratchFile;
     private Node currentRoot;
-    private final Set<Node> currentDocumentNodes = new HashSet<>();
+    private TreeSnapshot snapshot;
     private final boolean validateNodes;
 
+    private String committedText;
+    // Offsets of the line starts in the committed text
+    private int[] committedLineOffsets;
+    private Fingerprint committedFingerprint;
+
+    // Last hashed candidate text, compared by identity
+    private String fingerprintedText;
+    private Fingerprint scratchFingerprint;
+    private final FingerprintHasher hasher = new FingerprintHasher();
+    private String scratchText;
+    // What the scratch file on disk contains now
+    private String writtenText;
+
+    /**
+     * Roots of the recently parsed texts, so that committing the text that was just
+     * checked for parseability (or a variant that reappears) does not parse it again.
+     * Guarded by itself, since workers check their variants concurrently.
+     */
+    private final Map<Fingerprint, Node> recentParses = new LinkedHashMap<Fingerprint, Node>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Fingerprint, Node> eldest) {
+            return size() > RECENT_PARSES_COUNT;
+        }
+    };
+
+    /**
+     * Regions of the committed text to be deleted, as pairs of absolute char offsets (the end is exclusive).
+     *
+     * Tree traversals produce them in document order, so they can be applied in a single pass.
+     */
+    private static final class Cuts {
+        private int[] offsets = new int[16];
+        private int length;
+        // whether each region starts no earlier than the previous one ends
+        private boolean ordered = true;
+
+        void add(int begin, int end) {
+            if (length == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+            if (length > 0 && begin < offsets[length - 1]) {
+                ordered = false;
+            }
+            offsets[length++] = begin;
+            offsets[length++] = end;
+        }
+
+        /**
+         * Sorts the regions by their start, only needed if nodes are reported out of order.
+         *
+         * @throws IllegalArgumentException if some regions overlap
+         */
+        void sort() {
+            long[] packed = new long[length / 2];
+            for (int i = 0; i < packed.length; ++i) {
+                packed[i] = (long) offsets[2 * i] << 32 | offsets[2 * i + 1] & 0xFFFFFFFFL;
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < packed.length; ++i) {
+                offsets[2 * i] = (int) (packed[i] >>> 32);
+                offsets[2 * i + 1] = (int) packed[i];
+                if (i > 0 && offsets[2 * i] < offsets[2 * i - 1]) {
+                    throw new IllegalArgumentException("Regions between document operations overlap: ["
+                            + offsets[2 * i - 2] + ", " + offsets[2 * i - 1] + ") and ["
+                            + offsets[2 * i] + ", " + offsets[2 * i + 1] + ")");
+                }
+            }
+            ordered = true;
+        }
+
+        /**
+         * Deletes the regions from the text in a single pass.
+         */
+        String applyTo(String text) {
+            if (!ordered) {
+                sort();
+            }
+            StringBuilder result = new StringBuilder(text.length());
+            int position = 0;
+            for (int i = 0; i < length; i += 2) {
+                result.append(text, position, offsets[i]);
+                position = offsets[i + 1];
+            }
+            result.append(text, position, text.length());
+            return result.toString();
+        }
+
+        /**
+         * Get the total length of the regions.
+         */
+        int getTotalLength() {
+            int result = 0;
+            for (int i = 0; i < length; i += 2) {
+                result += offsets[i + 1] - offsets[i];
+            }
+            return result;
+        }
+
+        /**
+         * Get the same fingerprint as {@link #fingerprint(FingerprintHasher, String)}
+         * of the result of {@link #applyTo(String)} would be, without producing the result.
+         */
+        Fingerprint hashResult(String text, FingerprintHasher hasher) {
+            if (!ordered) {
+                sort();
+            }
+            int resultLength = text.length();
+            for (int i = 0; i < length; i += 2) {
+                resultLength -= offsets[i + 1] - offsets[i];
+            }
+            hasher.update(resultLength);
+            int position = 0;
+            for (int i = 0; i < length; i += 2) {
+                hasher.update(text, position, offsets[i]);
+                position = offsets[i + 1];
+            }
+            hasher.update(text, position, text.length());
+            return hasher.finish();
+        }
+    }
+
     /**
      * Create ASTCutter instance
      * @param parser        parser for the original and intermediate source files
      * @param charset       charset of source to be cut
-     * @param scratchFile   file to be modified in-place
+     * @param scratchFile   file to be modified in-place, initially containing the source to be cut
      * @param validateNodes silently ignore invalid nodes
      */
     public ASTCutter(Parser parser, Charset charset, Path scratchFile, boolean validateNodes) throws IOException {
@@ -67,6 +187,8 @@ public class ASTCutter implements AutoCloseable {
         this.charset = charset;
         this.scratchFile = scratchFile;
         this.validateNodes = validateNodes;
+        scratchText = new String(Files.readAllBytes(scratchFile), charset);
+        writtenText = scratchText;
     }
 
     public ASTCutter(Parser parser, Charset charset, Path scratchFile) throws IOException {
@@ -77,22 +199,54 @@ public class ASTCutter implements AutoCloseable {
         return scratchFile;
     }
 
-    public Set<Node> getAllNodes() {
-        return Collections.unmodifiableSet(currentDocumentNodes);
+    /**
+     * Get the current candidate text, that is not necessarily written to the scratch file yet.
+     */
+    public String getScratchContents() {
+        return scratchText;
     }
 
     /**
-     * Converts list of AST {@link Node}s to be cut off into List of {@link DeleteDocumentOperation}s dealing with
-     * the plain text file representation.
+     * Get the last committed text.
+     */
+    String getCommittedContents() {
+        return committedText;
+    }
+
+    /**
+     * Get the size of the last committed text in bytes.
+     */
+    public int getCommittedSize() {
+        return committedText.getBytes(charset).length;
+    }
+
+    /**
+     * Get the flattened committed AST, node sets passed to the cutter are bitsets over its indices.
+     */
+    TreeSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Converts the set of AST nodes to be cut off into {@link Cuts} of the plain text representation.
      *
-     * @param treeRoot     the root of AST corresponding to the file being processed
-     * @param deletedNodes the nodes marked for removal (all elements are expected to be accessible from the <code>treeRoot</code>)
-     * @return a list of non-overlapping operations that, being applied on the file parsed as <code>treeRoot</code>,
-     *         would generate a file that is parsed to <code>treeRoot</code> with all marked codes being cut off recursively.
-     */
-    private List<DeleteDocumentOperation> calculateTreeCutting(Node treeRoot, Collection<Node> deletedNodes) {
-        ArrayList<DeleteDocumentOperation> result = new ArrayList<>();
-        calculateTreeCutting(result, treeRoot, new HashSet<>(deletedNodes));
+     * @param deletedNodes indices of the nodes marked for removal in the current {@link TreeSnapshot}
+     * @return non-overlapping regions that, being deleted from the committed text,
+     *         would produce a text that is parsed to the committed AST with all marked codes being cut off recursively.
+     */
+    private Cuts calculateTreeCutting(BitSet deletedNodes) {
+        Cuts result = new Cuts();
+        int index = deletedNodes.nextSetBit(0);
+        while (index >= 0) {
+            // Technically, invalid node can lead to infinite loop when input hashing is off
+            if (snapshot.isCuttable(index)) {
+                // not recursing, deleting the whole range
+                result.add(snapshot.getBeginOffset(index), snapshot.getEndOffset(index));
+                index = deletedNodes.nextSetBit(snapshot.getSubtreeEnd(index));
+            } else {
+                index = deletedNodes.nextSetBit(index + 1);
+            }
+        }
         return result;
     }
 
@@ -106,33 +260,18 @@ public class ASTCutter implements AutoCloseable {
                 || (node.getBeginLine() == node.getEndLine() && node.getBeginColumn() < node.getEndColumn());
     }
 
-    private void calculateTreeCutting(List<DeleteDocumentOperation> result, Node node, Set<Node> deletedNodes) {
-        // Technically, invalid node can lead to infinite loop when input hashing is off
-        if (deletedNodes.contains(node) && (!validateNodes || nodeIsValid(node))) {
-            // not recursing, deleting the whole range
-            result.add(new DeleteDocumentOperation(
-                    node.getBeginLine() - 1, node.getEndLine() - 1,
-                    node.getBeginColumn() - 1, node.getEndColumn()));
-        } else {
-            for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
-                calculateTreeCutting(result, node.jjtGetChild(i), deletedNodes);
-            }
-        }
-    }
-
     /**
      * Performs some conservative trimming of large parts of source code
      * not belonging to the AST (such as block comments).
      */
-    private List<DeleteDocumentOperation> calculateTreeHolesTrimming() throws IOException {
-        List<DeleteDocumentOperation> result = new ArrayList<>();
-        List<String> lines = Files.readAllLines(lastCommitted, charset);
-        Node rootNode = load(lastCommitted);
-        calculateTreeHolesTrimming(result, lines, rootNode, -1, 0, false);
+    private Cuts calculateTreeHolesTrimming() {
+        Cuts result = new Cuts();
+        List<String> lines = splitLines(committedText);
+        calculateTreeHolesTrimming(result, lines, currentRoot, -1, 0, false);
         return result;
     }
 
-    private void calculateTreeHolesTrimming(List<DeleteDocumentOperation> result, List<String> lines, Node node, final int prevEndLine, final int prevEndColumn, final boolean wasJustTrimmed) {
+    private void calculateTreeHolesTrimming(Cuts result, List<String> lines, Node node, final int prevEndLine, final int prevEndColumn, final boolean wasJustTrimmed) {
         final int curBeginLine = node.getBeginLine() - 1;
         final int curBeginColumn = node.getBeginColumn() - 1;
 
@@ -167,7 +306,7 @@ public class ASTCutter implements AutoCloseable {
                 }
             }
             if (okToTrim) {
-                result.add(new DeleteDocumentOperation(prevEndLine + 1, endDeleteLine, 0, endDeleteColumn));
+                result.add(getOffset(prevEndLine + 1, 0), getOffset(endDeleteLine, endDeleteColumn));
                 curEndLine = endDeleteLine;
                 curEndColumn = endDeleteColumn;
                 wasTrimmedHere = true;
@@ -201,55 +340,150 @@ public class ASTCutter implements AutoCloseable {
     }
 
     /**
-     * Trims lines of scratch file that contain only whitespace characters.
+     * Splits the text into lines the same way as {@link Files#readAllLines(Path, Charset)} does.
      */
-    private void trimEmptyLinesInPlace(Path trimmedFile) throws IOException {
-        List<String> lines = Files.readAllLines(trimmedFile, charset);
-        try (BufferedWriter writer = Files.newBufferedWriter(trimmedFile, charset)) {
-            for (String line : lines) {
-                if (!allCharsFrom(line, WHITESPACE_CHARS)) {
-                    writer.write(line);
-                    writer.write('\n');
+    private static List<String> splitLines(String text) {
+        List<String> result = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                result.add(text.substring(lineStart, i));
+                if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    i += 1;
                 }
+                lineStart = i + 1;
             }
         }
+        if (lineStart < text.length()) {
+            result.add(text.substring(lineStart));
+        }
+        return result;
     }
 
     /**
-     * Populates set of nodes of current document with nodes from this subtree.
+     * Get the offsets of line starts, the same line separators are recognized as by the parsers.
      */
-    private void collectAllNodes(Node subtree) {
-        currentDocumentNodes.add(subtree);
-        for (int i = 0; i < subtree.jjtGetNumChildren(); ++i) {
-            collectAllNodes(subtree.jjtGetChild(i));
+    private static int[] getLineOffsets(String text) {
+        int[] result = new int[16];
+        int lineCount = 1;
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n')) {
+                if (lineCount == result.length) {
+                    result = Arrays.copyOf(result, 2 * result.length);
+                }
+                result[lineCount++] = i + 1;
+            }
         }
+        return Arrays.copyOf(result, lineCount);
     }
 
     /**
-     * Loads the specified file with the parser, does not change ASTCutter state.
+     * Converts 0-based line and column in the committed text to an absolute offset.
      */
-    private Node load(Path from) throws IOException {
-        try (BufferedReader reader = Files.newBufferedReader(from, charset)) {
-            return parser.parse(from.toString(), reader);
+    private int getOffset(int line, int column) {
+        if (line < 0 || line >= committedLineOffsets.length) {
+            throw new IllegalArgumentException("Line " + (line + 1) + " is out of the text");
         }
+        return Math.min(committedLineOffsets[line] + column, committedText.length());
     }
 
-    public void hashScratchFile(MessageDigest md) throws IOException {
-        byte[] bytes = Files.readAllBytes(scratchFile);
-        md.update(bytes);
+    /**
+     * Parses the specified text with the parser, unless it was parsed recently.
+     *
+     * Does not change ASTCutter state except for remembering the result.
+     */
+    private Node load(Parser withParser, String text) {
+        Fingerprint key = fingerprint(new FingerprintHasher(), text);
+        synchronized (recentParses) {
+            Node root = recentParses.get(key);
+            if (root != null) {
+                return root;
+            }
+        }
+        Node root = withParser.parse(scratchFile.toString(), new StringReader(text));
+        synchronized (recentParses) {
+            recentParses.put(key, root);
+        }
+        return root;
     }
 
     /**
-     * Checks that current scratch file contents can be parsed by the current parser.
+     * Hashes a single file, fingerprints of all the files are hashed together then.
+     */
+    static Fingerprint fingerprint(FingerprintHasher withHasher, String text) {
+        // so that moving text between files always changes the hash
+        withHasher.update(text.length());
+        withHasher.update(text);
+        return withHasher.finish();
+    }
+
+    Fingerprint getScratchFingerprint() {
+        if (scratchText == committedText) {
+            return committedFingerprint;
+        }
+        if (scratchText != fingerprintedText) {
+            scratchFingerprint = fingerprint(hasher, scratchText);
+            fingerprintedText = scratchText;
+        }
+        return scratchFingerprint;
+    }
+
+    /**
+     * Get the fingerprint of the text {@link #trimSource(BitSet)} would return without producing it,
+     * so already checked variants can be skipped cheaply.
+     *
+     * Can be called concurrently as long as every caller uses its own hasher.
+     */
+    Fingerprint predictFingerprint(BitSet nodesToRemove, FingerprintHasher withHasher) {
+        if (nodesToRemove.isEmpty()) {
+            return committedFingerprint;
+        }
+        return calculateTreeCutting(nodesToRemove).hashResult(committedText, withHasher);
+    }
+
+    /**
+     * Get how many characters of the committed text {@link #trimSource(BitSet)} would drop.
+     */
+    int predictRemovedLength(BitSet nodesToRemove) {
+        return calculateTreeCutting(nodesToRemove).getTotalLength();
+    }
+
+    /**
+     * Writes the current candidate text to the scratch file, unless it is already there.
+     */
+    public void syncScratchFile() throws IOException {
+        if (!scratchText.equals(writtenText)) {
+            Files.write(scratchFile, scratchText.getBytes(charset));
+            writtenText = scratchText;
+        }
+    }
+
+    /**
+     * Checks that current scratch contents can be parsed by the current parser.
      *
      * It is generally a waste of time to spawn the entire compiler if even SCM cannot
      * parse current input. Especially, because we need to load it anyway if the invariant
      * would hold AND we want to proceed...
      */
-    public boolean isScratchFileParseable() throws IOException {
+    public boolean isScratchFileParseable() {
+        return isParseable(parser, scratchText);
+    }
+
+    /**
+     * Checks that some variant of the text can be parsed.
+     *
+     * Parsers are not thread-safe, so concurrent callers should pass their own parser instances.
+     */
+    public boolean isParseable(Parser withParser, String text) {
+        if (text == committedText) {
+            // untouched by the variant
+            return true;
+        }
         try {
-            // result is unused
-            load(scratchFile);
+            // result is remembered for commitChange()
+            load(withParser, text);
         } catch (ParseException ex) {
             return false;
         }
@@ -259,16 +493,28 @@ public class ASTCutter implements AutoCloseable {
     // Root node prepared to be committed
     private Node preparedRoot;
 
-    private void parseChanged() throws IOException {
-        preparedRoot = load(scratchFile);
+    private void parseChanged(Parser withParser) {
+        preparedRoot = load(withParser, scratchText);
+    }
+
+    /**
+     * Whether the intermediate text differs from the committed one, that is the file is touched by the variant.
+     */
+    boolean isChanged() {
+        return scratchText != committedText;
     }
 
-    private Node commit() throws IOException {
+    private Node commit() {
+        if (preparedRoot == currentRoot) {
+            // unchanged, keep the snapshot
+            return currentRoot;
+        }
         currentRoot = preparedRoot;
-        Files.copy(scratchFile, lastCommitted, StandardCopyOption.REPLACE_EXISTING);
+        committedText = scratchText;
+        committedLineOffsets = getLineOffsets(committedText);
+        committedFingerprint = fingerprint(hasher, committedText);
 
-        currentDocumentNodes.clear();
-        collectAllNodes(currentRoot);
+        snapshot = new TreeSnapshot(currentRoot, committedLineOffsets, committedText.length(), validateNodes);
 
         return currentRoot;
     }
@@ -282,11 +528,42 @@ public class ASTCutter implements AutoCloseable {
      * Atomically commits changes to multiple files in the meaning
      * of the commitChange() method.
      */
-    public static List<Node> commitAll(List<ASTCutter> cutters) throws IOException {
+    public static List<Node> commitAll(List<ASTCutter> cutters) {
+        return commitAll(cutters, null);
+    }
+
+    /**
+     * Like {@link #commitAll(List)}, but parses the files simultaneously.
+     *
+     * @param pool Pool to parse the files with or <code>null</code> to parse them one by one
+     */
+    static List<Node> commitAll(List<ASTCutter> cutters, ParsingPool pool) {
         List<Node> result = new ArrayList<>();
+        List<ASTCutter> changed = new ArrayList<>();
+        for (ASTCutter cutter : cutters) {
+            if (cutter.isChanged() || cutter.currentRoot == null) {
+                changed.add(cutter);
+            } else {
+                cutter.preparedRoot = cutter.currentRoot;
+            }
+        }
         try {
-            for (ASTCutter cutter : cutters) {
-                cutter.parseChanged();
+            if (pool != null && changed.size() > 1) {
+                boolean parsed = pool.applyToAll(changed, new ParsingPool.CutterAction() {
+                    @Override
+                    public boolean apply(ASTCutter cutter, Parser parser) {
+                        cutter.parseChanged(parser);
+                        return true;
+                    }
+                });
+                if (!parsed) {
+                    // interrupted
+                    return null;
+                }
+            } else {
+                for (ASTCutter cutter : changed) {
+                    cutter.parseChanged(cutter.parser);
+                }
             }
             // Either thrown, or everything was parsed OK
             for (ASTCutter cutter : cutters) {
@@ -309,7 +586,7 @@ public class ASTCutter implements AutoCloseable {
      *
      * @return The root node of the "new current" source state or <code>null</code> if cannot parse
      */
-    public Node commitChange() throws IOException {
+    public Node commitChange() {
         List<ASTCutter> args = new ArrayList<>();
         args.add(this);
         List<Node> result = commitAll(args);
@@ -317,48 +594,91 @@ public class ASTCutter implements AutoCloseable {
     }
 
     /**
-     * Rolls back intermediate file to the last <i>committed</i> state.
+     * Rolls back intermediate text to the last <i>committed</i> state.
      */
-    public void rollbackChange() throws IOException {
-        Files.copy(lastCommitted, scratchFile, StandardCopyOption.REPLACE_EXISTING);
+    public void rollbackChange() {
+        scratchText = committedText;
     }
 
-    private void deleteRegions(List<DeleteDocumentOperation> operations) throws IOException {
-        try (DocumentFile document = new DocumentFile(scratchFile.toFile(), charset)) {
-            DocumentOperationsApplierForNonOverlappingRegions applier = new DocumentOperationsApplierForNonOverlappingRegions(document);
-            for (DeleteDocumentOperation operation : operations) {
-                applier.addDocumentOperation(operation);
-            }
-            applier.apply();
-        }
+    /**
+     * Replaces the intermediate text with some variant, such as one produced by {@link #trimSource(Collection)}.
+     */
+    public void setScratchContents(String text) {
+        scratchText = text;
     }
 
     /**
-     * Rolls back intermediate file, then tries to trim it once again.
+     * Rolls back intermediate text, then tries to trim it once again.
      *
-     * @param nodesToRemove nodes that have to be dropped from the resulting file together with their descendants.
+     * @param nodesToRemove nodes that have to be dropped from the resulting text together with their descendants.
      *                      They should be accessible from the root returned by the last <code>commitChange</code> call!
      */
-    public void writeTrimmedSource(Collection<Node> nodesToRemove) throws IOException {
-        rollbackChange();
+    public void writeTrimmedSource(Collection<Node> nodesToRemove) {
+        scratchText = trimSource(nodesToRemove);
+    }
+
+    /**
+     * Like {@link #writeTrimmedSource(Collection)}, but just returns the result, leaving the intermediate text intact.
+     *
+     * Does not change the ASTCutter state, so can be called concurrently
+     * as long as nothing is committed meanwhile.
+     */
+    public String trimSource(Collection<Node> nodesToRemove) {
+        BitSet indices = snapshot.indicesOf(nodesToRemove);
+        assert indices.cardinality() == new HashSet<>(nodesToRemove).size();
 
-        assert currentDocumentNodes.containsAll(nodesToRemove);
+        return trimSource(indices);
+    }
 
-        deleteRegions(calculateTreeCutting(currentRoot, nodesToRemove));
+    /**
+     * Like {@link #trimSource(Collection)}, with the nodes specified by their indices in {@link #getSnapshot()}.
+     */
+    String trimSource(BitSet nodesToRemove) {
+        if (nodesToRemove.isEmpty()) {
+            // keep the very same string, so the file is known to be untouched
+            return committedText;
+        }
+        return calculateTreeCutting(nodesToRemove).applyTo(committedText);
     }
 
-    public void writeCleanedUpSource() throws IOException {
-        rollbackChange();
-        deleteRegions(calculateTreeHolesTrimming());
+    /**
+     * Get the committed text with the node replaced by its descendant, that is the rest of the node's text cut off.
+     *
+     * Does not change the ASTCutter state, like {@link #trimSource(BitSet)}.
+     *
+     * @param node        index of the node being replaced in {@link #getSnapshot()}
+     * @param replacement index of some descendant of that node
+     * @return the committed text itself if either of the nodes cannot be cut
+     */
+    String replaceNode(int node, int replacement) {
+        if (!snapshot.isCuttable(node) || !snapshot.isCuttable(replacement)) {
+            return committedText;
+        }
+        Cuts cuts = new Cuts();
+        cuts.add(snapshot.getBeginOffset(node), snapshot.getBeginOffset(replacement));
+        cuts.add(snapshot.getEndOffset(replacement), snapshot.getEndOffset(node));
+        return cuts.applyTo(committedText);
+    }
+
+    public void writeCleanedUpSource() {
+        scratchText = calculateTreeHolesTrimming().applyTo(committedText);
     }
 
-    public void writeWithoutEmptyLines() throws IOException {
-        rollbackChange();
-        trimEmptyLinesInPlace(scratchFile);
+    /**
+     * Replaces the intermediate text with the committed one without lines containing only whitespace characters.
+     */
+    public void writeWithoutEmptyLines() {
+        StringBuilder result = new StringBuilder(committedText.length());
+        for (String line : splitLines(committedText)) {
+            if (!allCharsFrom(line, WHITESPACE_CHARS)) {
+                result.append(line).append('\n');
+            }
+        }
+        scratchText = result.toString();
     }
 
     @Override
-    public void close() throws Exception {
-        Files.delete(lastCommitted);
+    public void close() {
+        // nothing is held open
     }
 }
@@ -0,0 +1,168 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.pmd.scm.strategies.MinimizationStrategyConfiguration;
+
+/**
+ * The state of a minimization run persisted to continue it in another process.
+ *
+ * The state directory contains a single file that is replaced atomically, so a run killed
+ * at any moment leaves either the previous or the new checkpoint. A checkpoint is only
+ * resumed by a run with the same inputs and options, otherwise it is ignored.
+ */
+final class Checkpoint {
+    private static final String STATE_FILE_NAME = "checkpoint.bin";
+    private static final String TEMPORARY_FILE_NAME = "checkpoint.tmp";
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Everything needed to continue the run from a pass boundary.
+     */
+    static final class State {
+        int stage;
+        int passNumber;
+        int originalSize;
+        int originalNodeCount;
+        /** Committed contents of the output files, in the source encoding */
+        final List<byte[]> files = new ArrayList<>();
+        /** Set of the checked variants, see {@link FingerprintSet#save(java.io.DataOutput)} */
+        byte[] knownVariants;
+        /** Calibration of the invariant checker made on the original input */
+        byte[] calibration;
+        /** States of the strategies in the order they are run */
+        final List<byte[]> strategies = new ArrayList<>();
+    }
+
+    private final Path directory;
+    private final Fingerprint configurationKey;
+
+    private int savedCount;
+
+    Checkpoint(Path directory, SCMConfiguration configuration) throws IOException {
+        this.directory = directory;
+        this.configurationKey = describeConfiguration(configuration);
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Hashes everything the minimization depends on: the invariant and strategy options as well as the input files.
+     */
+    private static Fingerprint describeConfiguration(SCMConfiguration configuration) throws IOException {
+        StringBuilder sb = new StringBuilder(InvariantResultCache.describeConfiguration(configuration));
+        for (int i = 0; i < configuration.getStrategyNames().size(); ++i) {
+            sb.append(configuration.getStrategyNames().get(i)).append('\n');
+            MinimizationStrategyConfiguration strategyConfiguration = configuration.getStrategyConfigs().get(i);
+            InvariantResultCache.describeParameters(sb, strategyConfiguration);
+        }
+        FingerprintHasher hasher = new FingerprintHasher();
+        hasher.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        for (SCMConfiguration.FileMapping mapping : configuration.getFileMappings()) {
+            hasher.update(Files.readAllBytes(mapping.input));
+        }
+        return hasher.finish();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+
+    /**
+     * Replaces the saved state with the passed one.
+     */
+    void save(State state) throws IOException {
+        Path temporaryFile = directory.resolve(TEMPORARY_FILE_NAME);
+        try (OutputStream stream = Files.newOutputStream(temporaryFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(configurationKey.high);
+            out.writeLong(configurationKey.low);
+            out.writeInt(state.stage);
+            out.writeInt(state.passNumber);
+            out.writeInt(state.originalSize);
+            out.writeInt(state.originalNodeCount);
+            out.writeInt(state.files.size());
+            for (byte[] file : state.files) {
+                writeBytes(out, file);
+            }
+            writeBytes(out, state.knownVariants);
+            writeBytes(out, state.calibration);
+            out.writeInt(state.strategies.size());
+            for (byte[] strategy : state.strategies) {
+                writeBytes(out, strategy);
+            }
+        }
+        Path stateFile = directory.resolve(STATE_FILE_NAME);
+        try {
+            Files.move(temporaryFile, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporaryFile, stateFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        savedCount += 1;
+    }
+
+    /**
+     * Reads the saved state.
+     *
+     * @return <code>null</code> if there is no checkpoint or it was made by a run with other inputs or options
+     */
+    State load() throws IOException {
+        Path stateFile = directory.resolve(STATE_FILE_NAME);
+        if (!Files.exists(stateFile)) {
+            return null;
+        }
+        try (InputStream stream = Files.newInputStream(stateFile);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readInt() != FORMAT_VERSION
+                    || in.readLong() != configurationKey.high || in.readLong() != configurationKey.low) {
+                System.err.println("WARNING: checkpoint in " + directory
+                        + " was made with other inputs or options, starting from scratch");
+                return null;
+            }
+            State result = new State();
+            result.stage = in.readInt();
+            result.passNumber = in.readInt();
+            result.originalSize = in.readInt();
+            result.originalNodeCount = in.readInt();
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; ++i) {
+                result.files.add(readBytes(in));
+            }
+            result.knownVariants = readBytes(in);
+            result.calibration = readBytes(in);
+            int strategyCount = in.readInt();
+            for (int i = 0; i < strategyCount; ++i) {
+                result.strategies.add(readBytes(in));
+            }
+            return result;
+        }
+    }
+
+    int getSavedCount() {
+        return savedCount;
+    }
+}
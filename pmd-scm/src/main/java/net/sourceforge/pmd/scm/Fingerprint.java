@@ -0,0 +1,38 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+/**
+ * A 128-bit hash of the inputs, see {@link FingerprintHasher}.
+ */
+final class Fingerprint {
+    final long high;
+    final long low;
+
+    Fingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Fingerprint)) {
+            return false;
+        }
+        Fingerprint other = (Fingerprint) obj;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        long mixed = 31 * high + low;
+        return (int) (mixed ^ mixed >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+/**
+ * Incremental 128-bit MurmurHash3 (x64 variant) of a byte sequence.
+ *
+ * It is not cryptographic, but variants are produced by the minimizer itself, so only
+ * accidental collisions matter, while hashing is several times faster than with MD5.
+ *
+ * Instances are not thread-safe.
+ */
+final class FingerprintHasher {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final int BLOCK_SIZE = 16;
+
+    private long h1;
+    private long h2;
+    private long totalLength;
+    /** Bytes not yet forming a complete block */
+    private final byte[] tail = new byte[BLOCK_SIZE];
+    private int tailLength;
+    /** Buffer for encoding chars, allocated on first use */
+    private byte[] charBytes;
+
+    FingerprintHasher() {
+        reset();
+    }
+
+    void reset() {
+        h1 = 0;
+        h2 = 0;
+        totalLength = 0;
+        tailLength = 0;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = 7; i >= 0; --i) {
+            result = result << 8 | bytes[offset + i] & 0xFFL;
+        }
+        return result;
+    }
+
+    private static long mixK1(long k1) {
+        return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    private static long mixK2(long k2) {
+        return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    private static long finalMix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private void processBlock(byte[] bytes, int offset) {
+        h1 ^= mixK1(getLong(bytes, offset));
+        h1 = Long.rotateLeft(h1, 27) + h2;
+        h1 = h1 * 5 + 0x52dce729;
+        h2 ^= mixK2(getLong(bytes, offset + 8));
+        h2 = Long.rotateLeft(h2, 31) + h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    void update(byte[] bytes, int offset, int length) {
+        totalLength += length;
+        int position = offset;
+        int end = offset + length;
+        if (tailLength > 0) {
+            int count = Math.min(BLOCK_SIZE - tailLength, length);
+            System.arraycopy(bytes, position, tail, tailLength, count);
+            tailLength += count;
+            position += count;
+            if (tailLength < BLOCK_SIZE) {
+                return;
+            }
+            processBlock(tail, 0);
+            tailLength = 0;
+        }
+        for (; position + BLOCK_SIZE <= end; position += BLOCK_SIZE) {
+            processBlock(bytes, position);
+        }
+        System.arraycopy(bytes, position, tail, 0, end - position);
+        tailLength = end - position;
+    }
+
+    void update(byte[] bytes) {
+        update(bytes, 0, bytes.length);
+    }
+
+    void update(long value) {
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < 8; ++i) {
+            bytes[i] = (byte) (value >>> 8 * i);
+        }
+        update(bytes);
+    }
+
+    /**
+     * Hashes the UTF-16 code units of the text, so no charset encoding is needed.
+     */
+    void update(CharSequence text) {
+        update(text, 0, text.length());
+    }
+
+    /**
+     * Hashes the chars from <code>start</code> (inclusive) to <code>end</code> (exclusive),
+     * the same way as {@link #update(CharSequence)} hashes the whole text.
+     */
+    void update(CharSequence text, int start, int end) {
+        if (charBytes == null) {
+            charBytes = new byte[8192];
+        }
+        int position = start;
+        while (position < end) {
+            int count = Math.min(end - position, charBytes.length / 2);
+            for (int i = 0; i < count; ++i) {
+                char c = text.charAt(position + i);
+                charBytes[2 * i] = (byte) c;
+                charBytes[2 * i + 1] = (byte) (c >>> 8);
+            }
+            update(charBytes, 0, 2 * count);
+            position += count;
+        }
+    }
+
+    void update(Fingerprint fingerprint) {
+        update(fingerprint.high);
+        update(fingerprint.low);
+    }
+
+    /**
+     * Get the hash of everything passed since the last reset, then reset.
+     */
+    Fingerprint finish() {
+        if (tailLength > 0) {
+            for (int i = tailLength; i < BLOCK_SIZE; ++i) {
+                tail[i] = 0;
+            }
+            if (tailLength > 8) {
+                h2 ^= mixK2(getLong(tail, 8));
+            }
+            h1 ^= mixK1(getLong(tail, 0));
+        }
+        h1 ^= totalLength;
+        h2 ^= totalLength;
+        h1 += h2;
+        h2 += h1;
+        h1 = finalMix(h1);
+        h2 = finalMix(h2);
+        h1 += h2;
+        h2 += h1;
+        Fingerprint result = new Fingerprint(h1, h2);
+        reset();
+        return result;
+    }
+}
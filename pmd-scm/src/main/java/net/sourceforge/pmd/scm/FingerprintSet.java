@@ -0,0 +1,219 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A set of fingerprints stored as pairs of <code>long</code>s in an open-addressing table,
+ * without any per-entry objects.
+ *
+ * If a memory limit is specified and the table would outgrow it, the set turns into
+ * a Bloom filter of that size: it never forgets a fingerprint then, but may report
+ * a few ones that were never added.
+ *
+ * All the methods are thread-safe.
+ */
+final class FingerprintSet {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_BLOOM_HASHES = 16;
+
+    private final long memoryLimit;
+
+    // exact mode: capacity pairs of longs, all-zero pair denotes an empty slot
+    private long[] table = new long[2 * INITIAL_CAPACITY];
+    private int size;
+    private boolean containsZero;
+
+    // Bloom filter mode, entered once the table would exceed the memory limit
+    private long[] bloomBits;
+    private int bloomHashCount;
+
+    /**
+     * @param memoryLimit Maximum size of the table in bytes, or 0 for no limit
+     */
+    FingerprintSet(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    private static int spread(long high, long low) {
+        long mixed = low ^ high * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ mixed >>> 32);
+    }
+
+    /**
+     * Get the slot containing the fingerprint or the empty slot it should be put to.
+     */
+    private static int findSlot(long[] table, long high, long low) {
+        int mask = table.length / 2 - 1;
+        int slot = spread(high, low) & mask;
+        while (true) {
+            long slotHigh = table[2 * slot];
+            long slotLow = table[2 * slot + 1];
+            if (slotHigh == high && slotLow == low || slotHigh == 0 && slotLow == 0) {
+                return slot;
+            }
+            slot = slot + 1 & mask;
+        }
+    }
+
+    private void grow() {
+        long newLength = 2L * table.length;
+        if (memoryLimit > 0 && newLength * 8 > memoryLimit || newLength > Integer.MAX_VALUE - 8) {
+            switchToBloomFilter();
+            return;
+        }
+        long[] newTable = new long[(int) newLength];
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] != 0 || table[i + 1] != 0) {
+                int slot = findSlot(newTable, table[i], table[i + 1]);
+                newTable[2 * slot] = table[i];
+                newTable[2 * slot + 1] = table[i + 1];
+            }
+        }
+        table = newTable;
+    }
+
+    private void switchToBloomFilter() {
+        long bytes = memoryLimit > 0 ? memoryLimit : 8L * table.length;
+        bloomBits = new long[(int) Math.max(1, Math.min(bytes / 8, Integer.MAX_VALUE - 8))];
+        long bitCount = 64L * bloomBits.length;
+        // optimal for the current size, the false positive rate grows as more fingerprints are added
+        bloomHashCount = (int) Math.max(1, Math.min(MAX_BLOOM_HASHES, Math.round((double) bitCount / (size + 1) * Math.log(2))));
+        long[] oldTable = table;
+        table = null;
+        for (int i = 0; i < oldTable.length; i += 2) {
+            if (oldTable[i] != 0 || oldTable[i + 1] != 0) {
+                addToBloomFilter(oldTable[i], oldTable[i + 1]);
+            }
+        }
+        if (containsZero) {
+            addToBloomFilter(0, 0);
+        }
+    }
+
+    private long bloomBitIndex(long high, long low, int hashNumber) {
+        // double hashing, both halves are already well mixed
+        long combined = high + hashNumber * (low | 1);
+        return (combined & Long.MAX_VALUE) % (64L * bloomBits.length);
+    }
+
+    private boolean addToBloomFilter(long high, long low) {
+        boolean added = false;
+        for (int i = 0; i < bloomHashCount; ++i) {
+            long bit = bloomBitIndex(high, low, i);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            added |= (bloomBits[word] & mask) == 0;
+            bloomBits[word] |= mask;
+        }
+        return added;
+    }
+
+    private boolean bloomFilterContains(long high, long low) {
+        for (int i = 0; i < bloomHashCount; ++i) {
+            long bit = bloomBitIndex(high, low, i);
+            if ((bloomBits[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the set has turned into a Bloom filter, so {@link #contains(Fingerprint)} may report false positives.
+     */
+    synchronized boolean isApproximate() {
+        return bloomBits != null;
+    }
+
+    synchronized boolean contains(Fingerprint fingerprint) {
+        long high = fingerprint.high;
+        long low = fingerprint.low;
+        if (bloomBits != null) {
+            return bloomFilterContains(high, low);
+        }
+        if (high == 0 && low == 0) {
+            return containsZero;
+        }
+        int slot = findSlot(table, high, low);
+        return table[2 * slot] != 0 || table[2 * slot + 1] != 0;
+    }
+
+    /**
+     * @return <code>true</code> if the fingerprint was not in the set yet
+     */
+    synchronized boolean add(Fingerprint fingerprint) {
+        long high = fingerprint.high;
+        long low = fingerprint.low;
+        if (bloomBits != null) {
+            return addToBloomFilter(high, low);
+        }
+        if (high == 0 && low == 0) {
+            boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+        int slot = findSlot(table, high, low);
+        if (table[2 * slot] != 0 || table[2 * slot + 1] != 0) {
+            return false;
+        }
+        table[2 * slot] = high;
+        table[2 * slot + 1] = low;
+        size += 1;
+        // keep the load factor at most 1/2
+        if (2 * size > table.length / 2) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the contents to be restored by {@link #load(DataInput)}.
+     */
+    synchronized void save(DataOutput out) throws IOException {
+        out.writeBoolean(bloomBits != null);
+        if (bloomBits != null) {
+            out.writeInt(bloomHashCount);
+            out.writeInt(bloomBits.length);
+            for (long word : bloomBits) {
+                out.writeLong(word);
+            }
+            return;
+        }
+        out.writeBoolean(containsZero);
+        out.writeInt(size);
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] != 0 || table[i + 1] != 0) {
+                out.writeLong(table[i]);
+                out.writeLong(table[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * Adds the fingerprints written by {@link #save(DataOutput)}, a saved Bloom filter replaces the contents.
+     */
+    synchronized void load(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            table = null;
+            bloomHashCount = in.readInt();
+            bloomBits = new long[in.readInt()];
+            for (int i = 0; i < bloomBits.length; ++i) {
+                bloomBits[i] = in.readLong();
+            }
+            return;
+        }
+        if (in.readBoolean()) {
+            add(new Fingerprint(0, 0));
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; ++i) {
+            add(new Fingerprint(in.readLong(), in.readLong()));
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Invariant verdicts persisted across runs, keyed by the hash of all the scratch files
+ * together with everything that can affect the verdict (the invariant options, the language, the output file names).
+ *
+ * The cache directory contains numbered append-only segment files of fixed-size records.
+ * Each record is written by a single call while holding an exclusive lock on the segment,
+ * so concurrent runs sharing the directory never see a torn record, only an incomplete tail
+ * that is read later. Once the newest segment is full, the next one is started and the oldest
+ * segments are deleted while the total size exceeds the limit.
+ *
+ * The verdicts are kept in memory per segment and forgotten together with it, so the memory
+ * used is proportional to the size limit as well.
+ */
+final class InvariantResultCache implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "verdicts-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+    private static final String LOCK_FILE_NAME = "cache.lock";
+    private static final int KEY_LENGTH = 16;
+    private static final int RECORD_LENGTH = KEY_LENGTH + 1;
+    private static final int SEGMENTS_PER_LIMIT = 8;
+    /**
+     * File locks are held on behalf of the whole JVM, so the caches sharing a directory
+     * within a single JVM have to take turns themselves.
+     */
+    private static final Object FILE_LOCK_GUARD = new Object();
+
+    private final Path directory;
+    private final long maxSize;
+    private final long maxSegmentSize;
+    private final FingerprintHasher hasher = new FingerprintHasher();
+    private final Fingerprint configurationKey;
+
+    /**
+     * Verdicts read from a segment file or stored to it.
+     */
+    private static final class Segment {
+        final FingerprintSet satisfied = new FingerprintSet(0);
+        final FingerprintSet unsatisfied = new FingerprintSet(0);
+        /** Number of bytes already read from the file */
+        long readPosition;
+    }
+
+    private final Map<Integer, Segment> segments = new TreeMap<>();
+    private int currentSegment;
+    private FileChannel currentChannel;
+
+    private int hitCount;
+    private int storedCount;
+
+    InvariantResultCache(Path directory, long maxSize, String configurationDescription) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxSegmentSize = Math.max(RECORD_LENGTH, maxSize / SEGMENTS_PER_LIMIT / RECORD_LENGTH * RECORD_LENGTH);
+        hasher.update(configurationDescription.getBytes(StandardCharsets.UTF_8));
+        this.configurationKey = hasher.finish();
+
+        Files.createDirectories(directory);
+        refresh();
+        List<Integer> existing = listSegments();
+        openSegment(existing.isEmpty() ? 0 : existing.get(existing.size() - 1));
+    }
+
+    /**
+     * Describes everything besides the scratch file contents the verdict depends on.
+     *
+     * All the options of the invariant configuration are taken into account, so that changing
+     * any of them (such as the command line or the expected message) invalidates the cached verdicts.
+     */
+    static String describeConfiguration(SCMConfiguration configuration) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(configuration.getLanguageHandler().getTerseName()).append(' ')
+                .append(configuration.getLanguageVersion()).append('\n');
+        for (SCMConfiguration.FileMapping mapping : configuration.getFileMappings()) {
+            sb.append(mapping.output).append('\n');
+        }
+        describeParameters(sb, configuration.getInvariantCheckerConfig());
+        return sb.toString();
+    }
+
+    /**
+     * Appends the class of the component configuration and the values of all its command line options.
+     */
+    static void describeParameters(StringBuilder sb, Object componentConfiguration) {
+        sb.append(componentConfiguration.getClass().getName()).append('\n');
+        for (Class<?> clazz = componentConfiguration.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                Parameter parameter = field.getAnnotation(Parameter.class);
+                if (parameter == null) {
+                    continue;
+                }
+                field.setAccessible(true);
+                try {
+                    sb.append(parameter.names()[0]).append('=').append(field.get(componentConfiguration)).append('\n');
+                } catch (IllegalAccessException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
+    }
+
+    private Fingerprint recordKey(Fingerprint contentsHash) {
+        hasher.update(configurationKey.high);
+        hasher.update(configurationKey.low);
+        hasher.update(contentsHash.high);
+        hasher.update(contentsHash.low);
+        return hasher.finish();
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        List<Integer> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    result.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    // not ours
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Reads the records appended since the last refresh, possibly by other runs.
+     */
+    private void refresh() throws IOException {
+        List<Integer> existing = listSegments();
+        // evicted by this run or some concurrent one
+        segments.keySet().retainAll(existing);
+        for (int number : existing) {
+            Segment segment = segments.get(number);
+            if (segment == null) {
+                segment = new Segment();
+                segments.put(number, segment);
+            }
+            segment.readPosition = readSegment(number, segment);
+        }
+    }
+
+    private long readSegment(int number, Segment segment) throws IOException {
+        long from = segment.readPosition;
+        try (FileChannel channel = FileChannel.open(segmentPath(number), StandardOpenOption.READ)) {
+            long size = channel.size();
+            // an incomplete record may be being appended right now, it will be read next time
+            long end = from + (size - from) / RECORD_LENGTH * RECORD_LENGTH;
+            if (end <= from) {
+                return from;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) (end - from));
+            while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) >= 0) {
+                // keep reading
+            }
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_LENGTH) {
+                Fingerprint key = new Fingerprint(buffer.getLong(), buffer.getLong());
+                (buffer.get() != 0 ? segment.satisfied : segment.unsatisfied).add(key);
+            }
+            return end;
+        } catch (IOException ex) {
+            // deleted by a concurrent eviction
+            return from;
+        }
+    }
+
+    private void openSegment(int number) throws IOException {
+        if (currentChannel != null) {
+            currentChannel.close();
+        }
+        currentSegment = number;
+        currentChannel = FileChannel.open(segmentPath(number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Starts a new segment (unless some concurrent run already did) and evicts the oldest ones.
+     */
+    private void rollOver() throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            synchronized (FILE_LOCK_GUARD) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    rollOverLocked();
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+        // forget the verdicts of the evicted segments
+        segments.keySet().retainAll(listSegments());
+    }
+
+    private void rollOverLocked() throws IOException {
+        List<Integer> existing = listSegments();
+        int newest = existing.isEmpty() ? currentSegment : Math.max(currentSegment, existing.get(existing.size() - 1));
+        if (newest == currentSegment || Files.size(segmentPath(newest)) >= maxSegmentSize) {
+            newest += 1;
+            existing.add(newest);
+        }
+        openSegment(newest);
+
+        long totalSize = 0;
+        for (int segment : existing) {
+            totalSize += Files.exists(segmentPath(segment)) ? Files.size(segmentPath(segment)) : 0;
+        }
+        for (int segment : existing) {
+            if (totalSize <= maxSize || segment == newest) {
+                break;
+            }
+            long size = Files.size(segmentPath(segment));
+            try {
+                Files.deleteIfExists(segmentPath(segment));
+                totalSize -= size;
+            } catch (IOException ex) {
+                // still open by someone on a platform that forbids deleting such files, retry next time
+            }
+        }
+    }
+
+    private Boolean getVerdict(Fingerprint key) {
+        for (Segment segment : segments.values()) {
+            if (segment.satisfied.contains(key)) {
+                return true;
+            }
+            if (segment.unsatisfied.contains(key)) {
+                return false;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the cached verdict for the current scratch file contents.
+     *
+     * @param contentsHash Hash of all the scratch files
+     * @return The verdict or <code>null</code> if unknown
+     */
+    synchronized Boolean lookup(Fingerprint contentsHash) throws IOException {
+        Fingerprint key = recordKey(contentsHash);
+        Boolean verdict = getVerdict(key);
+        if (verdict == null) {
+            // the compiler is to be run otherwise, so it is cheap to look for the verdicts from concurrent runs
+            refresh();
+            verdict = getVerdict(key);
+        }
+        if (verdict != null) {
+            hitCount += 1;
+        }
+        return verdict;
+    }
+
+    synchronized void store(Fingerprint contentsHash, boolean verdict) throws IOException {
+        Fingerprint key = recordKey(contentsHash);
+        Segment segment = segments.get(currentSegment);
+        if (segment == null) {
+            // created by this run, not read yet
+            segment = new Segment();
+            segments.put(currentSegment, segment);
+        }
+        (verdict ? segment.satisfied : segment.unsatisfied).add(key);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+        record.putLong(key.high).putLong(key.low).put((byte) (verdict ? 1 : 0));
+        record.flip();
+        synchronized (FILE_LOCK_GUARD) {
+            FileLock lock = currentChannel.lock();
+            try {
+                while (record.hasRemaining()) {
+                    currentChannel.write(record);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+        storedCount += 1;
+        if (currentChannel.size() >= maxSegmentSize) {
+            rollOver();
+        }
+    }
+
+    void printStatistics(PrintStream stream) {
+        stream.println("Cached verdicts reused: " + hitCount + ", stored: " + storedCount);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        currentChannel.close();
+    }
+}
@@ -6,6 +6,7 @@ package net.sourceforge.pmd.scm;
 
 import java.util.List;
 
+import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.Parser;
 import net.sourceforge.pmd.scm.invariants.InvariantConfiguration;
 import net.sourceforge.pmd.scm.strategies.MinimizationStrategyConfiguration;
@@ -29,6 +30,11 @@ public interface MinimizerLanguage {
      */
     String getDefaultLanguageVersion();
 
+    /**
+     * Get the PMD language version by its name.
+     */
+    LanguageVersion getLanguageVersion(String languageVersion);
+
     /**
      * Creates parser for this language for the specified version.
      */
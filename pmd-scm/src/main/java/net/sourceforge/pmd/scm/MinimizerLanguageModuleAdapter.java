@@ -19,25 +19,43 @@ import net.sourceforge.pmd.scm.invariants.DummyInvariant;
 import net.sourceforge.pmd.scm.invariants.ExitCodeInvariant;
 import net.sourceforge.pmd.scm.invariants.InvariantConfiguration;
 import net.sourceforge.pmd.scm.invariants.InvariantConfigurationFactory;
+import net.sourceforge.pmd.scm.invariants.JavaCompilerInvariant;
+import net.sourceforge.pmd.scm.invariants.PersistentWorkerInvariant;
+import net.sourceforge.pmd.scm.invariants.PmdAnalysisInvariant;
 import net.sourceforge.pmd.scm.invariants.PrintedMessageInvariant;
+import net.sourceforge.pmd.scm.strategies.DeltaDebuggingStrategy;
 import net.sourceforge.pmd.scm.strategies.GreedyStrategy;
+import net.sourceforge.pmd.scm.strategies.HierarchicalDeltaDebuggingStrategy;
 import net.sourceforge.pmd.scm.strategies.MinimizationStrategyConfiguration;
 import net.sourceforge.pmd.scm.strategies.MinimizationStrategyConfigurationFactory;
+import net.sourceforge.pmd.scm.strategies.ProbabilisticDeltaDebuggingStrategy;
+import net.sourceforge.pmd.scm.strategies.SyntaxGuidedStrategy;
 import net.sourceforge.pmd.scm.strategies.XPathStrategy;
 
 
 public class MinimizerLanguageModuleAdapter implements MinimizerLanguage, NodeInformationProvider {
     private final net.sourceforge.pmd.lang.Language pmdLanguage;
+    private final SyntaxRules syntaxRules;
     private final Map<String, MinimizationStrategyConfigurationFactory> strategies = new LinkedHashMap<>();
     private final Map<String, InvariantConfigurationFactory> invariantCheckers = new LinkedHashMap<>();
 
     MinimizerLanguageModuleAdapter(net.sourceforge.pmd.lang.Language pmdLanguage) {
         this.pmdLanguage = pmdLanguage;
+        this.syntaxRules = SyntaxRules.forLanguage(pmdLanguage.getTerseName());
         addInvariant(DummyInvariant.FACTORY);
         addInvariant(ExitCodeInvariant.FACTORY);
         addInvariant(PrintedMessageInvariant.FACTORY);
+        addInvariant(PersistentWorkerInvariant.FACTORY);
+        addInvariant(PmdAnalysisInvariant.FACTORY);
+        if ("java".equals(pmdLanguage.getTerseName())) {
+            addInvariant(JavaCompilerInvariant.FACTORY);
+        }
         addStrategy(XPathStrategy.FACTORY);
         addStrategy(GreedyStrategy.FACTORY);
+        addStrategy(HierarchicalDeltaDebuggingStrategy.FACTORY);
+        addStrategy(DeltaDebuggingStrategy.FACTORY);
+        addStrategy(ProbabilisticDeltaDebuggingStrategy.FACTORY);
+        addStrategy(SyntaxGuidedStrategy.FACTORY);
     }
 
     protected void addStrategy(MinimizationStrategyConfigurationFactory factory) {
@@ -95,16 +113,25 @@ public class MinimizerLanguageModuleAdapter implements MinimizerLanguage, NodeIn
     }
 
     @Override
-    public Parser getParser(String languageVersion) {
+    public LanguageVersion getLanguageVersion(String languageVersion) {
         for (LanguageVersion version : pmdLanguage.getVersions()) {
             if (version.getVersion().equals(languageVersion)) {
-                ParserOptions opts = version.getLanguageVersionHandler().getDefaultParserOptions();
-                return version.getLanguageVersionHandler().getParser(opts);
+                return version;
             }
         }
         return null;
     }
 
+    @Override
+    public Parser getParser(String languageVersion) {
+        LanguageVersion version = getLanguageVersion(languageVersion);
+        if (version == null) {
+            return null;
+        }
+        ParserOptions opts = version.getLanguageVersionHandler().getDefaultParserOptions();
+        return version.getLanguageVersionHandler().getParser(opts);
+    }
+
     public Parser getDefaultParser() {
         return getParser(getDefaultLanguageVersion());
     }
@@ -120,4 +147,14 @@ public class MinimizerLanguageModuleAdapter implements MinimizerLanguage, NodeIn
         // no need to calculate dependencies since there are no dependencies implemented at all, by default
         return Collections.EMPTY_SET;
     }
+
+    @Override
+    public Boolean isOptional(Node node) {
+        return syntaxRules == null ? null : syntaxRules.isOptional(node);
+    }
+
+    @Override
+    public Boolean isReplaceableWith(Node node, Node descendant) {
+        return syntaxRules == null ? null : syntaxRules.isReplaceableWith(node, descendant);
+    }
 }
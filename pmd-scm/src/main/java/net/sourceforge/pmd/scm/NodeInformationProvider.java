@@ -26,4 +26,16 @@ public interface NodeInformationProvider {
      * Please note that returning empty set means "I do know: nothing depends on it"!
      */
     Set<Node> getDirectlyDependingNodes(Node node);
+
+    /**
+     * Whether the passed node can be cut off leaving its parent syntactically valid
+     * or <code>null</code> if the grammar is not known.
+     */
+    Boolean isOptional(Node node);
+
+    /**
+     * Whether the passed node can be replaced with the passed descendant keeping the source syntactically valid
+     * or <code>null</code> if the grammar is not known.
+     */
+    Boolean isReplaceableWith(Node node, Node descendant);
 }
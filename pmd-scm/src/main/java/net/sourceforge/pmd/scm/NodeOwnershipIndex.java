@@ -0,0 +1,107 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Maps the nodes of all the committed trees to the numbers of the files they belong to.
+ *
+ * Updated on commit for the changed files only, so that every variant can be dispatched
+ * to the files it touches without looking into all of them. Open addressing by identity
+ * with linear probing, so that nodes can be removed without tombstones.
+ */
+final class NodeOwnershipIndex {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private Node[] keys = new Node[INITIAL_CAPACITY];
+    private int[] files = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private static int home(Node node, int mask) {
+        return System.identityHashCode(node) * 0x9E3779B9 >>> 1 & mask;
+    }
+
+    private int findSlot(Node node) {
+        int mask = keys.length - 1;
+        int slot = home(node, mask);
+        while (keys[slot] != null && keys[slot] != node) {
+            slot = slot + 1 & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        Node[] oldKeys = keys;
+        int[] oldFiles = files;
+        keys = new Node[2 * oldKeys.length];
+        files = new int[2 * oldKeys.length];
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != null) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                files[slot] = oldFiles[i];
+            }
+        }
+    }
+
+    /**
+     * Registers all the nodes of the tree as belonging to the file.
+     */
+    void addAll(int file, TreeSnapshot snapshot) {
+        for (int i = 0; i < snapshot.size(); ++i) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            Node node = snapshot.getNode(i);
+            int slot = findSlot(node);
+            if (keys[slot] == null) {
+                keys[slot] = node;
+                size += 1;
+            }
+            files[slot] = file;
+        }
+    }
+
+    /**
+     * Forgets all the nodes of the tree.
+     */
+    void removeAll(TreeSnapshot snapshot) {
+        for (int i = 0; i < snapshot.size(); ++i) {
+            remove(snapshot.getNode(i));
+        }
+    }
+
+    private void remove(Node node) {
+        int mask = keys.length - 1;
+        int hole = findSlot(node);
+        if (keys[hole] == null) {
+            return;
+        }
+        keys[hole] = null;
+        size -= 1;
+        // shift back the following entries that would not be found across the hole otherwise
+        for (int slot = hole + 1 & mask; keys[slot] != null; slot = slot + 1 & mask) {
+            int home = home(keys[slot], mask);
+            boolean homeIsBetween = hole <= slot
+                    ? hole < home && home <= slot
+                    : hole < home || home <= slot;
+            if (!homeIsBetween) {
+                keys[hole] = keys[slot];
+                files[hole] = files[slot];
+                keys[slot] = null;
+                hole = slot;
+            }
+        }
+    }
+
+    /**
+     * @return Number of the file the node belongs to or -1 if it is unknown
+     */
+    int getFile(Node node) {
+        int slot = findSlot(node);
+        return keys[slot] == null ? -1 : files[slot];
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.sourceforge.pmd.lang.Parser;
+
+/**
+ * Parses several files simultaneously, so that committing a variant of a multi-file input
+ * takes time proportional to the file count divided by the thread count.
+ *
+ * Parsers are not thread-safe, so every thread of the pool has a parser of its own.
+ */
+final class ParsingPool implements AutoCloseable {
+    /**
+     * Something to be done with a single file.
+     */
+    interface CutterAction {
+        /**
+         * @param parser Parser owned by the current thread
+         * @return <code>false</code> if the rest of the actions are not needed anymore
+         */
+        boolean apply(ASTCutter cutter, Parser parser);
+    }
+
+    private final ExecutorService executor;
+    private final ThreadLocal<Parser> parsers;
+
+    ParsingPool(final MinimizerLanguage language, final String languageVersion, int threadCount) {
+        parsers = new ThreadLocal<Parser>() {
+            @Override
+            protected Parser initialValue() {
+                return language.getParser(languageVersion);
+            }
+        };
+        executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "scm-parser");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Applies the action to all the cutters simultaneously.
+     *
+     * Exceptions thrown by the actions (such as {@link net.sourceforge.pmd.lang.ast.ParseException})
+     * are rethrown in the calling thread. Nothing touches the cutters after returning.
+     *
+     * @return <code>false</code> as soon as some action returns <code>false</code>, the actions
+     *         not started yet are skipped then
+     */
+    boolean applyToAll(List<ASTCutter> cutters, final CutterAction action) {
+        final AtomicBoolean stopped = new AtomicBoolean();
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (final ASTCutter cutter : cutters) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return stopped.get() || action.apply(cutter, parsers.get());
+                }
+            }));
+        }
+        try {
+            for (Future<Boolean> result : results) {
+                if (!result.get()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            stopped.set(true);
+            // at most one running action per thread is to be waited for
+            awaitAll(results);
+        }
+    }
+
+    private static void awaitAll(List<Future<Boolean>> results) {
+        boolean interrupted = false;
+        for (Future<Boolean> result : results) {
+            while (true) {
+                try {
+                    result.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -35,7 +35,7 @@ public class SCMConfiguration extends AbstractConfiguration implements IVariable
         }
     }
 
-    private MinimizationStrategyConfiguration strategyConfiguration;
+    private List<MinimizationStrategyConfiguration> strategyConfigurations;
     private InvariantConfiguration invariantConfiguration;
 
     @Parameter(names = { "--input-file", "-i" }, description = "Original file that should be minimized, or list of such files",
@@ -57,12 +57,40 @@ public class SCMConfiguration extends AbstractConfiguration implements IVariable
     @Parameter(names = { "--language-version", "-v" }, description = "Specific language version")
     private String languageVersion;
 
-    @Parameter(names = { "--strategy", "-S" }, description = "Minimization strategy", required = true)
-    private String strategy;
+    @Parameter(names = { "--strategy", "-S" }, description = "Minimization strategy, or comma-separated list of strategies "
+            + "to run one after another, each one until it cannot make any step", required = true)
+    private List<String> strategies = new ArrayList<>();
 
     @Parameter(names = { "--invariant", "-I" } , description = "Invariant to preserve during minimization")
     private String invariantChecker = "dummy";
 
+    @Parameter(names = { "--jobs", "-j" }, description = "Number of variants to check in parallel, "
+            + "each one with private copies of the output files substituted for the command line arguments naming them")
+    private int jobCount = 1;
+
+    @Parameter(names = "--cache-dir", description = "Directory to keep the invariant verdicts in across runs "
+            + "(can be shared by several simultaneous runs)")
+    private String cacheDirectory;
+
+    @Parameter(names = "--cache-size", description = "Maximum size of the cache directory in megabytes, "
+            + "the oldest verdicts are evicted first")
+    private int cacheSizeMegabytes = 64;
+
+    @Parameter(names = "--known-variants-memory", description = "Memory limit in megabytes for remembering the checked variants, "
+            + "then a Bloom filter is used that may skip a few unchecked ones (0 for no limit)")
+    private int knownVariantsMegabytes;
+
+    @Parameter(names = "--checkpoint-dir", description = "Directory to save the state of the run to periodically, "
+            + "so it can be continued with --resume after being killed")
+    private String checkpointDirectory;
+
+    @Parameter(names = "--checkpoint-interval", description = "Minimum time between checkpoints in seconds")
+    private int checkpointIntervalSeconds = 60;
+
+    @Parameter(names = "--resume", description = "Continue from the checkpoint in the checkpoint directory, if any, "
+            + "instead of starting from the input files")
+    private boolean resume;
+
     @Parameter(names = { "--help", "-h" }, description = "Display help", help = true)
     private boolean help;
 
@@ -82,6 +110,43 @@ public class SCMConfiguration extends AbstractConfiguration implements IVariable
         return language;
     }
 
+    public int getJobCount() {
+        return jobCount;
+    }
+
+    /**
+     * Get the directory for persistent verdict cache or <code>null</code> if it is disabled.
+     */
+    public Path getCacheDirectory() {
+        return cacheDirectory == null ? null : Paths.get(cacheDirectory);
+    }
+
+    public long getCacheSize() {
+        return cacheSizeMegabytes * 1024L * 1024L;
+    }
+
+    /**
+     * Get the memory limit for the set of checked variants in bytes, or 0 if unlimited.
+     */
+    public long getKnownVariantsMemoryLimit() {
+        return knownVariantsMegabytes * 1024L * 1024L;
+    }
+
+    /**
+     * Get the directory for checkpoints or <code>null</code> if they are disabled.
+     */
+    public Path getCheckpointDirectory() {
+        return checkpointDirectory == null ? null : Paths.get(checkpointDirectory);
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointIntervalSeconds * 1000L;
+    }
+
+    public boolean isResumeRequested() {
+        return resume;
+    }
+
     public String getLanguageVersion() {
         return languageVersion == null ? language.getDefaultLanguageVersion() : languageVersion;
     }
@@ -107,6 +172,21 @@ public class SCMConfiguration extends AbstractConfiguration implements IVariable
             throw new ParameterException("Input file count is " + inputFileNames.size() +
                     ", output file count is " + outputFileNames.size() + ", should be equal");
         }
+        if (jobCount < 1) {
+            throw new ParameterException("Job count should be positive, got " + jobCount);
+        }
+        if (knownVariantsMegabytes < 0) {
+            throw new ParameterException("Known variants memory limit should be non-negative, got " + knownVariantsMegabytes);
+        }
+        if (cacheSizeMegabytes < 1) {
+            throw new ParameterException("Cache size should be positive, got " + cacheSizeMegabytes);
+        }
+        if (checkpointIntervalSeconds < 0) {
+            throw new ParameterException("Checkpoint interval should be non-negative, got " + checkpointIntervalSeconds);
+        }
+        if (resume && checkpointDirectory == null) {
+            throw new ParameterException("--resume requires --checkpoint-dir");
+        }
         fileMappings = new ArrayList<>();
         for (int i = 0; i < inputFileNames.size(); ++i) {
             fileMappings.add(new FileMapping(
@@ -115,12 +195,21 @@ public class SCMConfiguration extends AbstractConfiguration implements IVariable
             );
         }
 
-        strategyConfiguration = language.createStrategyConfiguration(strategy);
+        strategyConfigurations = new ArrayList<>();
+        for (int i = 0; i < strategies.size(); ++i) {
+            String strategy = strategies.get(i);
+            MinimizationStrategyConfiguration strategyConfiguration = language.createStrategyConfiguration(strategy);
+            if (strategyConfiguration == null) {
+                throw new ParameterException("Unknown strategy: " + strategy);
+            }
+            // options are not bound to the position in the list, so could not be told apart
+            if (strategies.indexOf(strategy) != i) {
+                throw new ParameterException("Strategy is listed more than once: " + strategy);
+            }
+            strategyConfigurations.add(strategyConfiguration);
+        }
         invariantConfiguration = language.createInvariantConfiguration(invariantChecker);
 
-        if (strategyConfiguration == null) {
-            throw new ParameterException("Unknown strategy: " + strategy);
-        }
         if (invariantConfiguration == null) {
             throw new ParameterException("Unknown invariant: " + invariantChecker);
         }
@@ -130,10 +219,21 @@ public class SCMConfiguration extends AbstractConfiguration implements IVariable
      * Process invariant- and strategy-specific options.
      */
     private void secondPass(String[] args) {
-        Object[] configs = { this, strategyConfiguration, invariantConfiguration};
-        JCommander jcommander = new JCommander(configs);
+        List<Object> configs = new ArrayList<>();
+        configs.add(this);
+        configs.addAll(strategyConfigurations);
+        configs.add(invariantConfiguration);
+        JCommander jcommander = new JCommander(configs.toArray());
         jcommander.setProgramName(SCM.PROGRAM_NAME);
         jcommander.parse(args);
+
+        // the reason depends on the strategy options, so checked only now
+        for (int i = 0; i < strategyConfigurations.size() - 1; ++i) {
+            String exitReason = strategyConfigurations.get(i).getExitReason();
+            if (exitReason != null) {
+                throw new ParameterException("Strategy " + strategies.get(i) + " has to be the last one: " + exitReason);
+            }
+        }
     }
 
     private void componentUsage(Object configuration, StringBuilder sb) {
@@ -189,8 +289,18 @@ public class SCMConfiguration extends AbstractConfiguration implements IVariable
         return true;
     }
 
-    MinimizationStrategyConfiguration getStrategyConfig() {
-        return strategyConfiguration;
+    /**
+     * Get the names of the strategies to be run, in order.
+     */
+    List<String> getStrategyNames() {
+        return strategies;
+    }
+
+    /**
+     * Get the configurations of the strategies to be run, in order.
+     */
+    List<MinimizationStrategyConfiguration> getStrategyConfigs() {
+        return strategyConfigurations;
     }
 
     InvariantConfiguration getInvariantCheckerConfig() {
@@ -0,0 +1,160 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.Parser;
+import net.sourceforge.pmd.scm.invariants.Invariant;
+import net.sourceforge.pmd.scm.invariants.InvariantOperations;
+
+/**
+ * A private copy of all the output files with its own invariant checker, so that
+ * several variants can be checked simultaneously.
+ *
+ * The compiler is started in the current directory, just like without parallel checking,
+ * so the relative paths in the command line keep working. The copies of the output files are placed
+ * into numbered subdirectories of a private temporary directory, and every command line token naming
+ * an output file (either as specified or as an absolute path) is replaced with the absolute path of the copy.
+ * The output files referred to in any other way (for example, by a build script) are not replaced.
+ */
+final class ScratchWorker implements InvariantOperations, AutoCloseable {
+    private static final Pattern TOKEN = Pattern.compile("\\S+");
+
+    private final Path directory;
+    private final List<ASTCutter> cutters;
+    private final Charset charset;
+    private final LanguageVersion languageVersion;
+    private final List<Path> scratchFiles = new ArrayList<>();
+    private List<String> contents;
+    // What the files on disk contain now, null if not written yet
+    private final List<String> writtenContents = new ArrayList<>();
+    // command line tokens naming the output files, mapped to the paths of the copies
+    private final Map<String, String> pathReplacements = new HashMap<>();
+    private final Parser parser;
+    private final FingerprintHasher hasher = new FingerprintHasher();
+    private final Invariant invariant;
+
+    ScratchWorker(List<SCMConfiguration.FileMapping> mappings, List<ASTCutter> cutters, Charset charset,
+                  LanguageVersion languageVersion, Parser parser, Invariant invariant) throws IOException {
+        this.directory = Files.createTempDirectory("pmd-scm-worker-");
+        this.cutters = cutters;
+        this.charset = charset;
+        this.languageVersion = languageVersion;
+        this.parser = parser;
+        this.invariant = invariant;
+
+        for (int i = 0; i < mappings.size(); ++i) {
+            Path output = mappings.get(i).output;
+            Path copy = directory.resolve(Integer.toString(i)).resolve(output.getFileName()).toAbsolutePath();
+            pathReplacements.put(output.toString(), copy.toString());
+            pathReplacements.put(output.toAbsolutePath().normalize().toString(), copy.toString());
+            Files.createDirectories(copy.getParent());
+            scratchFiles.add(copy);
+            writtenContents.add(null);
+        }
+    }
+
+    @Override
+    public LanguageVersion getLanguageVersion() {
+        return languageVersion;
+    }
+
+    @Override
+    public List<Path> getScratchFiles() {
+        return Collections.unmodifiableList(scratchFiles);
+    }
+
+    @Override
+    public String getScratchFileContents(int index) {
+        return contents.get(index);
+    }
+
+    /**
+     * Sets the variant to be checked, the files on disk are only written on request.
+     */
+    void setScratchContents(List<String> contents) {
+        this.contents = contents;
+    }
+
+    @Override
+    public void writeScratchFiles() throws IOException {
+        for (int i = 0; i < scratchFiles.size(); ++i) {
+            String text = contents.get(i);
+            if (!text.equals(writtenContents.get(i))) {
+                Files.write(scratchFiles.get(i), text.getBytes(charset));
+                writtenContents.set(i, text);
+            }
+        }
+    }
+
+    Invariant getInvariant() {
+        return invariant;
+    }
+
+    /**
+     * Get the hasher to be used by the thread this worker is currently taken by.
+     */
+    FingerprintHasher getHasher() {
+        return hasher;
+    }
+
+    @Override
+    public boolean allInputsAreParseable() throws IOException {
+        for (int i = 0; i < cutters.size(); ++i) {
+            if (!cutters.get(i).isParseable(parser, contents.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Path getWorkingDirectory() {
+        return null;
+    }
+
+    /**
+     * Replaces the whole tokens naming the output files, possibly quoted, with the paths of the private copies.
+     */
+    @Override
+    public String adaptCommandLine(String commandLine) {
+        StringBuffer result = new StringBuffer();
+        Matcher matcher = TOKEN.matcher(commandLine);
+        while (matcher.find()) {
+            String token = matcher.group();
+            String quote = "";
+            if (token.length() >= 2 && (token.startsWith("\"") && token.endsWith("\"")
+                    || token.startsWith("'") && token.endsWith("'"))) {
+                quote = token.substring(0, 1);
+                token = token.substring(1, token.length() - 1);
+            }
+            String replacement = pathReplacements.get(token);
+            if (replacement != null) {
+                matcher.appendReplacement(result, Matcher.quoteReplacement(quote + replacement + quote));
+            }
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+}
@@ -4,79 +4,238 @@
 
 package net.sourceforge.pmd.scm;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.Parser;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.scm.invariants.Invariant;
 import net.sourceforge.pmd.scm.invariants.InvariantOperations;
 import net.sourceforge.pmd.scm.strategies.MinimizationStrategy;
+import net.sourceforge.pmd.scm.strategies.MinimizationStrategyConfiguration;
 import net.sourceforge.pmd.scm.strategies.MinimizerOperations;
 
 public class SourceCodeMinimizer implements InvariantOperations, MinimizerOperations {
-    private final static String DIGEST_ALGO = "MD5";
-
     private static final class ContinueException extends Exception { }
 
     private static final class ExitException extends Exception { }
 
-    private final MessageDigest messageDigest;
-    private final Set<BigInteger> knownHashes;
+    // Never modified
+    private static final BitSet NO_NODES = new BitSet();
+
+    private final FingerprintHasher hasher = new FingerprintHasher();
+    private final FingerprintSet knownHashes;
+    private boolean knownHashesApproximationReported;
     private final MinimizerLanguage language;
+    private final LanguageVersion languageVersion;
     private final Invariant invariant;
-    private final MinimizationStrategy strategy;
+    private final List<String> strategyNames;
+    private final List<MinimizationStrategy> strategies = new ArrayList<>();
+    // the strategy of the current stage
+    private MinimizationStrategy strategy;
     private final List<ASTCutter> cutters;
+    private final List<Path> scratchFiles;
+    private final Charset sourceCharset;
+    private final InvariantResultCache resultCache;
+    // Only used with more than one file
+    private final ParsingPool parsingPool;
     private List<Node> currentRoots;
+    // Which file each node of the current roots belongs to
+    private final NodeOwnershipIndex ownership = new NodeOwnershipIndex();
+    private final List<TreeSnapshot> indexedSnapshots = new ArrayList<>();
+
+    // Parallel checking of variants, only used with more than one job
+    private final List<ScratchWorker> workers = new ArrayList<>();
+    private final BlockingQueue<ScratchWorker> idleWorkers = new LinkedBlockingQueue<>();
+    private final ReadWriteLock committedStateLock = new ReentrantReadWriteLock();
+    private final ExecutorService executor;
+
+    // Progress of the run, saved to checkpoints
+    private final Checkpoint checkpoint;
+    private final long checkpointInterval;
+    private Checkpoint.State resumedState;
+    private long lastCheckpointTime;
+    private int currentStage;
+    private int passNumber;
+    private int originalSize;
+    private int originalNodeCount;
 
     public SourceCodeMinimizer(SCMConfiguration configuration) throws IOException {
-        MessageDigest md = null;
-        try {
-            md = MessageDigest.getInstance(DIGEST_ALGO);
-        } catch (NoSuchAlgorithmException e) {
-            System.err.println("Message digest " + DIGEST_ALGO + " not found. Execution may be less efficient.");
-        }
-        messageDigest = md;
-        knownHashes = new HashSet<>();
+        knownHashes = new FingerprintSet(configuration.getKnownVariantsMemoryLimit());
 
         language = configuration.getLanguageHandler();
+        languageVersion = language.getLanguageVersion(configuration.getLanguageVersion());
         Parser parser = language.getParser(configuration.getLanguageVersion());
         invariant = configuration.getInvariantCheckerConfig().createChecker();
-        strategy = configuration.getStrategyConfig().createStrategy();
+        strategyNames = configuration.getStrategyNames();
+        for (MinimizationStrategyConfiguration strategyConfiguration : configuration.getStrategyConfigs()) {
+            strategies.add(strategyConfiguration.createStrategy());
+        }
+        strategy = strategies.get(0);
 
-        Charset sourceCharset = configuration.getSourceCharset();
+        Path checkpointDirectory = configuration.getCheckpointDirectory();
+        checkpoint = checkpointDirectory == null ? null : new Checkpoint(checkpointDirectory, configuration);
+        checkpointInterval = configuration.getCheckpointInterval();
+        if (checkpoint != null && configuration.isResumeRequested()) {
+            resumedState = checkpoint.load();
+        }
+        if (resumedState != null) {
+            knownHashes.load(new DataInputStream(new ByteArrayInputStream(resumedState.knownVariants)));
+        }
+
+        sourceCharset = configuration.getSourceCharset();
         cutters = new ArrayList<>();
-        for (SCMConfiguration.FileMapping mapping: configuration.getFileMappings()) {
-            Files.copy(mapping.input, mapping.output, StandardCopyOption.REPLACE_EXISTING);
+        scratchFiles = new ArrayList<>();
+        List<SCMConfiguration.FileMapping> fileMappings = configuration.getFileMappings();
+        for (int i = 0; i < fileMappings.size(); ++i) {
+            SCMConfiguration.FileMapping mapping = fileMappings.get(i);
+            if (resumedState != null) {
+                Files.write(mapping.output, resumedState.files.get(i));
+            } else {
+                Files.copy(mapping.input, mapping.output, StandardCopyOption.REPLACE_EXISTING);
+            }
             ASTCutter cutter = new ASTCutter(parser, sourceCharset, mapping.output);
             cutters.add(cutter);
+            scratchFiles.add(mapping.output);
+        }
+        int parsingThreadCount = Math.min(cutters.size(), Runtime.getRuntime().availableProcessors());
+        parsingPool = parsingThreadCount > 1
+                ? new ParsingPool(language, configuration.getLanguageVersion(), parsingThreadCount) : null;
+        commitAllCutters();
+
+        Path cacheDirectory = configuration.getCacheDirectory();
+        resultCache = cacheDirectory == null ? null : new InvariantResultCache(cacheDirectory,
+                configuration.getCacheSize(), InvariantResultCache.describeConfiguration(configuration));
+
+        int jobCount = configuration.getJobCount();
+        if (jobCount > 1) {
+            for (int i = 0; i < jobCount; ++i) {
+                ScratchWorker worker = new ScratchWorker(configuration.getFileMappings(), cutters, sourceCharset,
+                        languageVersion, language.getParser(configuration.getLanguageVersion()),
+                        configuration.getInvariantCheckerConfig().createChecker());
+                workers.add(worker);
+                idleWorkers.add(worker);
+            }
+            executor = Executors.newFixedThreadPool(jobCount, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "scm-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            executor = null;
         }
-        currentRoots = ASTCutter.commitAll(cutters);
     }
 
-    private BigInteger hashAllInputsOrNull() throws IOException {
-        if (messageDigest == null) {
-            return null;
+    /**
+     * Commits the current state of all the files and updates the node ownership for the changed ones.
+     *
+     * @return <code>false</code> if some file cannot be parsed, nothing is committed then
+     */
+    private boolean commitAllCutters() {
+        List<Node> roots = ASTCutter.commitAll(cutters, parsingPool);
+        if (roots == null) {
+            return false;
+        }
+        currentRoots = roots;
+        for (int i = 0; i < cutters.size(); ++i) {
+            TreeSnapshot snapshot = cutters.get(i).getSnapshot();
+            if (i == indexedSnapshots.size()) {
+                indexedSnapshots.add(null);
+            }
+            TreeSnapshot previous = indexedSnapshots.get(i);
+            if (previous != snapshot) {
+                if (previous != null) {
+                    ownership.removeAll(previous);
+                }
+                ownership.addAll(i, snapshot);
+                indexedSnapshots.set(i, snapshot);
+            }
         }
-        messageDigest.reset();
+        return true;
+    }
+
+    private Fingerprint hashAllInputs() {
         for (ASTCutter cutter: cutters) {
-            cutter.hashScratchFile(messageDigest);
+            hasher.update(cutter.getScratchFingerprint());
+        }
+        return hasher.finish();
+    }
+
+    /**
+     * Get the same hash as {@link #hashAllInputs()} would return after removing the nodes,
+     * but without producing the trimmed texts.
+     *
+     * @param nodesToRemove Nodes split by file, see {@link #splitByFile(Collection)}
+     */
+    private Fingerprint predictHash(List<BitSet> nodesToRemove, FingerprintHasher withHasher) {
+        Fingerprint[] fileHashes = new Fingerprint[cutters.size()];
+        for (int i = 0; i < cutters.size(); ++i) {
+            fileHashes[i] = cutters.get(i).predictFingerprint(nodesToRemove.get(i), withHasher);
+        }
+        for (Fingerprint fileHash : fileHashes) {
+            withHasher.update(fileHash);
+        }
+        return withHasher.finish();
+    }
+
+    /**
+     * Checks the invariant, unless its verdict for the same inputs is already cached by some previous run.
+     *
+     * @param hash Hash of the inputs being checked
+     */
+    private boolean checkInvariant(Invariant checker, Fingerprint hash) throws Exception {
+        if (resultCache == null) {
+            return checker.checkIsSatisfied();
+        }
+        Boolean cached = resultCache.lookup(hash);
+        if (cached != null) {
+            return cached;
+        }
+        boolean result = checker.checkIsSatisfied();
+        // do not persist the verdicts of checks that were possibly cut short, either by us or by a time limit
+        if (!Thread.currentThread().isInterrupted() && checker.isLastVerdictReproducible()) {
+            resultCache.store(hash, result);
         }
-        return new BigInteger(1, messageDigest.digest());
+        return result;
     }
 
     @Override
     public boolean allInputsAreParseable() throws IOException {
+        if (parsingPool != null) {
+            return parsingPool.applyToAll(cutters, new ParsingPool.CutterAction() {
+                @Override
+                public boolean apply(ASTCutter cutter, Parser parser) {
+                    return cutter.isParseable(parser, cutter.getScratchContents());
+                }
+            });
+        }
         for (ASTCutter cutter: cutters) {
             if (!cutter.isScratchFileParseable()) {
                 return false;
@@ -85,6 +244,38 @@ public class SourceCodeMinimizer implements InvariantOperations, MinimizerOperat
         return true;
     }
 
+    @Override
+    public LanguageVersion getLanguageVersion() {
+        return languageVersion;
+    }
+
+    @Override
+    public List<Path> getScratchFiles() {
+        return Collections.unmodifiableList(scratchFiles);
+    }
+
+    @Override
+    public String getScratchFileContents(int index) {
+        return cutters.get(index).getScratchContents();
+    }
+
+    @Override
+    public void writeScratchFiles() throws IOException {
+        for (ASTCutter cutter: cutters) {
+            cutter.syncScratchFile();
+        }
+    }
+
+    @Override
+    public Path getWorkingDirectory() {
+        return null;
+    }
+
+    @Override
+    public String adaptCommandLine(String commandLine) {
+        return commandLine;
+    }
+
     @Override
     public NodeInformationProvider getNodeInformationProvider() {
         return language.getNodeInformationProvider();
@@ -98,24 +289,27 @@ public class SourceCodeMinimizer implements InvariantOperations, MinimizerOperat
      * @throws ContinueException If successful and <code>throwOnSuccess == true</code>
      */
     private boolean tryCommit(boolean throwOnSuccess) throws Exception {
+        return tryCommit(hashAllInputs(), throwOnSuccess);
+    }
+
+    /**
+     * Like {@link #tryCommit(boolean)}, with the hash of the inputs known in advance.
+     */
+    private boolean tryCommit(Fingerprint hash, boolean throwOnSuccess) throws Exception {
         // first, skip if already tested this file set
-        BigInteger hash = hashAllInputsOrNull();
-        if (hash != null && knownHashes.contains(hash)) {
+        if (!knownHashes.add(hash)) {
             return false;
         }
-        knownHashes.add(hash);
 
         // then, check invariant
-        if (!invariant.checkIsSatisfied()) {
+        if (!checkInvariant(invariant, hash)) {
             return false;
         }
 
         // now, invariant is satisfied
-        List<Node> roots = ASTCutter.commitAll(cutters);
-        if (roots == null) {
+        if (!commitAllCutters()) {
             return false;
         }
-        currentRoots = roots;
         // and parsed OK, so unwinding...
         if (throwOnSuccess) {
             throw new ContinueException();
@@ -136,32 +330,78 @@ public class SourceCodeMinimizer implements InvariantOperations, MinimizerOperat
         tryCommit(throwOnSuccess);
     }
 
-    private void removeNodesWithVerboseError(ASTCutter cutter, Collection<Node> nodesToRemove) throws IOException {
+    private String removeNodesWithVerboseError(ASTCutter cutter, BitSet nodesToRemove) {
         // Give user some information when AST nodes turns out overlapping
         try {
-            cutter.writeTrimmedSource(nodesToRemove);
+            return cutter.trimSource(nodesToRemove);
         } catch (IllegalArgumentException ex) {
             ex.printStackTrace(System.err);
             System.err.println("An error occurred while cutting off the following nodes:");
-            for (Node node: nodesToRemove) {
+            for (int i = nodesToRemove.nextSetBit(0); i >= 0; i = nodesToRemove.nextSetBit(i + 1)) {
+                Node node = cutter.getSnapshot().getNode(i);
                 String line = cutter.getScratchFile().toString() + ":" + Helper.explainNode(node);
                 System.err.println(line);
             }
             System.exit(1);
+            return null;
         }
     }
 
-    private void writeTrimmedSources(Collection<Node> nodesToRemove) throws IOException {
-        Set<Node> nodes = new HashSet<>(nodesToRemove);
-        for (ASTCutter cutter : cutters) {
-            Set<Node> currentNodesToRemove = new HashSet<>(cutter.getAllNodes());
-            currentNodesToRemove.retainAll(nodes);
-            removeNodesWithVerboseError(cutter, currentNodesToRemove);
-            nodes.removeAll(currentNodesToRemove);
+    private void writeTrimmedSources(List<BitSet> nodesToRemove) {
+        List<String> texts = trimSources(nodesToRemove);
+        for (int i = 0; i < cutters.size(); ++i) {
+            cutters.get(i).setScratchContents(texts.get(i));
+        }
+    }
+
+    /**
+     * Get the texts of all the files with the nodes removed, does not change the cutters.
+     *
+     * @param nodesToRemove Nodes split by file, see {@link #splitByFile(Collection)}
+     */
+    private List<String> trimSources(List<BitSet> nodesToRemove) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < cutters.size(); ++i) {
+            result.add(removeNodesWithVerboseError(cutters.get(i), nodesToRemove.get(i)));
         }
-        if (!nodes.isEmpty()) {
+        return result;
+    }
+
+    /**
+     * Get the nodes belonging to each of the files as indices in their {@link TreeSnapshot}s, in the order of the cutters.
+     */
+    private List<BitSet> splitByFile(Collection<Node> nodesToRemove) {
+        // untouched files share the empty set, so they keep their committed texts and hashes
+        List<BitSet> result = new ArrayList<>(Collections.nCopies(cutters.size(), NO_NODES));
+        boolean unknownNodes = false;
+        for (Node node : nodesToRemove) {
+            int file = ownership.getFile(node);
+            if (file < 0) {
+                unknownNodes = true;
+                continue;
+            }
+            TreeSnapshot snapshot = cutters.get(file).getSnapshot();
+            if (result.get(file) == NO_NODES) {
+                result.set(file, new BitSet(snapshot.size()));
+            }
+            result.get(file).set(snapshot.indexOf(node));
+        }
+        if (unknownNodes) {
             System.err.println("WARNING: strategy tries to remove unknown nodes!");
         }
+        return result;
+    }
+
+    @Override
+    public int getRemovedSize(Collection<Node> nodesToRemove) {
+        List<BitSet> nodesByFile = splitByFile(nodesToRemove);
+        int result = 0;
+        for (int i = 0; i < cutters.size(); ++i) {
+            if (nodesByFile.get(i) != NO_NODES) {
+                result += cutters.get(i).predictRemovedLength(nodesByFile.get(i));
+            }
+        }
+        return result;
     }
 
     @Override
@@ -171,12 +411,141 @@ public class SourceCodeMinimizer implements InvariantOperations, MinimizerOperat
             // to avoid infinite loops
             return;
         }
-        writeTrimmedSources(nodesToRemove);
+        List<BitSet> nodesByFile = splitByFile(nodesToRemove);
+        // duplicate variants are rejected before anything is cut
+        Fingerprint hash = predictHash(nodesByFile, hasher);
+        if (knownHashes.contains(hash)) {
+            return;
+        }
+        writeTrimmedSources(nodesByFile);
+        tryCommit(hash, true);
+    }
+
+    @Override
+    public void tryReplaceNode(Node node, Node replacement) throws Exception {
+        int file = ownership.getFile(node);
+        if (file < 0 || ownership.getFile(replacement) != file) {
+            System.err.println("WARNING: strategy tries to replace unknown nodes!");
+            return;
+        }
+        for (ASTCutter cutter : cutters) {
+            cutter.rollbackChange();
+        }
+        ASTCutter cutter = cutters.get(file);
+        TreeSnapshot snapshot = cutter.getSnapshot();
+        String text = cutter.replaceNode(snapshot.indexOf(node), snapshot.indexOf(replacement));
+        if (text == cutter.getScratchContents()) {
+            // cannot be cut
+            return;
+        }
+        cutter.setScratchContents(text);
         tryCommit(true);
     }
 
+    /**
+     * Checks the variant using some idle worker, does not commit anything.
+     *
+     * @param abandoned Whether the result is not interesting anymore
+     */
+    private boolean checkInWorker(Collection<Node> variant, AtomicBoolean abandoned) throws Exception {
+        committedStateLock.readLock().lock();
+        try {
+            if (abandoned.get()) {
+                return false;
+            }
+            ScratchWorker worker = idleWorkers.take();
+            try {
+                List<BitSet> nodesByFile = splitByFile(variant);
+                Fingerprint hash = predictHash(nodesByFile, worker.getHasher());
+                if (knownHashes.contains(hash)) {
+                    return false;
+                }
+                worker.setScratchContents(trimSources(nodesByFile));
+                boolean result = checkInvariant(worker.getInvariant(), hash);
+                if (abandoned.get()) {
+                    // possibly aborted, see below
+                    return false;
+                }
+                knownHashes.add(hash);
+                return result;
+            } finally {
+                idleWorkers.add(worker);
+            }
+        } finally {
+            committedStateLock.readLock().unlock();
+        }
+    }
+
+    private static boolean getResult(Future<Boolean> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Checks all the variants simultaneously, then commits the first successful one
+     * in the order they were passed, so the result is the same as for sequential checking.
+     */
+    private void tryRemoveVariantsInParallel(Collection<Collection<Node>> variants) throws Exception {
+        final AtomicBoolean abandoned = new AtomicBoolean();
+        List<Collection<Node>> submitted = new ArrayList<>();
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (final Collection<Node> variant : variants) {
+            if (variant.isEmpty()) {
+                // see tryRemoveNodes()
+                continue;
+            }
+            submitted.add(variant);
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return checkInWorker(variant, abandoned);
+                }
+            }));
+        }
+
+        Collection<Node> accepted = null;
+        try {
+            for (int i = 0; i < results.size() && accepted == null; ++i) {
+                if (getResult(results.get(i))) {
+                    accepted = submitted.get(i);
+                }
+            }
+        } finally {
+            // The rest are useless speculations now: stop them and wait until
+            // nobody reads the committed state. Interrupted checks leave no verdict.
+            abandoned.set(true);
+            for (Future<Boolean> result : results) {
+                result.cancel(true);
+            }
+            // interruption does not reach a thread reading the compiler output, so kill the compilers
+            for (ScratchWorker worker : workers) {
+                worker.getInvariant().abortCheck();
+            }
+            committedStateLock.writeLock().lock();
+            committedStateLock.writeLock().unlock();
+        }
+
+        if (accepted != null) {
+            // the invariant is already checked by the worker
+            writeTrimmedSources(splitByFile(accepted));
+            if (commitAllCutters()) {
+                throw new ContinueException();
+            }
+        }
+    }
+
     @Override
     public void tryRemoveMultipleVariants(Collection<Collection<Node>> variants) throws Exception {
+        if (executor != null) {
+            tryRemoveVariantsInParallel(variants);
+            return;
+        }
         for (Collection<Node> variant: variants) {
             tryRemoveNodes(variant);
         }
@@ -184,14 +553,14 @@ public class SourceCodeMinimizer implements InvariantOperations, MinimizerOperat
 
     @Override
     public void forceRemoveNodesAndExit(Collection<Node> nodesToRemove) throws Exception {
-        writeTrimmedSources(nodesToRemove);
+        writeTrimmedSources(splitByFile(nodesToRemove));
         throw new ExitException();
     }
 
     private int getTotalFileSize() {
         int result = 0;
         for (ASTCutter cutter: cutters) {
-            result += (int) cutter.getScratchFile().toFile().length();
+            result += cutter.getCommittedSize();
         }
         return result;
     }
@@ -221,6 +590,11 @@ public class SourceCodeMinimizer implements InvariantOperations, MinimizerOperat
                 + totalSize + " bytes (" + pcSize + "%), "
                 + totalNodeCount + " nodes (" + pcNodes + "%)");
         System.out.flush();
+        if (knownHashes.isApproximate() && !knownHashesApproximationReported) {
+            knownHashesApproximationReported = true;
+            System.err.println("WARNING: checked variants exceed the memory limit, switched to a Bloom filter: "
+                    + "a few variants may be skipped without checking.");
+        }
     }
 
     Invariant getInvariant() {
@@ -231,19 +605,58 @@ public class SourceCodeMinimizer implements InvariantOperations, MinimizerOperat
         return strategy;
     }
 
-    public void runMinimization() throws Exception {
-        strategy.initialize(this);
-        invariant.initialize(this);
+    int getPassNumber() {
+        return passNumber;
+    }
 
-        final int originalSize = getTotalFileSize();
-        final int originalNodeCount = getTotalNodeCount();
-        System.out.println("Original file(s): " + originalSize + " bytes, " + originalNodeCount + " nodes.");
-        System.out.flush();
+    /**
+     * Saves the progress, unless the previous checkpoint is recent enough.
+     */
+    private void saveCheckpoint(boolean force) throws IOException {
+        long now = System.currentTimeMillis();
+        if (checkpoint == null || !force && now - lastCheckpointTime < checkpointInterval) {
+            return;
+        }
+        Checkpoint.State state = new Checkpoint.State();
+        state.stage = currentStage;
+        state.passNumber = passNumber;
+        state.originalSize = originalSize;
+        state.originalNodeCount = originalNodeCount;
+        for (ASTCutter cutter : cutters) {
+            state.files.add(cutter.getCommittedContents().getBytes(sourceCharset));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        knownHashes.save(new DataOutputStream(bytes));
+        state.knownVariants = bytes.toByteArray();
+        bytes = new ByteArrayOutputStream();
+        invariant.saveCalibration(new DataOutputStream(bytes));
+        state.calibration = bytes.toByteArray();
+        for (MinimizationStrategy stageStrategy : strategies) {
+            bytes = new ByteArrayOutputStream();
+            stageStrategy.saveState(new DataOutputStream(bytes));
+            state.strategies.add(bytes.toByteArray());
+        }
+        checkpoint.save(state);
+        lastCheckpointTime = now;
+    }
 
-        tryCleanup(false);
-        printStats("After initial white-space cleanup", originalSize, originalNodeCount);
+    private void restoreProgress() throws IOException {
+        for (int i = 0; i < strategies.size(); ++i) {
+            strategies.get(i).loadState(new DataInputStream(new ByteArrayInputStream(resumedState.strategies.get(i))));
+        }
+        currentStage = resumedState.stage;
+        passNumber = resumedState.passNumber;
+        originalSize = resumedState.originalSize;
+        originalNodeCount = resumedState.originalNodeCount;
+        resumedState = null;
+    }
 
-        int passNumber = 0;
+    /**
+     * Runs the current strategy until it cannot make any step.
+     *
+     * @return <code>false</code> if the strategy requested to exit
+     */
+    private boolean runStage() throws Exception {
         boolean shouldContinue = true;
         while (shouldContinue) {
             passNumber += 1;
@@ -258,12 +671,65 @@ public class SourceCodeMinimizer implements InvariantOperations, MinimizerOperat
             } catch (ContinueException ex) {
                 shouldContinue = true;
             } catch (ExitException ex) {
-                shouldContinue = false;
+                printStats("After pass #" + passNumber, originalSize, originalNodeCount);
+                return false;
             }
 
             String cleanupLabel = performCleanup ? " (white-space cleanup)" : "";
 
             printStats("After pass #" + passNumber + cleanupLabel, originalSize, originalNodeCount);
+            if (shouldContinue) {
+                saveCheckpoint(false);
+            }
+        }
+        return true;
+    }
+
+    public void runMinimization() throws Exception {
+        for (MinimizationStrategy stageStrategy : strategies) {
+            stageStrategy.initialize(this);
+        }
+        invariant.initialize(this);
+        if (resumedState != null) {
+            // the outputs contain the checkpoint contents, so the original input is not at hand anymore
+            invariant.loadCalibration(new DataInputStream(new ByteArrayInputStream(resumedState.calibration)));
+        } else {
+            invariant.calibrate();
+        }
+        for (ScratchWorker worker : workers) {
+            worker.getInvariant().initialize(worker);
+            worker.getInvariant().copyCalibration(invariant);
+        }
+
+        if (resumedState != null) {
+            restoreProgress();
+            System.out.println("Resumed from checkpoint after pass #" + passNumber);
+        } else {
+            originalSize = getTotalFileSize();
+            originalNodeCount = getTotalNodeCount();
+            System.out.println("Original file(s): " + originalSize + " bytes, " + originalNodeCount + " nodes.");
+        }
+        System.out.flush();
+
+        tryCleanup(false);
+        printStats("After initial white-space cleanup", originalSize, originalNodeCount);
+        lastCheckpointTime = System.currentTimeMillis();
+
+        // the earlier stages are supposed to be coarser, shrinking the input for the finer ones
+        while (currentStage < strategies.size()) {
+            strategy = strategies.get(currentStage);
+            if (strategies.size() > 1) {
+                System.out.println("Running strategy " + strategyNames.get(currentStage)
+                        + " (stage " + (currentStage + 1) + " of " + strategies.size() + ")");
+                System.out.flush();
+            }
+            if (!runStage()) {
+                // the whole run is finished
+                currentStage = strategies.size();
+                break;
+            }
+            currentStage += 1;
+            saveCheckpoint(false);
         }
 
         tryCleanup(false);
@@ -273,13 +739,42 @@ public class SourceCodeMinimizer implements InvariantOperations, MinimizerOperat
             tryCommit(false);
         }
         printStats("After blank line clean up", originalSize, originalNodeCount);
+        // so resuming a finished run does not repeat anything
+        saveCheckpoint(true);
 
         for (ASTCutter cutter : cutters) {
             cutter.rollbackChange(); // to the last committed state
+            cutter.syncScratchFile();
             cutter.close();
         }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (parsingPool != null) {
+            parsingPool.close();
+        }
+        invariant.close();
+        if (resultCache != null) {
+            resultCache.close();
+        }
+        for (ScratchWorker worker : workers) {
+            worker.getInvariant().close();
+            worker.close();
+        }
 
         invariant.printStatistics(System.out);
-        strategy.printStatistics(System.out);
+        for (int i = 0; i < workers.size(); ++i) {
+            System.out.println("Worker #" + (i + 1) + ":");
+            workers.get(i).getInvariant().printStatistics(System.out);
+        }
+        if (resultCache != null) {
+            resultCache.printStatistics(System.out);
+        }
+        if (checkpoint != null) {
+            System.out.println("Checkpoints saved: " + checkpoint.getSavedCount());
+        }
+        for (MinimizationStrategy stageStrategy : strategies) {
+            stageStrategy.printStatistics(System.out);
+        }
     }
 }
@@ -0,0 +1,140 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Knowledge about the grammar of some language in terms of AST node types (see {@link Node#getXPathNodeName()}):
+ * which children are optional, i.e. can be cut off leaving the parent syntactically valid,
+ * and which descendants can take the place of a node.
+ *
+ * The rules are conservative: a child being cut off with its whole text range, so children followed
+ * by separators or introduced by keywords not belonging to them are not listed.
+ */
+final class SyntaxRules {
+    private static final SyntaxRules JAVA = new SyntaxRules()
+            .optional("CompilationUnit", "PackageDeclaration", "ImportDeclaration", "TypeDeclaration")
+            .optional("TypeDeclaration", "Annotation")
+            .optional("ClassOrInterfaceDeclaration", "TypeParameters", "ExtendsList", "ImplementsList")
+            .optional("ClassOrInterfaceBody", "ClassOrInterfaceBodyDeclaration")
+            .optional("EnumBody", "ClassOrInterfaceBodyDeclaration")
+            .optional("AnnotationTypeBody", "AnnotationTypeMemberDeclaration")
+            .optional("ClassOrInterfaceBodyDeclaration", "Annotation")
+            .optional("ConstructorDeclaration", "ExplicitConstructorInvocation", "BlockStatement")
+            .optional("Block", "BlockStatement")
+            .optional("SwitchStatement", "BlockStatement")
+            .optional("ForStatement", "ForInit", "ForUpdate")
+            .optional("ReturnStatement", "Expression")
+            .optional("Arguments", "ArgumentList")
+            .optional("NormalAnnotation", "MemberValuePairs")
+            .optional("ClassOrInterfaceType", "TypeArguments")
+            .replaceable("ClassOrInterfaceBody", "ClassOrInterfaceBody")
+            .replaceable("Block", "Block")
+            .replaceable("BlockStatement", "Statement", "BlockStatement")
+            .replaceable("Statement", "Statement")
+            .replaceable("VariableInitializer", "VariableInitializer", "Expression")
+            .replaceable("Expression", "Expression", "PrimaryExpression")
+            // a primary expression binds tighter than any operator, so can replace any operand
+            .replaceable("ConditionalExpression", "PrimaryExpression")
+            .replaceable("ConditionalOrExpression", "PrimaryExpression")
+            .replaceable("ConditionalAndExpression", "PrimaryExpression")
+            .replaceable("InclusiveOrExpression", "PrimaryExpression")
+            .replaceable("ExclusiveOrExpression", "PrimaryExpression")
+            .replaceable("AndExpression", "PrimaryExpression")
+            .replaceable("EqualityExpression", "PrimaryExpression")
+            .replaceable("InstanceOfExpression", "PrimaryExpression")
+            .replaceable("RelationalExpression", "PrimaryExpression")
+            .replaceable("ShiftExpression", "PrimaryExpression")
+            .replaceable("AdditiveExpression", "PrimaryExpression")
+            .replaceable("MultiplicativeExpression", "PrimaryExpression")
+            .replaceable("UnaryExpression", "PrimaryExpression")
+            .replaceable("UnaryExpressionNotPlusMinus", "PrimaryExpression")
+            .replaceable("CastExpression", "PrimaryExpression")
+            .replaceable("PrimaryExpression", "PrimaryExpression")
+            .replaceable("ArgumentList", "ArgumentList")
+            .replaceable("Type", "Type", "ReferenceType", "PrimitiveType", "ClassOrInterfaceType")
+            .replaceable("ReferenceType", "ReferenceType", "ClassOrInterfaceType")
+            .replaceable("ClassOrInterfaceType", "ClassOrInterfaceType");
+
+    // Elements and equations are terminated by semicolons not belonging to their nodes
+    private static final SyntaxRules MODELICA = new SyntaxRules()
+            .optional("Composition", "ElementList", "EquationSection", "AlgorithmSection")
+            .optional("Comment", "StringComment", "Annotation")
+            .optional("SimpleLongClassSpecifier", "StringComment")
+            .optional("ComponentDeclaration", "Comment")
+            .optional("Equation", "Comment")
+            .optional("Statement", "Comment")
+            .optional("ComponentClause", "TypePrefix")
+            .optional("Declaration", "ShortModification", "LongModification")
+            .optional("ElementModification", "ShortModification", "LongModification")
+            .optional("ClassModification", "ArgumentList")
+            .replaceable("ClassDefinition", "ClassDefinition")
+            .replaceable("Composition", "Composition")
+            .replaceable("ElementList", "ElementList")
+            .replaceable("Argument", "Argument")
+            .replaceable("ArgumentList", "ArgumentList")
+            .replaceable("ClassModification", "ClassModification")
+            .replaceable("FunctionArgument", "FunctionArgument")
+            .replaceable("FunctionArguments", "FunctionArguments");
+
+    private final Map<String, Set<String>> optionalChildren = new HashMap<>();
+    private final Map<String, Set<String>> compatibleDescendants = new HashMap<>();
+
+    private SyntaxRules() {
+    }
+
+    /**
+     * Get the rules for the language by its terse name or <code>null</code> if not known.
+     */
+    static SyntaxRules forLanguage(String terseName) {
+        if ("java".equals(terseName)) {
+            return JAVA;
+        }
+        if ("modelica".equals(terseName)) {
+            return MODELICA;
+        }
+        return null;
+    }
+
+    private static void addAll(Map<String, Set<String>> map, String key, String... values) {
+        Set<String> set = map.get(key);
+        if (set == null) {
+            set = new HashSet<>();
+            map.put(key, set);
+        }
+        set.addAll(Arrays.asList(values));
+    }
+
+    private SyntaxRules optional(String parentType, String... childTypes) {
+        addAll(optionalChildren, parentType, childTypes);
+        return this;
+    }
+
+    private SyntaxRules replaceable(String type, String... descendantTypes) {
+        addAll(compatibleDescendants, type, descendantTypes);
+        return this;
+    }
+
+    private static boolean contains(Map<String, Set<String>> map, String key, String value) {
+        Set<String> set = map.get(key);
+        return set != null && set.contains(value);
+    }
+
+    boolean isOptional(Node node) {
+        Node parent = node.jjtGetParent();
+        return parent != null && contains(optionalChildren, parent.getXPathNodeName(), node.getXPathNodeName());
+    }
+
+    boolean isReplaceableWith(Node node, Node descendant) {
+        return contains(compatibleDescendants, node.getXPathNodeName(), descendant.getXPathNodeName());
+    }
+}
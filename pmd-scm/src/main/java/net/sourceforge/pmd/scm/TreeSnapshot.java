@@ -0,0 +1,196 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * A flattened copy of the committed AST of a single file: nodes are numbered in preorder
+ * and everything the cutter needs is kept in parallel primitive arrays,
+ * so sets of nodes can be represented as {@link BitSet}s over these indices.
+ *
+ * The subtree of the node <code>i</code> consists of the nodes from <code>i</code>
+ * (inclusive) to <code>getSubtreeEnd(i)</code> (exclusive).
+ */
+final class TreeSnapshot {
+    private final Node[] nodes;
+    private final int[] parents;
+    private final int[] subtreeEnds;
+    private final int[] beginOffsets;
+    private final int[] endOffsets;
+
+    // Node -> index, open addressing by identity
+    private final Node[] indexKeys;
+    private final int[] indexValues;
+
+    /**
+     * @param root          Root of the committed AST
+     * @param lineOffsets   Offsets of the line starts in the committed text
+     * @param textLength    Length of the committed text
+     * @param validateNodes Whether nodes that end before they start should be treated as not cuttable
+     */
+    TreeSnapshot(Node root, int[] lineOffsets, int textLength, boolean validateNodes) {
+        int count = countNodes(root);
+        nodes = new Node[count];
+        parents = new int[count];
+        subtreeEnds = new int[count];
+        beginOffsets = new int[count];
+        endOffsets = new int[count];
+
+        // iterative preorder traversal, real-world trees are too deep for recursion
+        Node[] pending = new Node[count];
+        int[] pendingParents = new int[count];
+        int pendingCount = 0;
+        pending[pendingCount] = root;
+        pendingParents[pendingCount++] = -1;
+        int index = 0;
+        while (pendingCount > 0) {
+            pendingCount -= 1;
+            Node node = pending[pendingCount];
+            int parent = pendingParents[pendingCount];
+            nodes[index] = node;
+            parents[index] = parent;
+            if (!validateNodes || isValid(node)) {
+                beginOffsets[index] = getOffset(lineOffsets, textLength, node.getBeginLine() - 1, node.getBeginColumn() - 1);
+                endOffsets[index] = getOffset(lineOffsets, textLength, node.getEndLine() - 1, node.getEndColumn());
+            } else {
+                beginOffsets[index] = -1;
+                endOffsets[index] = -1;
+            }
+            for (int i = node.jjtGetNumChildren() - 1; i >= 0; --i) {
+                pending[pendingCount] = node.jjtGetChild(i);
+                pendingParents[pendingCount++] = index;
+            }
+            index += 1;
+        }
+        // children follow their parents in preorder
+        for (int i = count - 1; i >= 0; --i) {
+            if (subtreeEnds[i] == 0) {
+                subtreeEnds[i] = i + 1;
+            }
+            if (parents[i] >= 0) {
+                subtreeEnds[parents[i]] = Math.max(subtreeEnds[parents[i]], subtreeEnds[i]);
+            }
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(count, 1) * 2) * 2;
+        indexKeys = new Node[capacity];
+        indexValues = new int[capacity];
+        for (int i = 0; i < count; ++i) {
+            int slot = findSlot(nodes[i]);
+            indexKeys[slot] = nodes[i];
+            indexValues[slot] = i;
+        }
+    }
+
+    private static int countNodes(Node root) {
+        int result = 0;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            result += 1;
+            for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+                pending.push(node.jjtGetChild(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the start position of the node is not after the end position.
+     */
+    private static boolean isValid(Node node) {
+        return node.getBeginLine() < node.getEndLine()
+                || (node.getBeginLine() == node.getEndLine() && node.getBeginColumn() < node.getEndColumn());
+    }
+
+    /**
+     * Converts 0-based line and column to an absolute offset or -1 if the line does not exist.
+     */
+    private static int getOffset(int[] lineOffsets, int textLength, int line, int column) {
+        if (line < 0 || line >= lineOffsets.length) {
+            return -1;
+        }
+        return Math.min(lineOffsets[line] + column, textLength);
+    }
+
+    private int findSlot(Node node) {
+        int mask = indexKeys.length - 1;
+        int slot = System.identityHashCode(node) * 0x9E3779B9 >>> 1 & mask;
+        while (indexKeys[slot] != null && indexKeys[slot] != node) {
+            slot = slot + 1 & mask;
+        }
+        return slot;
+    }
+
+    int size() {
+        return nodes.length;
+    }
+
+    Node getNode(int index) {
+        return nodes[index];
+    }
+
+    Node getRoot() {
+        return nodes[0];
+    }
+
+    /**
+     * @return Index of the node or -1 if it does not belong to this tree
+     */
+    int indexOf(Node node) {
+        int slot = findSlot(node);
+        return indexKeys[slot] == null ? -1 : indexValues[slot];
+    }
+
+    /**
+     * Get the set of indices of the nodes belonging to this tree, the rest are ignored.
+     */
+    BitSet indicesOf(Collection<Node> collection) {
+        BitSet result = new BitSet(nodes.length);
+        for (Node node : collection) {
+            int index = indexOf(node);
+            if (index >= 0) {
+                result.set(index);
+            }
+        }
+        return result;
+    }
+
+    int getParent(int index) {
+        return parents[index];
+    }
+
+    int getSubtreeEnd(int index) {
+        return subtreeEnds[index];
+    }
+
+    /**
+     * Whether the node has valid position, so it can be cut off as a whole.
+     */
+    boolean isCuttable(int index) {
+        return beginOffsets[index] >= 0;
+    }
+
+    /**
+     * @return Offset of the node start, or -1 if the node is not cuttable
+     */
+    int getBeginOffset(int index) {
+        return beginOffsets[index];
+    }
+
+    /**
+     * @return Offset of the character after the node, or -1 if the node is not cuttable
+     */
+    int getEndOffset(int index) {
+        return endOffsets[index];
+    }
+}
@@ -7,8 +7,26 @@ package net.sourceforge.pmd.scm.invariants;
 import org.apache.commons.lang3.SystemUtils;
 
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.converters.IParameterSplitter;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 /**
  * Abstract implementation of invariant checkers that run some external compiler process.
@@ -19,41 +37,275 @@ public abstract class AbstractExternalProcessInvariant implements Invariant {
                 description = "Command line for running a compiler on a source to be minimized",
                 required = true)
         private String compilerCommandLine;
+
+        @Parameter(names = "--timeout", description = "Time limit for a single compiler run in milliseconds, 0 for no limit")
+        private long timeout;
+
+        @Parameter(names = "--adaptive-timeout",
+                description = "Limit compiler runs to this many times the duration of the first one (on the initial input), 0 to disable")
+        private double adaptiveTimeoutFactor;
+
+        @Parameter(names = "--timeout-satisfies",
+                description = "Consider compiler runs exceeding the time limit as satisfying the invariant (for minimizing hangs)")
+        private boolean timeoutSatisfies;
+
+        @Parameter(names = "--output-contains", description = "Text the compiler output should contain (can be repeated)",
+                splitter = NoSplitter.class)
+        private List<String> outputContains = new ArrayList<>();
+
+        @Parameter(names = "--output-not-contains", description = "Text the compiler output should not contain (can be repeated)",
+                splitter = NoSplitter.class)
+        private List<String> outputNotContains = new ArrayList<>();
+
+        @Parameter(names = "--output-matches",
+                description = "Regular expression some line of the compiler output should match (can be repeated)",
+                splitter = NoSplitter.class)
+        private List<String> outputMatches = new ArrayList<>();
+
+        @Parameter(names = "--output-not-matches",
+                description = "Regular expression no line of the compiler output should match (can be repeated)",
+                splitter = NoSplitter.class)
+        private List<String> outputNotMatches = new ArrayList<>();
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public double getAdaptiveTimeoutFactor() {
+            return adaptiveTimeoutFactor;
+        }
+
+        public boolean isTimeoutSatisfies() {
+            return timeoutSatisfies;
+        }
+
+        /**
+         * Get the texts the output should contain, in addition to ones specified with <code>--output-contains</code>.
+         */
+        protected List<String> getRequiredOutput() {
+            return outputContains;
+        }
+
+        protected Charset getOutputCharset() {
+            return Charset.defaultCharset();
+        }
+
+        OutputMatcher createOutputMatcher() {
+            return new OutputMatcher(getRequiredOutput(), outputNotContains, outputMatches, outputNotMatches, getOutputCharset());
+        }
     }
 
-    protected abstract static class AbstractFactory implements InvariantConfigurationFactory {
-        String name;
+    /**
+     * Passes option values as is, since patterns may contain commas.
+     */
+    public static final class NoSplitter implements IParameterSplitter {
+        @Override
+        public List<String> split(String value) {
+            return Collections.singletonList(value);
+        }
+    }
 
+    protected abstract static class AbstractFactory extends AbstractInvariantFactory {
         AbstractFactory(String name) {
-            this.name = name;
+            super(name);
         }
+    }
 
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
         @Override
-        public String getName() {
-            return name;
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "scm-timeout-watchdog");
+            thread.setDaemon(true);
+            return thread;
         }
-    }
+    });
 
     private InvariantOperations ops;
+    private final String compilerCommandLine;
+    private final OutputMatcher outputMatcher;
     private String[] commandArgs;
     private int spawnCount;
     private int fruitfulTests;
 
-    private static String[] createCommandLine(AbstractConfiguration configuration) {
+    private final long fixedTimeout;
+    private final double adaptiveTimeoutFactor;
+    private final boolean timeoutSatisfies;
+    private long timeLimit;
+    private int timeoutCount;
+
+    // state of the current compiler run, a fresh flag for every run, so a late watchdog cannot mark the next one
+    private volatile Process currentProcess;
+    private ScheduledFuture<?> currentWatchdog;
+    private AtomicBoolean currentRunTimedOut = new AtomicBoolean();
+
+    private static String[] createCommandLine(String compilerCommandLine) {
         if (SystemUtils.IS_OS_WINDOWS) {
-            return new String[] { "cmd.exe", "/C", configuration.compilerCommandLine };
+            return new String[] { "cmd.exe", "/C", compilerCommandLine };
         } else {
-            return new String[] { "/bin/sh", "-c", configuration.compilerCommandLine };
+            return new String[] { "/bin/sh", "-c", compilerCommandLine };
         }
     }
 
     protected AbstractExternalProcessInvariant(AbstractConfiguration configuration) {
-        commandArgs = createCommandLine(configuration);
+        compilerCommandLine = configuration.compilerCommandLine;
+        outputMatcher = configuration.createOutputMatcher();
+        fixedTimeout = configuration.timeout;
+        adaptiveTimeoutFactor = configuration.adaptiveTimeoutFactor;
+        timeoutSatisfies = configuration.timeoutSatisfies;
+        timeLimit = fixedTimeout;
     }
 
     @Override
     public void initialize(InvariantOperations ops) {
         this.ops = ops;
+        commandArgs = createCommandLine(ops.adaptCommandLine(compilerCommandLine));
+    }
+
+    /**
+     * Kills the process together with all its descendants (such as the compiler started by the shell).
+     */
+    protected static void destroyProcessTree(Process process) {
+        Object[] descendants = new Object[0];
+        Method destroyDescendant = null;
+        try {
+            // Java 9+ only, while the SCM still targets Java 8
+            descendants = ((Stream<?>) Process.class.getMethod("descendants").invoke(process)).toArray();
+            destroyDescendant = Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly");
+        } catch (ReflectiveOperationException ex) {
+            // can only kill the direct child
+        }
+        process.destroyForcibly();
+        for (Object descendant : descendants) {
+            try {
+                destroyDescendant.invoke(descendant);
+            } catch (ReflectiveOperationException ex) {
+                // already exited or not permitted, nothing to do
+            }
+        }
+    }
+
+    /**
+     * Get the current time limit for a single compiler run, in milliseconds, or 0 if unlimited.
+     */
+    protected final long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Notifies that the current check exceeded the time limit, so its result should be replaced
+     * with the configured verdict. Called automatically for processes started by {@link #startProcess(ProcessBuilder)}.
+     */
+    protected final void markTimedOut() {
+        currentRunTimedOut.set(true);
+    }
+
+    /**
+     * Starts the compiler process for the current check.
+     *
+     * The whole process tree is killed once the time limit is exceeded or the check is finished.
+     */
+    protected final Process startProcess(ProcessBuilder pb) throws IOException {
+        final Process process = pb.start();
+        final AtomicBoolean timedOut = currentRunTimedOut;
+        currentProcess = process;
+        if (Thread.currentThread().isInterrupted()) {
+            // aborted before abortCheck() could see the process
+            destroyProcessTree(process);
+        }
+        if (timeLimit > 0) {
+            currentWatchdog = WATCHDOG.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timedOut.set(true);
+                    destroyProcessTree(process);
+                }
+            }, timeLimit, TimeUnit.MILLISECONDS);
+        }
+        return process;
+    }
+
+    /**
+     * Reads the output of the compiler until it is known whether it satisfies the output patterns.
+     *
+     * @param untilEnd Whether the whole output should be drained, even if it is known to satisfy the patterns
+     *                 before its end (such as when the exit code is to be checked afterwards)
+     */
+    protected final boolean outputSatisfies(InputStream output, boolean untilEnd) throws IOException {
+        return outputMatcher.matches(output, untilEnd);
+    }
+
+    /**
+     * Checks whether the already collected output of the compiler satisfies the output patterns.
+     */
+    protected final boolean outputSatisfies(String output) {
+        return outputMatcher.matches(output);
+    }
+
+    /**
+     * Describes the output patterns to be appended to the invariant description.
+     */
+    protected final String describeOutputPatterns() {
+        return outputMatcher.isEmpty() ? "" : ", " + outputMatcher;
+    }
+
+    private void finishRun() {
+        if (currentWatchdog != null) {
+            // a watchdog that has already fired marks only the flag of its own run
+            currentWatchdog.cancel(true);
+            currentWatchdog = null;
+        }
+        if (currentProcess != null) {
+            // no stray grandchildren even if the result was determined early
+            destroyProcessTree(currentProcess);
+            currentProcess = null;
+        }
+    }
+
+    /**
+     * Derives the time limit from the duration of a run on the original input. The first run of a parallel
+     * worker is some speculative variant instead, possibly failing much faster, so the workers copy the limit.
+     */
+    @Override
+    public void calibrate() throws Exception {
+        if (adaptiveTimeoutFactor <= 0) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        checkIsSatisfied();
+        if (!currentRunTimedOut.get()) {
+            long originalRunMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            long adapted = Math.max(1, (long) Math.ceil(adaptiveTimeoutFactor * originalRunMillis));
+            timeLimit = fixedTimeout > 0 ? Math.min(fixedTimeout, adapted) : adapted;
+        }
+    }
+
+    @Override
+    public void copyCalibration(Invariant calibrated) {
+        if (calibrated instanceof AbstractExternalProcessInvariant) {
+            timeLimit = ((AbstractExternalProcessInvariant) calibrated).timeLimit;
+        }
+    }
+
+    @Override
+    public void saveCalibration(DataOutput out) throws IOException {
+        out.writeLong(timeLimit);
+    }
+
+    @Override
+    public void loadCalibration(DataInput in) throws IOException {
+        timeLimit = in.readLong();
+    }
+
+    /**
+     * Prepares to start the compiler command line specified by user.
+     */
+    protected final ProcessBuilder createProcessBuilder() {
+        ProcessBuilder pb = new ProcessBuilder().command(commandArgs);
+        Path workingDirectory = ops.getWorkingDirectory();
+        if (workingDirectory != null) {
+            pb.directory(workingDirectory.toFile());
+        }
+        return pb;
     }
 
     protected abstract boolean testSatisfied(ProcessBuilder pb) throws Exception;
@@ -65,14 +317,39 @@ public abstract class AbstractExternalProcessInvariant implements Invariant {
             return false;
         }
 
-        // then proceed to spawning subprocess
+        // then proceed to spawning subprocess that reads the files from disk
+        ops.writeScratchFiles();
         spawnCount += 1;
-        boolean result = testSatisfied(new ProcessBuilder().command(commandArgs));
+        ProcessBuilder pb = createProcessBuilder();
+        currentRunTimedOut = new AtomicBoolean();
+        boolean result;
+        try {
+            result = testSatisfied(pb);
+        } finally {
+            finishRun();
+        }
+        if (currentRunTimedOut.get()) {
+            timeoutCount += 1;
+            result = timeoutSatisfies;
+        }
         fruitfulTests += result ? 1 : 0;
 
         return result;
     }
 
+    @Override
+    public boolean isLastVerdictReproducible() {
+        return !currentRunTimedOut.get();
+    }
+
+    @Override
+    public void abortCheck() {
+        Process process = currentProcess;
+        if (process != null) {
+            destroyProcessTree(process);
+        }
+    }
+
     public int getSpawnCount() {
         return spawnCount;
     }
@@ -80,7 +357,17 @@ public abstract class AbstractExternalProcessInvariant implements Invariant {
     @Override
     public void printStatistics(PrintStream stream) {
         stream.println("Compiler invocation count: " + spawnCount);
-        stream.println("Fruitful: " + fruitfulTests
-                + " (" + (100 * fruitfulTests / spawnCount) + "%)");
+        if (spawnCount > 0) {
+            stream.println("Fruitful: " + fruitfulTests
+                    + " (" + (100 * fruitfulTests / spawnCount) + "%)");
+        }
+        if (timeLimit > 0) {
+            stream.println("Timed out: " + timeoutCount + " (time limit: " + timeLimit + " ms)");
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        // every process is waited for by the testSatisfied() implementation
     }
 }
@@ -0,0 +1,22 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+/**
+ * Base implementation of {@link InvariantConfigurationFactory} for any kind of invariant,
+ * either running an external process or checking the sources in-process.
+ */
+public abstract class AbstractInvariantFactory implements InvariantConfigurationFactory {
+    private final String name;
+
+    AbstractInvariantFactory(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+}
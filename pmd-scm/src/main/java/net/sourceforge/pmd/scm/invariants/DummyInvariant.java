@@ -4,6 +4,8 @@
 
 package net.sourceforge.pmd.scm.invariants;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.PrintStream;
 
 /**
@@ -19,7 +21,7 @@ public class DummyInvariant implements Invariant {
         }
     }
 
-    public static final InvariantConfigurationFactory FACTORY = new AbstractExternalProcessInvariant.AbstractFactory("dummy") {
+    public static final InvariantConfigurationFactory FACTORY = new AbstractInvariantFactory("dummy") {
         @Override
         public InvariantConfiguration createConfiguration() {
             return new Configuration();
@@ -31,11 +33,41 @@ public class DummyInvariant implements Invariant {
         // do nothing
     }
 
+    @Override
+    public void calibrate() {
+        // nothing to calibrate
+    }
+
+    @Override
+    public void copyCalibration(Invariant calibrated) {
+        // nothing to calibrate
+    }
+
+    @Override
+    public void saveCalibration(DataOutput out) {
+        // nothing to calibrate
+    }
+
+    @Override
+    public void loadCalibration(DataInput in) {
+        // nothing to calibrate
+    }
+
     @Override
     public boolean checkIsSatisfied() throws Exception {
         return true;
     }
 
+    @Override
+    public boolean isLastVerdictReproducible() {
+        return true;
+    }
+
+    @Override
+    public void abortCheck() {
+        // checks are instant
+    }
+
     @Override
     public String toString() {
         return "Dummy invariant (always satisfied)";
@@ -45,4 +77,9 @@ public class DummyInvariant implements Invariant {
     public void printStatistics(PrintStream stream) {
         // print nothing
     }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
 }
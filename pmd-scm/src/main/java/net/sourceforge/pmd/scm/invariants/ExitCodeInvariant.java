@@ -4,10 +4,12 @@
 
 package net.sourceforge.pmd.scm.invariants;
 
+import java.io.InputStream;
+
 import com.beust.jcommander.Parameter;
 
 /**
- * Checks that compiler exits with code from the specified range.
+ * Checks that compiler exits with code from the specified range (and optionally prints the specified messages).
  */
 public class ExitCodeInvariant extends AbstractExternalProcessInvariant {
     public static final class Configuration extends AbstractConfiguration {
@@ -62,8 +64,15 @@ public class ExitCodeInvariant extends AbstractExternalProcessInvariant {
 
     @Override
     protected boolean testSatisfied(ProcessBuilder pb) throws Exception {
-        Process process = pb.start();
-
+        Process process = startProcess(pb.redirectErrorStream(true));
+
+        // always drain the output, so that the compiler is not blocked on a full pipe
+        try (InputStream output = process.getInputStream()) {
+            if (!outputSatisfies(output, true)) {
+                // the process is killed by the caller
+                return false;
+            }
+        }
         int returnCode = process.waitFor();
 
         return min <= returnCode && returnCode <= max;
@@ -72,11 +81,11 @@ public class ExitCodeInvariant extends AbstractExternalProcessInvariant {
     @Override
     public String toString() {
         if (min == max) {
-            return "Exits with code = " + min;
+            return "Exits with code = " + min + describeOutputPatterns();
         } else if (max == Integer.MAX_VALUE) {
-            return "Exits with code >= " + min;
+            return "Exits with code >= " + min + describeOutputPatterns();
         } else {
-            return "Exits with code from " + min + " to " + max + ", inclusive";
+            return "Exits with code from " + min + " to " + max + ", inclusive" + describeOutputPatterns();
         }
     }
 }
@@ -4,12 +4,15 @@
 
 package net.sourceforge.pmd.scm.invariants;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 
 /**
  * Checks some invariant about processing the source by the compiler.
  */
-public interface Invariant {
+public interface Invariant extends AutoCloseable {
     /**
      * Called once before starting the minimization.
      *
@@ -17,13 +20,58 @@ public interface Invariant {
      */
     void initialize(InvariantOperations ops);
 
+    /**
+     * Called once before the minimization, after {@link #initialize(InvariantOperations)}, while the scratch files
+     * contain the original input. Lets the checker calibrate itself, such as measure how long the compiler takes.
+     * Not called when resuming the minimization, see {@link #loadCalibration(DataInput)}.
+     */
+    void calibrate() throws Exception;
+
+    /**
+     * Writes the calibration to be restored by {@link #loadCalibration(DataInput)} when resuming the minimization
+     * in another process.
+     */
+    void saveCalibration(DataOutput out) throws IOException;
+
+    /**
+     * Restores the calibration written by {@link #saveCalibration(DataOutput)}, called instead of {@link #calibrate()}
+     * when resuming, as the scratch files contain the already reduced source then.
+     */
+    void loadCalibration(DataInput in) throws IOException;
+
+    /**
+     * Takes over the calibration of the passed checker, called instead of {@link #calibrate()}
+     * for the checkers of parallel workers, so all of them judge the variants the same way.
+     */
+    void copyCalibration(Invariant calibrated);
+
     /**
      * Check that the scratch file in its current state satisfies the invariant.
      */
     boolean checkIsSatisfied() throws Exception;
 
+    /**
+     * Whether the verdict of the last {@link #checkIsSatisfied()} call depends only on the inputs,
+     * and not on circumstances like the machine load (such as when the compiler was cut short by a time limit).
+     * Only such verdicts may be reused by later runs.
+     */
+    boolean isLastVerdictReproducible();
+
+    /**
+     * Called from another thread to stop the check run by an interrupted thread as soon as possible,
+     * even if it is blocked in a way not reacting to interruption (such as reading the compiler output).
+     * The verdict of the aborted check is discarded.
+     */
+    void abortCheck();
+
     /**
      * Print current statistics.
      */
     void printStatistics(PrintStream stream);
+
+    /**
+     * Called once after the minimization is finished to release any resources such as compiler processes.
+     */
+    @Override
+    void close() throws Exception;
 }
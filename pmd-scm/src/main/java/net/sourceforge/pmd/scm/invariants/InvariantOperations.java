@@ -5,8 +5,10 @@
 package net.sourceforge.pmd.scm.invariants;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 
-import net.sourceforge.pmd.lang.Parser;
+import net.sourceforge.pmd.lang.LanguageVersion;
 
 /**
  * A public interface provided by the {@link net.sourceforge.pmd.scm.SourceCodeMinimizer} to
@@ -17,4 +19,40 @@ public interface InvariantOperations {
      * Test for syntactical validity of all input files.
      */
     boolean allInputsAreParseable() throws IOException;
+
+    /**
+     * Get the language version the inputs are parsed with.
+     */
+    LanguageVersion getLanguageVersion();
+
+    /**
+     * Get the files to be checked by this particular invariant instance, in the order of the output files.
+     */
+    List<Path> getScratchFiles();
+
+    /**
+     * Get the current contents of the specified scratch file.
+     *
+     * @param index Index of the file in {@link #getScratchFiles()}
+     */
+    String getScratchFileContents(int index) throws IOException;
+
+    /**
+     * Make sure the files returned by {@link #getScratchFiles()} contain the current contents.
+     *
+     * The contents are kept in memory, so this has to be called before anything
+     * (such as an external process) reads the files themselves.
+     */
+    void writeScratchFiles() throws IOException;
+
+    /**
+     * Get the directory the compiler should be started in or <code>null</code> to use the current one.
+     */
+    Path getWorkingDirectory();
+
+    /**
+     * Rewrites the compiler command line specified by user, so it refers to the copies
+     * of output files this particular invariant instance should check.
+     */
+    String adaptCommandLine(String commandLine);
 }
@@ -0,0 +1,298 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+import com.beust.jcommander.IStringConverter;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * Checks that the Java compiler running inside the SCM process reports the specified diagnostic.
+ *
+ * Unlike running <code>javac</code> as an external process, the compiler is kept warm between checks,
+ * sources are passed to it right from memory and no class files are written.
+ */
+public class JavaCompilerInvariant implements Invariant {
+    public static final class Configuration implements InvariantConfiguration {
+        @Parameter(names = "--diagnostic-kind", description = "Kind of the compiler diagnostic (ERROR, WARNING, NOTE, ...)",
+                converter = DiagnosticKindConverter.class)
+        private Diagnostic.Kind kind = Diagnostic.Kind.ERROR;
+
+        @Parameter(names = "--diagnostic-code", description = "Code of the compiler diagnostic, such as compiler.err.prob.found.req")
+        private String code;
+
+        @Parameter(names = "--diagnostic-message",
+                description = "Text the compiler diagnostic message should contain (type names are fully qualified there)")
+        private String message;
+
+        @Parameter(names = "--javac-options", description = "Space-separated options to be passed to the compiler")
+        private String options = "-proc:none";
+
+        public Diagnostic.Kind getKind() {
+            return kind;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getOptions() {
+            return options;
+        }
+
+        @Override
+        public Invariant createChecker() {
+            return new JavaCompilerInvariant(this);
+        }
+    }
+
+    public static final class DiagnosticKindConverter implements IStringConverter<Diagnostic.Kind> {
+        @Override
+        public Diagnostic.Kind convert(String value) {
+            try {
+                return Diagnostic.Kind.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new ParameterException("Unknown diagnostic kind: " + value);
+            }
+        }
+    }
+
+    public static final InvariantConfigurationFactory FACTORY = new AbstractInvariantFactory("javac") {
+        @Override
+        public InvariantConfiguration createConfiguration() {
+            return new Configuration();
+        }
+    };
+
+    /**
+     * Source file with contents taken from memory.
+     */
+    private static final class SourceObject extends SimpleJavaFileObject {
+        private final String contents;
+
+        SourceObject(URI uri, String contents) {
+            super(uri, Kind.SOURCE);
+            this.contents = contents;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return contents;
+        }
+    }
+
+    /**
+     * Compiler output that is simply discarded.
+     */
+    private static final class DiscardedOutputObject extends SimpleJavaFileObject {
+        DiscardedOutputObject(String className, Kind kind) {
+            super(URI.create("discarded:///" + className.replace('.', '/') + kind.extension), kind);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return NullOutputStream.NULL_OUTPUT_STREAM;
+        }
+    }
+
+    private static final class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        InMemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            return new DiscardedOutputObject(className, kind);
+        }
+
+        @Override
+        public FileObject getFileForOutput(Location location, String packageName, String relativeName, FileObject sibling) {
+            return new DiscardedOutputObject(packageName + "." + relativeName, JavaFileObject.Kind.OTHER);
+        }
+    }
+
+    /**
+     * Thrown from the diagnostic listener to stop compilation as soon as the result is known.
+     */
+    private static final class DiagnosticFoundException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        DiagnosticFoundException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final Diagnostic.Kind kind;
+    private final String code;
+    private final String message;
+    private final List<String> options;
+
+    private InvariantOperations ops;
+    private JavaCompiler compiler;
+    private JavaFileManager fileManager;
+    private int compilationCount;
+    private int fruitfulTests;
+
+    private JavaCompilerInvariant(Configuration configuration) {
+        kind = configuration.kind;
+        code = configuration.code;
+        message = configuration.message;
+        options = new ArrayList<>();
+        for (String option : configuration.options.trim().split("\\s+")) {
+            if (!option.isEmpty()) {
+                options.add(option);
+            }
+        }
+    }
+
+    @Override
+    public void initialize(InvariantOperations ops) {
+        this.ops = ops;
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No Java compiler is available in this JVM, is it a JRE?");
+        }
+        fileManager = new InMemoryFileManager(compiler.getStandardFileManager(null, Locale.ROOT, null));
+    }
+
+    private boolean matches(Diagnostic<? extends JavaFileObject> diagnostic) {
+        return diagnostic.getKind() == kind
+                && (code == null || code.equals(diagnostic.getCode()))
+                && (message == null || diagnostic.getMessage(Locale.ROOT).contains(message));
+    }
+
+    @Override
+    public void calibrate() {
+        // nothing to calibrate
+    }
+
+    @Override
+    public void copyCalibration(Invariant calibrated) {
+        // nothing to calibrate
+    }
+
+    @Override
+    public void saveCalibration(DataOutput out) {
+        // nothing to calibrate
+    }
+
+    @Override
+    public void loadCalibration(DataInput in) {
+        // nothing to calibrate
+    }
+
+    @Override
+    public boolean checkIsSatisfied() throws Exception {
+        // First, make a fast check that the source can be parsed at all
+        if (!ops.allInputsAreParseable()) {
+            return false;
+        }
+
+        List<JavaFileObject> sources = new ArrayList<>();
+        for (int i = 0; i < ops.getScratchFiles().size(); ++i) {
+            URI uri = ops.getScratchFiles().get(i).toAbsolutePath().toUri();
+            sources.add(new SourceObject(uri, ops.getScratchFileContents(i)));
+        }
+
+        DiagnosticListener<JavaFileObject> listener = new DiagnosticListener<JavaFileObject>() {
+            @Override
+            public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+                if (matches(diagnostic)) {
+                    throw new DiagnosticFoundException();
+                }
+            }
+        };
+
+        compilationCount += 1;
+        boolean result;
+        try {
+            // compiler messages not reported as diagnostics are of no interest
+            compiler.getTask(new StringWriter(), fileManager, listener, options, null, sources).call();
+            result = false;
+        } catch (RuntimeException ex) {
+            if (!isCausedByFoundDiagnostic(ex)) {
+                throw ex;
+            }
+            result = true;
+        }
+        fruitfulTests += result ? 1 : 0;
+        return result;
+    }
+
+    private static boolean isCausedByFoundDiagnostic(Throwable ex) {
+        // The compiler may wrap exceptions thrown by the listener
+        for (Throwable current = ex; current != null; current = current.getCause()) {
+            if (current instanceof DiagnosticFoundException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isLastVerdictReproducible() {
+        return true;
+    }
+
+    @Override
+    public void abortCheck() {
+        // cannot be stopped in the middle, the check finishes on its own
+    }
+
+    @Override
+    public void printStatistics(PrintStream stream) {
+        stream.println("In-process compilation count: " + compilationCount);
+        if (compilationCount > 0) {
+            stream.println("Fruitful: " + fruitfulTests
+                    + " (" + (100 * fruitfulTests / compilationCount) + "%)");
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (fileManager != null) {
+            fileManager.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Compiler reports ").append(kind);
+        if (code != null) {
+            sb.append(' ').append(code);
+        }
+        if (message != null) {
+            sb.append(": '").append(message).append('\'');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Matches the compiler output against a set of required and forbidden patterns.
+ *
+ * All the literal patterns are searched for in the raw byte stream at once with a precompiled
+ * Aho-Corasick automaton, so the output is not decoded at all unless some regular expression
+ * is specified. Regular expressions are matched against individual lines.
+ *
+ * An instance is stateful and is reused for the subsequent runs of the same invariant checker.
+ */
+final class OutputMatcher {
+    private static final int ALPHABET_SIZE = 256;
+    private static final int NO_STATE = -1;
+    private static final int[] NO_PATTERNS = new int[0];
+
+    private final Charset charset;
+    private final List<String> descriptions = new ArrayList<>();
+    /** Whether the pattern should be found (or should not be) for each literal, then for each regex */
+    private final boolean[] required;
+    private final int requiredCount;
+    private final boolean hasForbidden;
+
+    /** Complete transition function of the automaton, state 0 is the initial one */
+    private final int[][] transitions;
+    /** Indices of literals ending at each state, including the ones ending at its suffix states */
+    private final int[][] matchedLiterals;
+
+    private final Pattern[] regexes;
+    private final int firstRegexIndex;
+
+    // state of the current run
+    private int state;
+    private final boolean[] found;
+    private int requiredMissing;
+    private boolean forbiddenFound;
+    private byte[] line = new byte[256];
+    private int lineLength;
+
+    OutputMatcher(List<String> requiredLiterals, List<String> forbiddenLiterals,
+                  List<String> requiredRegexes, List<String> forbiddenRegexes, Charset charset) {
+        this.charset = charset;
+
+        List<byte[]> literals = new ArrayList<>();
+        List<Boolean> isRequired = new ArrayList<>();
+        for (String literal : requiredLiterals) {
+            literals.add(literal.getBytes(charset));
+            isRequired.add(true);
+            descriptions.add("contains '" + literal + "'");
+        }
+        for (String literal : forbiddenLiterals) {
+            literals.add(literal.getBytes(charset));
+            isRequired.add(false);
+            descriptions.add("does not contain '" + literal + "'");
+        }
+        firstRegexIndex = literals.size();
+        regexes = new Pattern[requiredRegexes.size() + forbiddenRegexes.size()];
+        for (String regex : requiredRegexes) {
+            regexes[isRequired.size() - firstRegexIndex] = Pattern.compile(regex);
+            isRequired.add(true);
+            descriptions.add("has a line matching '" + regex + "'");
+        }
+        for (String regex : forbiddenRegexes) {
+            regexes[isRequired.size() - firstRegexIndex] = Pattern.compile(regex);
+            isRequired.add(false);
+            descriptions.add("has no line matching '" + regex + "'");
+        }
+
+        required = new boolean[isRequired.size()];
+        int requiredNumber = 0;
+        for (int i = 0; i < required.length; ++i) {
+            required[i] = isRequired.get(i);
+            requiredNumber += required[i] ? 1 : 0;
+        }
+        requiredCount = requiredNumber;
+        hasForbidden = requiredCount < required.length;
+        found = new boolean[required.length];
+
+        // build the trie
+        List<int[]> trie = new ArrayList<>();
+        List<int[]> endingHere = new ArrayList<>();
+        trie.add(newState());
+        endingHere.add(NO_PATTERNS);
+        for (int i = 0; i < literals.size(); ++i) {
+            int current = 0;
+            for (byte b : literals.get(i)) {
+                int next = trie.get(current)[b & 0xFF];
+                if (next == NO_STATE) {
+                    next = trie.size();
+                    trie.get(current)[b & 0xFF] = next;
+                    trie.add(newState());
+                    endingHere.add(NO_PATTERNS);
+                }
+                current = next;
+            }
+            endingHere.set(current, append(endingHere.get(current), i));
+        }
+
+        // turn it into a deterministic automaton in the breadth-first order, so that
+        // the state a failure link points to is always complete
+        transitions = trie.toArray(new int[0][]);
+        matchedLiterals = endingHere.toArray(new int[0][]);
+        int[] failure = new int[transitions.length];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int b = 0; b < ALPHABET_SIZE; ++b) {
+            int next = transitions[0][b];
+            if (next == NO_STATE) {
+                transitions[0][b] = 0;
+            } else {
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            int fallback = failure[current];
+            if (matchedLiterals[fallback].length > 0) {
+                matchedLiterals[current] = concat(matchedLiterals[current], matchedLiterals[fallback]);
+            }
+            for (int b = 0; b < ALPHABET_SIZE; ++b) {
+                int next = transitions[current][b];
+                if (next == NO_STATE) {
+                    transitions[current][b] = transitions[fallback][b];
+                } else {
+                    failure[next] = transitions[fallback][b];
+                    queue.add(next);
+                }
+            }
+        }
+
+        reset();
+    }
+
+    private static int[] newState() {
+        int[] result = new int[ALPHABET_SIZE];
+        Arrays.fill(result, NO_STATE);
+        return result;
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        int[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    boolean isEmpty() {
+        return required.length == 0;
+    }
+
+    private void reset() {
+        state = 0;
+        Arrays.fill(found, false);
+        requiredMissing = requiredCount;
+        forbiddenFound = false;
+        lineLength = 0;
+        // empty literals are found right away
+        markFound(matchedLiterals[0]);
+    }
+
+    private void markFound(int[] patterns) {
+        for (int pattern : patterns) {
+            markFound(pattern);
+        }
+    }
+
+    private void markFound(int pattern) {
+        if (!found[pattern]) {
+            found[pattern] = true;
+            if (required[pattern]) {
+                requiredMissing -= 1;
+            } else {
+                forbiddenFound = true;
+            }
+        }
+    }
+
+    private void feed(byte[] buffer, int offset, int length) {
+        int current = state;
+        for (int i = offset; i < offset + length; ++i) {
+            current = transitions[current][buffer[i] & 0xFF];
+            if (matchedLiterals[current].length > 0) {
+                markFound(matchedLiterals[current]);
+            }
+        }
+        state = current;
+        if (regexes.length > 0) {
+            splitLines(buffer, offset, length);
+        }
+    }
+
+    private void splitLines(byte[] buffer, int offset, int length) {
+        int lineStart = offset;
+        for (int i = offset; i < offset + length; ++i) {
+            if (buffer[i] == '\n') {
+                appendToLine(buffer, lineStart, i - lineStart);
+                matchLine();
+                lineStart = i + 1;
+            }
+        }
+        appendToLine(buffer, lineStart, offset + length - lineStart);
+    }
+
+    private void appendToLine(byte[] buffer, int offset, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(2 * line.length, lineLength + length));
+        }
+        System.arraycopy(buffer, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void matchLine() {
+        int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+        String text = new String(line, 0, length, charset);
+        lineLength = 0;
+        for (int i = 0; i < regexes.length; ++i) {
+            if (!found[firstRegexIndex + i] && regexes[i].matcher(text).find()) {
+                markFound(firstRegexIndex + i);
+            }
+        }
+    }
+
+    private void finish() {
+        if (regexes.length > 0 && lineLength > 0) {
+            matchLine();
+        }
+    }
+
+    private boolean isAccepted() {
+        return !forbiddenFound && requiredMissing == 0;
+    }
+
+    /**
+     * Reads the output until the verdict on it is known.
+     *
+     * @param untilEnd Whether the output should be read up to the end even if all the required patterns are already found
+     *                 (such as when the process should be waited for, anyway)
+     * @return <code>true</code> if the output satisfies the patterns
+     */
+    boolean matches(InputStream output, boolean untilEnd) throws IOException {
+        reset();
+        byte[] buffer = new byte[8192];
+        for (int length = output.read(buffer); length != -1; length = output.read(buffer)) {
+            feed(buffer, 0, length);
+            if (forbiddenFound || !untilEnd && !hasForbidden && requiredMissing == 0) {
+                return isAccepted();
+            }
+        }
+        finish();
+        return isAccepted();
+    }
+
+    /**
+     * Checks whether the output that was already collected completely satisfies the patterns.
+     */
+    boolean matches(String output) {
+        reset();
+        byte[] bytes = output.getBytes(charset);
+        feed(bytes, 0, bytes.length);
+        finish();
+        return isAccepted();
+    }
+
+    @Override
+    public String toString() {
+        return "output " + String.join(" and ", descriptions);
+    }
+}
@@ -0,0 +1,330 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.beust.jcommander.Parameter;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Checks the invariant with a long-living worker process started once, instead of spawning a compiler per check.
+ *
+ * For every check, one line containing a JSON object is written to the standard input of the worker, such as
+ * <pre>{"id": 1, "files": ["/path/to/File1.java", "/path/to/File2.java"]}</pre>
+ * The worker is expected to reply with a single line JSON object on its standard output, such as
+ * <pre>{"id": 1, "satisfied": true, "exitCode": 1, "output": "compiler messages..."}</pre>
+ * All reply fields are optional. Other lines printed by the worker are ignored.
+ *
+ * The worker is started together with the minimization. It is restarted if it exits unexpectedly,
+ * does not reply within the time limit (which is applied to every reply), replies with a field of a wrong type
+ * or is busy with a check that was aborted. It is expected to exit once its standard input is closed.
+ */
+public class PersistentWorkerInvariant extends AbstractExternalProcessInvariant {
+    public static final class Configuration extends AbstractConfiguration {
+        @Parameter(names = "--expected-output", description = "Text the output reported by the worker should contain")
+        private String expectedOutput;
+
+        @Parameter(names = "--expected-exit-code", description = "Exit code the worker should report")
+        private Integer expectedExitCode;
+
+        public String getExpectedOutput() {
+            return expectedOutput;
+        }
+
+        public Integer getExpectedExitCode() {
+            return expectedExitCode;
+        }
+
+        @Override
+        public Invariant createChecker() {
+            return new PersistentWorkerInvariant(this);
+        }
+    }
+
+    public static final InvariantConfigurationFactory FACTORY = new AbstractFactory("worker") {
+        @Override
+        public InvariantConfiguration createConfiguration() {
+            return new Configuration();
+        }
+    };
+
+    private static final Object END_OF_OUTPUT = new Object();
+
+    /**
+     * A running worker process with a thread collecting its output.
+     */
+    private static final class Worker {
+        private final Process process;
+        private final BufferedWriter input;
+        private final BlockingQueue<Object> outputLines = new LinkedBlockingQueue<>();
+
+        Worker(ProcessBuilder pb) throws IOException {
+            process = pb.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            final BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (String line = output.readLine(); line != null; line = output.readLine()) {
+                            outputLines.add(line);
+                        }
+                    } catch (IOException ex) {
+                        // treat as the end of output
+                    }
+                    outputLines.add(END_OF_OUTPUT);
+                }
+            }, "scm-worker-output");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        void send(String line) throws IOException {
+            input.write(line);
+            input.write('\n');
+            input.flush();
+        }
+
+        /**
+         * @return The next line, {@link #END_OF_OUTPUT} or <code>null</code> on timeout
+         */
+        Object receive(long deadline) throws InterruptedException {
+            if (deadline == 0) {
+                return outputLines.take();
+            }
+            return outputLines.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        void stop() {
+            try {
+                input.close();
+            } catch (IOException ex) {
+                // it is being killed, anyway
+            }
+            destroyProcessTree(process);
+        }
+    }
+
+    private final String expectedOutput;
+    private final Integer expectedExitCode;
+
+    private InvariantOperations ops;
+    // stopped by abortCheck() from another thread
+    private volatile Worker worker;
+    private volatile boolean busy;
+    private int requestId;
+    private int restartCount;
+
+    private PersistentWorkerInvariant(Configuration configuration) {
+        super(configuration);
+        expectedOutput = configuration.expectedOutput;
+        expectedExitCode = configuration.expectedExitCode;
+    }
+
+    @Override
+    public void initialize(InvariantOperations ops) {
+        super.initialize(ops);
+        this.ops = ops;
+        try {
+            worker = new Worker(createProcessBuilder());
+        } catch (IOException ex) {
+            // reported by the first check, that retries starting it
+            worker = null;
+        }
+    }
+
+    private String createRequest() {
+        JsonArray files = new JsonArray();
+        for (Path file : ops.getScratchFiles()) {
+            files.add(file.toAbsolutePath().toString());
+        }
+        JsonObject request = new JsonObject();
+        request.addProperty("id", requestId);
+        request.add("files", files);
+        return request.toString();
+    }
+
+    private JsonObject parseReply(String line) {
+        try {
+            JsonElement element = new JsonParser().parse(line);
+            if (!element.isJsonObject()) {
+                return null;
+            }
+            JsonObject reply = element.getAsJsonObject();
+            JsonElement id = reply.get("id");
+            if (id != null && (!id.isJsonPrimitive() || id.getAsInt() != requestId)) {
+                // reply to some abandoned request
+                return null;
+            }
+            return reply;
+        } catch (JsonParseException | IllegalStateException | NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static boolean isOfType(JsonObject reply, String field, boolean isBoolean, boolean isNumber, boolean isString) {
+        JsonElement value = reply.get(field);
+        if (value == null) {
+            return true;
+        }
+        if (!value.isJsonPrimitive()) {
+            return false;
+        }
+        JsonPrimitive primitive = value.getAsJsonPrimitive();
+        return isBoolean && primitive.isBoolean() || isNumber && primitive.isNumber() || isString && primitive.isString();
+    }
+
+    /**
+     * Whether all the fields of the reply have the expected types, so it can be judged.
+     */
+    private static boolean isWellTyped(JsonObject reply) {
+        if (!isOfType(reply, "satisfied", true, false, false) || !isOfType(reply, "output", false, false, true)
+                || !isOfType(reply, "exitCode", false, true, false)) {
+            return false;
+        }
+        if (reply.has("exitCode")) {
+            double exitCode = reply.get("exitCode").getAsDouble();
+            return exitCode == Math.rint(exitCode) && Math.abs(exitCode) <= Integer.MAX_VALUE;
+        }
+        return true;
+    }
+
+    private boolean isSatisfied(JsonObject reply) {
+        if (reply.has("satisfied") && !reply.get("satisfied").getAsBoolean()) {
+            return false;
+        }
+        if (expectedExitCode != null && (!reply.has("exitCode") || reply.get("exitCode").getAsInt() != expectedExitCode)) {
+            return false;
+        }
+        String output = reply.has("output") ? reply.get("output").getAsString() : "";
+        return (expectedOutput == null || output.contains(expectedOutput)) && outputSatisfies(output);
+    }
+
+    private void stopWorker() {
+        Worker current = worker;
+        if (current != null) {
+            current.stop();
+            worker = null;
+        }
+    }
+
+    /**
+     * Waits for the reply to the current request.
+     *
+     * @return The verdict or <code>null</code> if the worker has exited before replying
+     */
+    private Boolean receiveVerdict(Worker current, long deadline) throws InterruptedException {
+        while (true) {
+            Object line = current.receive(deadline);
+            if (line == null) {
+                // do not wait for the hung worker twice
+                System.err.println("WARNING: worker did not reply in " + getTimeLimit() + " ms, restarting it");
+                markTimedOut();
+                restartCount += 1;
+                stopWorker();
+                return false;
+            }
+            if (line == END_OF_OUTPUT) {
+                return null;
+            }
+            JsonObject reply = parseReply((String) line);
+            if (reply == null) {
+                continue;
+            }
+            if (!isWellTyped(reply)) {
+                System.err.println("WARNING: worker replied with a field of a wrong type, restarting it: " + line);
+                restartCount += 1;
+                stopWorker();
+                return false;
+            }
+            return isSatisfied(reply);
+        }
+    }
+
+    @Override
+    protected boolean testSatisfied(ProcessBuilder pb) throws Exception {
+        requestId += 1;
+        String request = createRequest();
+        // retry once if the worker crashed, possibly because of some earlier request
+        for (int attempt = 0; attempt < 2; ++attempt) {
+            if (worker == null) {
+                worker = new Worker(pb);
+            }
+            Worker current = worker;
+            long deadline = getTimeLimit() > 0 ? System.currentTimeMillis() + getTimeLimit() : 0;
+            busy = true;
+            try {
+                current.send(request);
+                Boolean verdict = receiveVerdict(current, deadline);
+                if (verdict != null) {
+                    return verdict;
+                }
+            } catch (IOException ex) {
+                // broken pipe: the worker has exited
+            } catch (InterruptedException ex) {
+                // the reply would confuse the next request
+                stopWorker();
+                throw ex;
+            } finally {
+                busy = false;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                // stopped by abortCheck()
+                stopWorker();
+                throw new InterruptedException();
+            }
+            System.err.println("WARNING: worker exited unexpectedly, restarting it");
+            restartCount += 1;
+            stopWorker();
+        }
+        return false;
+    }
+
+    /**
+     * Stops the worker if it is busy with the aborted check, the next check starts a new one.
+     */
+    @Override
+    public void abortCheck() {
+        Worker current = worker;
+        if (busy && current != null) {
+            current.stop();
+        }
+    }
+
+    @Override
+    public void printStatistics(PrintStream stream) {
+        super.printStatistics(stream);
+        stream.println("Worker restart count: " + restartCount);
+    }
+
+    @Override
+    public void close() {
+        stopWorker();
+    }
+
+    @Override
+    public String toString() {
+        return "Persistent worker reports "
+                + (expectedExitCode == null ? "" : "exit code " + expectedExitCode + " and ")
+                + (expectedOutput == null ? "success" : "'" + expectedOutput + "'")
+                + describeOutputPatterns();
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import net.sourceforge.pmd.PMD;
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetLoader;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.util.datasource.DataSource;
+import net.sourceforge.pmd.util.datasource.ReaderDataSource;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Checks that PMD itself, running inside the SCM process, reports the specified rule violation
+ * or fails with the specified exception while analyzing the scratch files.
+ *
+ * This is intended for minimizing test cases for false positives and crashes of PMD rules
+ * without starting a new PMD process for every variant.
+ */
+public class PmdAnalysisInvariant implements Invariant {
+    public static final class Configuration implements InvariantConfiguration {
+        @Parameter(names = "--ruleset", description = "Comma-separated list of rulesets to run", required = true)
+        private String rulesets;
+
+        @Parameter(names = "--rule", description = "Name of the rule that should report a violation")
+        private String ruleName;
+
+        @Parameter(names = "--violation-message", description = "Text the violation message should contain")
+        private String violationMessage;
+
+        @Parameter(names = "--exception-pattern",
+                description = "Regular expression some line of the stack trace of an analysis error should match "
+                        + "(instead of a violation)")
+        private String exceptionPattern;
+
+        public String getRulesets() {
+            return rulesets;
+        }
+
+        public String getRuleName() {
+            return ruleName;
+        }
+
+        public String getViolationMessage() {
+            return violationMessage;
+        }
+
+        public String getExceptionPattern() {
+            return exceptionPattern;
+        }
+
+        @Override
+        public Invariant createChecker() {
+            return new PmdAnalysisInvariant(this);
+        }
+    }
+
+    public static final InvariantConfigurationFactory FACTORY = new AbstractInvariantFactory("pmd") {
+        @Override
+        public InvariantConfiguration createConfiguration() {
+            return new Configuration();
+        }
+    };
+
+    /**
+     * Every rule failure is logged by PMD, that would flood the output when minimizing a crash,
+     * so it is silenced while some analysis is running. Keep a strong reference, so the configured level is not lost.
+     */
+    private static final Logger PMD_LOGGER = Logger.getLogger("net.sourceforge.pmd");
+    private static final Object PMD_LOGGER_LOCK = new Object();
+    // guarded by PMD_LOGGER_LOCK: the parallel workers run their analyses at the same time
+    private static int silencingAnalysisCount;
+    private static Level savedPmdLoggerLevel;
+
+    private final List<String> rulesetNames;
+    private final String ruleName;
+    private final String violationMessage;
+    private final Pattern exceptionPattern;
+
+    private InvariantOperations ops;
+    private PMDConfiguration pmdConfiguration;
+    private List<RuleSet> rules;
+    private String fileNameSuffix;
+    private int analysisCount;
+    private int fruitfulTests;
+
+    private PmdAnalysisInvariant(Configuration configuration) {
+        rulesetNames = new ArrayList<>();
+        for (String name : configuration.rulesets.split(",")) {
+            if (!name.trim().isEmpty()) {
+                rulesetNames.add(name.trim());
+            }
+        }
+        ruleName = configuration.ruleName;
+        violationMessage = configuration.violationMessage;
+        exceptionPattern = configuration.exceptionPattern == null
+                ? null : Pattern.compile(configuration.exceptionPattern, Pattern.MULTILINE);
+    }
+
+    @Override
+    public void initialize(InvariantOperations ops) {
+        this.ops = ops;
+        LanguageVersion languageVersion = ops.getLanguageVersion();
+        pmdConfiguration = new PMDConfiguration();
+        pmdConfiguration.setDefaultLanguageVersion(languageVersion);
+        pmdConfiguration.setIgnoreIncrementalAnalysis(true);
+        // analyze in the calling thread, the minimizer runs several checks in parallel itself
+        pmdConfiguration.setThreads(0);
+        rules = RuleSetLoader.fromPmdConfig(pmdConfiguration).warnDeprecated(false).loadFromResources(rulesetNames);
+        // PMD picks the language by the file extension, while output files may be named arbitrarily
+        List<String> extensions = languageVersion.getLanguage().getExtensions();
+        fileNameSuffix = extensions.isEmpty() ? "" : "." + extensions.get(0);
+    }
+
+    private static void silencePmdLogger() {
+        synchronized (PMD_LOGGER_LOCK) {
+            if (silencingAnalysisCount++ == 0) {
+                savedPmdLoggerLevel = PMD_LOGGER.getLevel();
+                PMD_LOGGER.setLevel(Level.OFF);
+            }
+        }
+    }
+
+    private static void restorePmdLogger() {
+        synchronized (PMD_LOGGER_LOCK) {
+            if (--silencingAnalysisCount == 0) {
+                PMD_LOGGER.setLevel(savedPmdLoggerLevel);
+            }
+        }
+    }
+
+    private boolean matches(RuleViolation violation) {
+        return (ruleName == null || ruleName.equals(violation.getRule().getName()))
+                && (violationMessage == null || violation.getDescription().contains(violationMessage));
+    }
+
+    private boolean matches(Report.ProcessingError error) {
+        Throwable throwable = error.getError();
+        if (throwable == null) {
+            return exceptionPattern.matcher(error.getMsg()).find();
+        }
+        StringWriter stackTrace = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(stackTrace));
+        return exceptionPattern.matcher(stackTrace.toString()).find();
+    }
+
+    private boolean isSatisfied(Report report) {
+        if (exceptionPattern != null) {
+            for (Report.ProcessingError error : report.getProcessingErrors()) {
+                if (matches(error)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (RuleViolation violation : report.getViolations()) {
+            if (matches(violation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void calibrate() {
+        // nothing to calibrate
+    }
+
+    @Override
+    public void copyCalibration(Invariant calibrated) {
+        // nothing to calibrate
+    }
+
+    @Override
+    public void saveCalibration(DataOutput out) {
+        // nothing to calibrate
+    }
+
+    @Override
+    public void loadCalibration(DataInput in) {
+        // nothing to calibrate
+    }
+
+    @Override
+    public boolean checkIsSatisfied() throws Exception {
+        // First, make a fast check that the source can be parsed at all
+        if (!ops.allInputsAreParseable()) {
+            return false;
+        }
+
+        List<DataSource> sources = new ArrayList<>();
+        for (int i = 0; i < ops.getScratchFiles().size(); ++i) {
+            String fileName = ops.getScratchFiles().get(i).toString();
+            if (!fileName.endsWith(fileNameSuffix)) {
+                fileName += fileNameSuffix;
+            }
+            sources.add(new ReaderDataSource(new StringReader(ops.getScratchFileContents(i)), fileName));
+        }
+
+        analysisCount += 1;
+        boolean result;
+        if (exceptionPattern != null) {
+            silencePmdLogger();
+        }
+        try {
+            Report report = PMD.processFiles(pmdConfiguration, rules, sources, Collections.<Renderer>emptyList());
+            result = isSatisfied(report);
+        } catch (RuntimeException | StackOverflowError ex) {
+            // not reported as a processing error, such as a failure of the rule chain visitor
+            result = exceptionPattern != null && matches(new Report.ProcessingError(ex, null));
+        } finally {
+            if (exceptionPattern != null) {
+                restorePmdLogger();
+            }
+        }
+        fruitfulTests += result ? 1 : 0;
+        return result;
+    }
+
+    @Override
+    public boolean isLastVerdictReproducible() {
+        return true;
+    }
+
+    @Override
+    public void abortCheck() {
+        // cannot be stopped in the middle, the check finishes on its own
+    }
+
+    @Override
+    public void printStatistics(PrintStream stream) {
+        stream.println("In-process PMD analysis count: " + analysisCount);
+        if (analysisCount > 0) {
+            stream.println("Fruitful: " + fruitfulTests
+                    + " (" + (100 * fruitfulTests / analysisCount) + "%)");
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    @Override
+    public String toString() {
+        if (exceptionPattern != null) {
+            return "PMD analysis fails with '" + exceptionPattern.pattern() + "'";
+        }
+        StringBuilder sb = new StringBuilder("PMD reports a violation");
+        if (ruleName != null) {
+            sb.append(" of ").append(ruleName);
+        }
+        if (violationMessage != null) {
+            sb.append(": '").append(violationMessage).append('\'');
+        }
+        return sb.toString();
+    }
+}
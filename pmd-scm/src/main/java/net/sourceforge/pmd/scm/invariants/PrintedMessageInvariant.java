@@ -4,9 +4,10 @@
 
 package net.sourceforge.pmd.scm.invariants;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 import net.sourceforge.pmd.scm.SCMConfiguration;
 
@@ -32,6 +33,19 @@ public class PrintedMessageInvariant extends AbstractExternalProcessInvariant {
             return charset;
         }
 
+        @Override
+        protected List<String> getRequiredOutput() {
+            List<String> result = new ArrayList<>();
+            result.add(message);
+            result.addAll(super.getRequiredOutput());
+            return result;
+        }
+
+        @Override
+        protected Charset getOutputCharset() {
+            return charset;
+        }
+
         @Override
         public PrintedMessageInvariant createChecker() {
             return new PrintedMessageInvariant(this);
@@ -46,34 +60,24 @@ public class PrintedMessageInvariant extends AbstractExternalProcessInvariant {
     };
 
     private final String message;
-    private final Charset charset;
 
     private PrintedMessageInvariant(Configuration configuration) {
         super(configuration);
         message = configuration.message;
-        charset = configuration.charset;
     }
 
     @Override
     protected boolean testSatisfied(ProcessBuilder pb) throws Exception {
-        Process process = pb.redirectErrorStream(true).start();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), charset))) {
-            while (true) {
-                String line = reader.readLine();
-                if (line == null) {
-                    return false;
-                }
-                if (line.contains(message)) {
-                    process.destroy();
-                    return true;
-                }
-            }
+        Process process = startProcess(pb.redirectErrorStream(true));
+
+        // the process is killed by the caller as soon as the result is known
+        try (InputStream output = process.getInputStream()) {
+            return outputSatisfies(output, false);
         }
     }
 
     @Override
     public String toString() {
-        return "Printed: '" + message + "'";
+        return "Printed: '" + message + "'" + describeOutputPatterns();
     }
 }
@@ -4,11 +4,19 @@
 
 package net.sourceforge.pmd.scm.strategies;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Abstract minimization strategy implementation.
  */
 public abstract class AbstractMinimizationStrategy implements MinimizationStrategy {
     public abstract static class AbstractConfiguration implements MinimizationStrategyConfiguration {
+        @Override
+        public String getExitReason() {
+            return null;
+        }
     }
 
     public abstract static class AbstractFactory implements MinimizationStrategyConfigurationFactory {
@@ -34,4 +42,14 @@ public abstract class AbstractMinimizationStrategy implements MinimizationStrate
     public void initialize(MinimizerOperations ops) {
         this.ops = ops;
     }
+
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        // stateless by default
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        // stateless by default
+    }
 }
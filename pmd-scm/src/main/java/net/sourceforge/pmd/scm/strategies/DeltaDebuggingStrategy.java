@@ -0,0 +1,170 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Classic ddmin over a flat list of units: the AST is flattened from the roots by repeatedly
+ * replacing the unit containing most of the nodes by its children, so for a package
+ * or a class with a long list of declarations the units are these declarations.
+ *
+ * All the subsets and complements of the current granularity are submitted as a single batch,
+ * so they can be checked simultaneously.
+ */
+public class DeltaDebuggingStrategy extends AbstractMinimizationStrategy {
+    public static class Configuration extends AbstractConfiguration {
+        @Override
+        public MinimizationStrategy createStrategy() {
+            return new DeltaDebuggingStrategy(this);
+        }
+    }
+
+    public static final MinimizationStrategyConfigurationFactory FACTORY = new AbstractFactory("ddmin") {
+        @Override
+        public MinimizationStrategyConfiguration createConfiguration() {
+            return new Configuration();
+        }
+    };
+
+    private DeltaDebuggingStrategy(Configuration configuration) {
+        super(configuration);
+    }
+
+    private DependencyGraph dependencies;
+
+    private int granularity = 2;
+    // Unit count when the last batch was submitted, to find out what succeeded after restart
+    private int submittedUnitCount;
+
+    private int batchCount;
+
+    @Override
+    public void initialize(MinimizerOperations ops) {
+        super.initialize(ops);
+        dependencies = new DependencyGraph(ops.getNodeInformationProvider());
+    }
+
+    private static int getNodeCount(Node subtree) {
+        int result = 1;
+        for (int i = 0; i < subtree.jjtGetNumChildren(); ++i) {
+            result += getNodeCount(subtree.jjtGetChild(i));
+        }
+        return result;
+    }
+
+    /**
+     * Starting from the children of the roots, expands the unit containing more than a half of all nodes, while there is one.
+     */
+    private static List<Node> flattenUnits(List<Node> roots) {
+        // roots themselves are not removed
+        List<Node> units = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        int totalSize = 0;
+        for (Node root : roots) {
+            for (int i = 0; i < root.jjtGetNumChildren(); ++i) {
+                int size = getNodeCount(root.jjtGetChild(i));
+                units.add(root.jjtGetChild(i));
+                sizes.add(size);
+                totalSize += size;
+            }
+        }
+        while (true) {
+            int dominant = -1;
+            for (int i = 0; i < units.size(); ++i) {
+                if (2 * sizes.get(i) > totalSize && units.get(i).jjtGetNumChildren() > 0) {
+                    dominant = i;
+                }
+            }
+            if (dominant == -1) {
+                break;
+            }
+            Node expanded = units.remove(dominant);
+            sizes.remove(dominant);
+            for (int i = expanded.jjtGetNumChildren() - 1; i >= 0; --i) {
+                units.add(dominant, expanded.jjtGetChild(i));
+                sizes.add(dominant, getNodeCount(expanded.jjtGetChild(i)));
+            }
+        }
+        return units;
+    }
+
+    private Set<Node> collectNodesToRemove(List<Node> units, int from, int to) {
+        Set<Node> result = new HashSet<>();
+        for (int i = from; i < to; ++i) {
+            dependencies.collectNodesToRemove(result, units.get(i));
+        }
+        return result;
+    }
+
+    @Override
+    public void performSinglePass(List<Node> roots) throws Exception {
+        dependencies.update(roots);
+        List<Node> units = flattenUnits(roots);
+
+        if (submittedUnitCount > 0) {
+            // restarted after success: reduced to a subset means starting over, to a complement - one part less
+            boolean reducedToSubset = units.size() <= (submittedUnitCount + granularity - 1) / granularity;
+            granularity = reducedToSubset ? 2 : Math.max(granularity - 1, 2);
+            submittedUnitCount = 0;
+        }
+
+        while (units.size() >= 2) {
+            granularity = Math.min(granularity, units.size());
+            List<Collection<Node>> variants = new ArrayList<>();
+            if (granularity > 2) {
+                // reduce to subsets, for two parts they are the same as complements
+                for (int i = 0; i < granularity; ++i) {
+                    Set<Node> nodesToRemove = collectNodesToRemove(units, 0, i * units.size() / granularity);
+                    nodesToRemove.addAll(collectNodesToRemove(units, (i + 1) * units.size() / granularity, units.size()));
+                    variants.add(nodesToRemove);
+                }
+            }
+            // reduce to complements
+            for (int i = 0; i < granularity; ++i) {
+                variants.add(collectNodesToRemove(units, i * units.size() / granularity, (i + 1) * units.size() / granularity));
+            }
+            submittedUnitCount = units.size();
+            batchCount += 1;
+            ops.tryRemoveMultipleVariants(variants);
+
+            // nothing removed
+            submittedUnitCount = 0;
+            if (granularity == units.size()) {
+                return;
+            }
+            granularity = Math.min(2 * granularity, units.size());
+        }
+    }
+
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        out.writeInt(granularity);
+        out.writeInt(submittedUnitCount);
+        out.writeInt(batchCount);
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        granularity = in.readInt();
+        submittedUnitCount = in.readInt();
+        batchCount = in.readInt();
+    }
+
+    @Override
+    public void printStatistics(PrintStream stream) {
+        stream.println("ddmin strategy variant batches: " + batchCount + ", final granularity: " + granularity);
+    }
+}
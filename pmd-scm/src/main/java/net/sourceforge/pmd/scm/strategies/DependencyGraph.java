@@ -0,0 +1,606 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.scm.NodeInformationProvider;
+
+/**
+ * Which nodes have to be removed together with the specified ones, so that the result
+ * has a chance to remain compilable.
+ */
+class DependencyGraph {
+    private final NodeInformationProvider provider;
+    private final Map<Node, HashSet<Node>> directlyDependingNodes = new HashMap<>();
+    // reverse edges, so the nodes referring to some changed node can be found without scanning everything
+    private final Map<Node, HashSet<Node>> directDependencies = new HashMap<>();
+    // Closures are sets of node indices, shared by all nodes of a strongly connected component
+    private final Map<Node, BitSet> transitivelyDependingNodes = new HashMap<>();
+
+    // Dense node numbering for the closures, the indices of the removed nodes are reused
+    private final Map<Node, Integer> nodeIndices = new HashMap<>();
+    private final List<Node> indexedNodes = new ArrayList<>();
+    private final Deque<Integer> freeIndices = new ArrayDeque<>();
+
+    private List<Node> currentRoots = Collections.emptyList();
+    private int rebuildCount;
+
+    // How the nodes were matched by the last update, null if the graph was rebuilt
+    private Map<Node, Node> lastRenamed;
+    private Set<Node> lastRemoved;
+
+    DependencyGraph(NodeInformationProvider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * Get how many times the graph was fetched from scratch instead of being updated.
+     */
+    int getRebuildCount() {
+        return rebuildCount;
+    }
+
+    /**
+     * Get the counterpart of a node of the trees preceding the last {@link #update(List)} in the current trees.
+     *
+     * @return <code>null</code> if the node was cut off or cannot be matched
+     */
+    Node getCounterpart(Node oldNode) {
+        if (lastRenamed == null || lastRemoved.contains(oldNode)) {
+            return null;
+        }
+        Node result = lastRenamed.get(oldNode);
+        return result == null ? oldNode : result;
+    }
+
+    /**
+     * Brings the graph in sync with the new trees.
+     *
+     * The trees of the untouched files are the very same objects, so they are kept as is.
+     * The trees of the changed files are re-parsed copies of the old ones with some subtrees cut off,
+     * so their nodes are matched to the old ones and the known dependencies are carried over,
+     * only the nodes without old counterparts are queried from the {@link NodeInformationProvider}.
+     */
+    void update(List<Node> roots) {
+        if (roots.size() != currentRoots.size()) {
+            rebuild(roots);
+            return;
+        }
+        TreeMatching matching = new TreeMatching();
+        for (int i = 0; i < roots.size(); ++i) {
+            Node oldRoot = currentRoots.get(i);
+            Node newRoot = roots.get(i);
+            if (oldRoot != newRoot && !matching.match(oldRoot, newRoot)) {
+                rebuild(roots);
+                return;
+            }
+        }
+        Map<Node, Node> renamed = matching.renamed;
+        Set<Node> removed = matching.removed;
+        List<Node> added = matching.added;
+        currentRoots = new ArrayList<>(roots);
+        lastRenamed = renamed;
+        lastRemoved = removed;
+
+        // the closures are sets of indices the new counterparts inherit, so only the removed nodes invalidate them
+        invalidateClosures(removed);
+        carryOver(renamed, removed);
+        for (Node node : added) {
+            fetchDirectDependents(node);
+        }
+        invalidateClosures(added);
+    }
+
+    /**
+     * Forgets everything, then fetches dependencies for the new trees.
+     */
+    private void rebuild(List<Node> roots) {
+        rebuildCount += 1;
+        lastRenamed = null;
+        lastRemoved = null;
+        directlyDependingNodes.clear();
+        directDependencies.clear();
+        transitivelyDependingNodes.clear();
+        nodeIndices.clear();
+        indexedNodes.clear();
+        freeIndices.clear();
+        currentRoots = new ArrayList<>(roots);
+        for (Node root : roots) {
+            fetchDirectDependentsFromSubtree(root);
+        }
+    }
+
+    /**
+     * Matches the nodes of a re-parsed tree to the old one.
+     *
+     * A re-parsed tree differs from the old one by a few cut off subtrees, so the children of every node are
+     * mostly identical subtrees in the same order. They are paired directly, the common leading and trailing ones first,
+     * then the ones with a subtree hash unique among the rest, and only the small windows left between the pairs
+     * are matched as a heaviest common subsequence. The trees are traversed with explicit stacks,
+     * so deep trees cannot overflow the call stack.
+     */
+    private static final class TreeMatching {
+        // windows larger than this are given up as cut off and added entirely instead of being matched quadratically
+        private static final int MAX_WINDOW_CELLS = 1 << 16;
+
+        final Map<Node, Node> renamed = new HashMap<>();
+        final Set<Node> removed = new HashSet<>();
+        final List<Node> added = new ArrayList<>();
+        private final Map<Node, Long> subtreeHashes = new HashMap<>();
+        private final Deque<Node> pendingOld = new ArrayDeque<>();
+        private final Deque<Node> pendingNew = new ArrayDeque<>();
+
+        private static boolean haveSameLabel(Node a, Node b) {
+            return a.getXPathNodeName().equals(b.getXPathNodeName())
+                    && (a.getImage() == null ? b.getImage() == null : a.getImage().equals(b.getImage()));
+        }
+
+        private long getSubtreeHash(Node node) {
+            Long cached = subtreeHashes.get(node);
+            if (cached != null) {
+                return cached;
+            }
+            // in preorder, so every node is hashed after its descendants when walking it backwards
+            List<Node> unhashed = new ArrayList<>();
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(node);
+            while (!stack.isEmpty()) {
+                Node current = stack.pop();
+                unhashed.add(current);
+                for (int i = 0; i < current.jjtGetNumChildren(); ++i) {
+                    Node child = current.jjtGetChild(i);
+                    if (!subtreeHashes.containsKey(child)) {
+                        stack.push(child);
+                    }
+                }
+            }
+            for (int k = unhashed.size() - 1; k >= 0; --k) {
+                Node current = unhashed.get(k);
+                long hash = current.getXPathNodeName().hashCode() * 31L
+                        + (current.getImage() == null ? 0 : current.getImage().hashCode());
+                for (int i = 0; i < current.jjtGetNumChildren(); ++i) {
+                    hash = hash * 0x9E3779B97F4A7C15L + subtreeHashes.get(current.jjtGetChild(i));
+                }
+                subtreeHashes.put(current, hash);
+            }
+            return subtreeHashes.get(node);
+        }
+
+        private static void collectSubtree(Collection<Node> result, Node node) {
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(node);
+            while (!stack.isEmpty()) {
+                Node current = stack.pop();
+                result.add(current);
+                for (int i = current.jjtGetNumChildren() - 1; i >= 0; --i) {
+                    stack.push(current.jjtGetChild(i));
+                }
+            }
+        }
+
+        private boolean areIdentical(Node oldNode, Node newNode) {
+            return getSubtreeHash(oldNode) == getSubtreeHash(newNode) && haveSameLabel(oldNode, newNode);
+        }
+
+        private int getMatchWeight(Node oldNode, Node newNode) {
+            if (!haveSameLabel(oldNode, newNode)) {
+                return 0;
+            }
+            // prefer untouched subtrees, so siblings with the same label are not mixed up
+            return getSubtreeHash(oldNode) == getSubtreeHash(newNode) ? 3 : 1;
+        }
+
+        private void pair(Node oldNode, Node newNode) {
+            pendingOld.push(oldNode);
+            pendingNew.push(newNode);
+        }
+
+        /**
+         * Matches the trees, the old nodes left unmatched are considered cut off, the new ones are considered added.
+         *
+         * @return <code>false</code> if the roots themselves differ
+         */
+        boolean match(Node oldRoot, Node newRoot) {
+            if (!haveSameLabel(oldRoot, newRoot)) {
+                return false;
+            }
+            pair(oldRoot, newRoot);
+            while (!pendingOld.isEmpty()) {
+                Node oldNode = pendingOld.pop();
+                Node newNode = pendingNew.pop();
+                renamed.put(oldNode, newNode);
+                matchChildren(oldNode, newNode);
+            }
+            return true;
+        }
+
+        private void matchChildren(Node oldNode, Node newNode) {
+            int oldFrom = 0;
+            int newFrom = 0;
+            int oldTo = oldNode.jjtGetNumChildren();
+            int newTo = newNode.jjtGetNumChildren();
+            while (oldFrom < oldTo && newFrom < newTo
+                    && areIdentical(oldNode.jjtGetChild(oldFrom), newNode.jjtGetChild(newFrom))) {
+                pair(oldNode.jjtGetChild(oldFrom++), newNode.jjtGetChild(newFrom++));
+            }
+            while (oldFrom < oldTo && newFrom < newTo
+                    && areIdentical(oldNode.jjtGetChild(oldTo - 1), newNode.jjtGetChild(newTo - 1))) {
+                pair(oldNode.jjtGetChild(--oldTo), newNode.jjtGetChild(--newTo));
+            }
+            if (oldFrom == oldTo || newFrom == newTo) {
+                matchWindow(oldNode, oldFrom, oldTo, newNode, newFrom, newTo);
+                return;
+            }
+
+            // the identical subtrees occurring once on both sides, in the order they appear
+            Map<Long, Integer> newIndexByHash = new HashMap<>();
+            for (int j = newFrom; j < newTo; ++j) {
+                long hash = getSubtreeHash(newNode.jjtGetChild(j));
+                newIndexByHash.put(hash, newIndexByHash.containsKey(hash) ? -1 : j);
+            }
+            Map<Long, Integer> oldIndexByHash = new HashMap<>();
+            for (int i = oldFrom; i < oldTo; ++i) {
+                long hash = getSubtreeHash(oldNode.jjtGetChild(i));
+                oldIndexByHash.put(hash, oldIndexByHash.containsKey(hash) ? -1 : i);
+            }
+            int i = oldFrom;
+            int j = newFrom;
+            for (int anchor = oldFrom; anchor < oldTo; ++anchor) {
+                Node oldChild = oldNode.jjtGetChild(anchor);
+                long hash = getSubtreeHash(oldChild);
+                Integer newAnchor = newIndexByHash.get(hash);
+                if (oldIndexByHash.get(hash) != anchor || newAnchor == null || newAnchor < j
+                        || !haveSameLabel(oldChild, newNode.jjtGetChild(newAnchor))) {
+                    continue;
+                }
+                matchWindow(oldNode, i, anchor, newNode, j, newAnchor);
+                pair(oldChild, newNode.jjtGetChild(newAnchor));
+                i = anchor + 1;
+                j = newAnchor + 1;
+            }
+            matchWindow(oldNode, i, oldTo, newNode, j, newTo);
+        }
+
+        /**
+         * Matches the children in the windows as a heaviest common subsequence.
+         */
+        private void matchWindow(Node oldNode, int oldFrom, int oldTo, Node newNode, int newFrom, int newTo) {
+            int oldCount = oldTo - oldFrom;
+            int newCount = newTo - newFrom;
+            if (oldCount == 0 || newCount == 0 || (long) (oldCount + 1) * (newCount + 1) > MAX_WINDOW_CELLS) {
+                for (int i = oldFrom; i < oldTo; ++i) {
+                    collectSubtree(removed, oldNode.jjtGetChild(i));
+                }
+                for (int j = newFrom; j < newTo; ++j) {
+                    collectSubtree(added, newNode.jjtGetChild(j));
+                }
+                return;
+            }
+            int[][] bestWeight = new int[oldCount + 1][newCount + 1];
+            for (int i = oldCount - 1; i >= 0; --i) {
+                for (int j = newCount - 1; j >= 0; --j) {
+                    int weight = getMatchWeight(oldNode.jjtGetChild(oldFrom + i), newNode.jjtGetChild(newFrom + j));
+                    bestWeight[i][j] = Math.max(bestWeight[i + 1][j], bestWeight[i][j + 1]);
+                    if (weight > 0) {
+                        bestWeight[i][j] = Math.max(bestWeight[i][j], bestWeight[i + 1][j + 1] + weight);
+                    }
+                }
+            }
+            int i = 0;
+            int j = 0;
+            while (i < oldCount && j < newCount) {
+                Node oldChild = oldNode.jjtGetChild(oldFrom + i);
+                Node newChild = newNode.jjtGetChild(newFrom + j);
+                int weight = getMatchWeight(oldChild, newChild);
+                if (weight > 0 && bestWeight[i][j] == bestWeight[i + 1][j + 1] + weight) {
+                    pair(oldChild, newChild);
+                    i += 1;
+                    j += 1;
+                } else if (bestWeight[i][j] == bestWeight[i + 1][j]) {
+                    collectSubtree(removed, oldChild);
+                    i += 1;
+                } else {
+                    collectSubtree(added, newChild);
+                    j += 1;
+                }
+            }
+            for (; i < oldCount; ++i) {
+                collectSubtree(removed, oldNode.jjtGetChild(oldFrom + i));
+            }
+            for (; j < newCount; ++j) {
+                collectSubtree(added, newNode.jjtGetChild(newFrom + j));
+            }
+        }
+    }
+
+    /**
+     * Forgets the transitive closures containing the passed nodes, that is the closures of the nodes
+     * they depend on transitively.
+     */
+    private void invalidateClosures(Collection<Node> changedNodes) {
+        Deque<Node> pending = new ArrayDeque<>(changedNodes);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            // a closure is calculated together with the closures of everything it contains
+            if (transitivelyDependingNodes.remove(node) != null && directDependencies.containsKey(node)) {
+                pending.addAll(directDependencies.get(node));
+            }
+        }
+    }
+
+    private static Node map(Node node, Map<Node, Node> renamed) {
+        Node result = renamed.get(node);
+        return result == null ? node : result;
+    }
+
+    private static HashSet<Node> map(Set<Node> nodes, Map<Node, Node> renamed, Set<Node> removed) {
+        HashSet<Node> result = new HashSet<>();
+        for (Node node : nodes) {
+            if (!removed.contains(node)) {
+                result.add(map(node, renamed));
+            }
+        }
+        return result;
+    }
+
+    private int indexOf(Node node) {
+        Integer result = nodeIndices.get(node);
+        if (result == null) {
+            if (freeIndices.isEmpty()) {
+                result = indexedNodes.size();
+                indexedNodes.add(node);
+            } else {
+                result = freeIndices.pop();
+                indexedNodes.set(result, node);
+            }
+            nodeIndices.put(node, result);
+        }
+        return result;
+    }
+
+    /**
+     * Passes the index and the closure of every changed node to its new counterpart, frees the removed ones.
+     */
+    private void carryOverIndices(Map<Node, Node> renamed, Set<Node> removed) {
+        for (Node node : removed) {
+            Integer index = nodeIndices.remove(node);
+            if (index != null) {
+                indexedNodes.set(index, null);
+                freeIndices.push(index);
+            }
+        }
+        Map<Node, Integer> movedIndices = new HashMap<>();
+        Map<Node, BitSet> movedClosures = new HashMap<>();
+        for (Map.Entry<Node, Node> entry : renamed.entrySet()) {
+            Integer index = nodeIndices.remove(entry.getKey());
+            if (index != null) {
+                movedIndices.put(entry.getValue(), index);
+                indexedNodes.set(index, entry.getValue());
+            }
+            BitSet closure = transitivelyDependingNodes.remove(entry.getKey());
+            if (closure != null) {
+                movedClosures.put(entry.getValue(), closure);
+            }
+        }
+        nodeIndices.putAll(movedIndices);
+        transitivelyDependingNodes.putAll(movedClosures);
+    }
+
+    /**
+     * Replaces the changed nodes in the edges with their new counterparts, drops the removed ones.
+     */
+    private void carryOver(Map<Node, Node> renamed, Set<Node> removed) {
+        carryOverIndices(renamed, removed);
+        List<Node> changed = new ArrayList<>(renamed.keySet());
+        changed.addAll(removed);
+        List<HashSet<Node>> oldDependents = new ArrayList<>();
+        List<HashSet<Node>> oldDependencies = new ArrayList<>();
+        for (Node node : changed) {
+            oldDependents.add(directlyDependingNodes.remove(node));
+            oldDependencies.add(directDependencies.remove(node));
+        }
+        for (int i = 0; i < changed.size(); ++i) {
+            Node node = changed.get(i);
+            Node newNode = removed.contains(node) ? null : renamed.get(node);
+            HashSet<Node> dependents = oldDependents.get(i);
+            HashSet<Node> dependencies = oldDependencies.get(i);
+            if (dependents != null) {
+                if (newNode != null) {
+                    directlyDependingNodes.put(newNode, map(dependents, renamed, removed));
+                }
+                updateBackEdges(dependents, directDependencies, node, newNode, renamed, removed);
+            }
+            if (dependencies != null) {
+                if (newNode != null) {
+                    directDependencies.put(newNode, map(dependencies, renamed, removed));
+                }
+                updateBackEdges(dependencies, directlyDependingNodes, node, newNode, renamed, removed);
+            }
+        }
+    }
+
+    /**
+     * Fixes the edges of the unchanged nodes pointing to the changed one, the changed nodes are handled separately.
+     */
+    private static void updateBackEdges(Set<Node> neighbors, Map<Node, HashSet<Node>> edges, Node node, Node newNode,
+                                        Map<Node, Node> renamed, Set<Node> removed) {
+        for (Node neighbor : neighbors) {
+            if (renamed.containsKey(neighbor) || removed.contains(neighbor)) {
+                continue;
+            }
+            HashSet<Node> neighborEdges = edges.get(neighbor);
+            if (neighborEdges != null && neighborEdges.remove(node) && newNode != null) {
+                neighborEdges.add(newNode);
+            }
+        }
+    }
+
+    private static void addEdge(Map<Node, HashSet<Node>> edges, Node from, Node to) {
+        HashSet<Node> set = edges.get(from);
+        if (set == null) {
+            set = new HashSet<>();
+            edges.put(from, set);
+        }
+        set.add(to);
+    }
+
+    private void fetchDirectDependents(Node node) {
+        // process depending nodes
+        if (!directlyDependingNodes.containsKey(node)) {
+            directlyDependingNodes.put(node, new HashSet<Node>());
+        }
+        for (Node dependingNode : provider.getDirectlyDependingNodes(node)) {
+            addEdge(directlyDependingNodes, node, dependingNode);
+            addEdge(directDependencies, dependingNode, node);
+        }
+
+        // process dependencies
+        for (Node dependency : provider.getDirectDependencies(node)) {
+            addEdge(directlyDependingNodes, dependency, node);
+            addEdge(directDependencies, node, dependency);
+        }
+    }
+
+    private void fetchDirectDependentsFromSubtree(Node root) {
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            fetchDirectDependents(node);
+            for (int i = node.jjtGetNumChildren() - 1; i >= 0; --i) {
+                stack.push(node.jjtGetChild(i));
+            }
+        }
+    }
+
+    private static final class Frame {
+        final Node node;
+        final Iterator<Node> dependingNodes;
+        final int order;
+        int lowLink;
+
+        Frame(Node node, Set<Node> dependingNodes, int order) {
+            this.node = node;
+            this.dependingNodes = dependingNodes == null ? Collections.<Node>emptyIterator() : dependingNodes.iterator();
+            this.order = order;
+            this.lowLink = order;
+        }
+    }
+
+    /**
+     * Calculates the closures of every node reachable from the passed one by the Tarjan's algorithm
+     * with an explicit stack, so long dependency chains cannot overflow the call stack.
+     *
+     * The strongly connected components are completed in reverse topological order, so the closure
+     * of a component is its own nodes plus the already known closures of the components depending on it.
+     * Every node reachable from a node having a closure has a closure as well.
+     */
+    private BitSet indirectlyDependentNodesFor(Node startNode) {
+        BitSet cached = transitivelyDependingNodes.get(startNode);
+        if (cached != null) {
+            return cached;
+        }
+        final Map<Node, Integer> visitOrder = new HashMap<>();
+        final Deque<Node> componentStack = new ArrayDeque<>();
+        final Set<Node> onComponentStack = new HashSet<>();
+        final Deque<Frame> callStack = new ArrayDeque<>();
+
+        visitOrder.put(startNode, 0);
+        componentStack.push(startNode);
+        onComponentStack.add(startNode);
+        callStack.push(new Frame(startNode, directlyDependingNodes.get(startNode), 0));
+        while (!callStack.isEmpty()) {
+            Frame frame = callStack.peek();
+            if (frame.dependingNodes.hasNext()) {
+                Node next = frame.dependingNodes.next();
+                if (transitivelyDependingNodes.containsKey(next)) {
+                    // belongs to a completed component
+                    continue;
+                }
+                Integer nextOrder = visitOrder.get(next);
+                if (nextOrder == null) {
+                    nextOrder = visitOrder.size();
+                    visitOrder.put(next, nextOrder);
+                    componentStack.push(next);
+                    onComponentStack.add(next);
+                    callStack.push(new Frame(next, directlyDependingNodes.get(next), nextOrder));
+                } else if (onComponentStack.contains(next)) {
+                    frame.lowLink = Math.min(frame.lowLink, nextOrder);
+                }
+                continue;
+            }
+
+            callStack.pop();
+            if (frame.lowLink == frame.order) {
+                completeComponent(frame.node, componentStack, onComponentStack);
+            }
+            if (!callStack.isEmpty()) {
+                Frame caller = callStack.peek();
+                caller.lowLink = Math.min(caller.lowLink, frame.lowLink);
+            }
+        }
+        return transitivelyDependingNodes.get(startNode);
+    }
+
+    private void completeComponent(Node componentRoot, Deque<Node> componentStack, Set<Node> onComponentStack) {
+        List<Node> members = new ArrayList<>();
+        BitSet closure = new BitSet();
+        Node member;
+        do {
+            member = componentStack.pop();
+            onComponentStack.remove(member);
+            members.add(member);
+            closure.set(indexOf(member));
+        } while (member != componentRoot);
+        for (Node node : members) {
+            Set<Node> dependingNodes = directlyDependingNodes.get(node);
+            if (dependingNodes == null) {
+                continue;
+            }
+            for (Node dependingNode : dependingNodes) {
+                // not yet known for the members of this very component, they are already included
+                BitSet dependingClosure = transitivelyDependingNodes.get(dependingNode);
+                if (dependingClosure != null) {
+                    closure.or(dependingClosure);
+                }
+            }
+        }
+        for (Node node : members) {
+            transitivelyDependingNodes.put(node, closure);
+        }
+    }
+
+    /**
+     * Adds the subtree of the node together with everything depending on it to the result.
+     */
+    void collectNodesToRemove(Set<Node> result, Node node) {
+        BitSet closure = new BitSet();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            closure.or(indirectlyDependentNodesFor(current));
+            for (int i = 0; i < current.jjtGetNumChildren(); ++i) {
+                stack.push(current.jjtGetChild(i));
+            }
+        }
+        for (int i = closure.nextSetBit(0); i >= 0; i = closure.nextSetBit(i + 1)) {
+            result.add(indexedNodes.get(i));
+        }
+    }
+}
@@ -4,24 +4,42 @@
 
 package net.sourceforge.pmd.scm.strategies;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import net.sourceforge.pmd.lang.ast.Node;
 
+import com.beust.jcommander.Parameter;
+
 /**
  * A simple interactive (in a sense, compiler-driven) greedy strategy that tries to cut off
  * different AST subtrees with depending nodes until it cannot make any step.
+ *
+ * By default, the subtrees are visited in document order. In the largest-first mode, the subtrees are
+ * kept in a queue ordered by how much source text removing them would drop, so each successful removal
+ * is the largest one possible at the moment. Since halves of the children are not tried at once in this mode,
+ * it usually takes more compiler runs in total.
  */
 public class GreedyStrategy extends AbstractMinimizationStrategy {
     public static class Configuration extends AbstractConfiguration {
+        @Parameter(names = "--largest-first",
+                description = "Try removing the subtrees dropping most of the source first instead of going in document order, "
+                        + "usually at the cost of more checks in total")
+        private boolean largestFirst;
+
+        public boolean isLargestFirst() {
+            return largestFirst;
+        }
+
         @Override
         public MinimizationStrategy createStrategy() {
             return new GreedyStrategy(this);
@@ -35,88 +53,58 @@ public class GreedyStrategy extends AbstractMinimizationStrategy {
         }
     };
 
-    private GreedyStrategy(Configuration configuration) {
-        super(configuration);
-    }
-
-    private final Map<Node, HashSet<Node>> directlyDependingNodes = new HashMap<>();
-    private final Map<Node, Set<Node>> transitivelyDependingNodes = new HashMap<>();
+    private static final class Candidate {
+        final Node node;
+        // removed characters, as of the last time this was calculated, can only decrease since then
+        int size;
 
-    private void fetchDirectDependentsFromSubtree(Node node) {
-        // process depending nodes
-        if (!directlyDependingNodes.containsKey(node)) {
-            directlyDependingNodes.put(node, new HashSet<Node>());
-        }
-        directlyDependingNodes.get(node).addAll(ops.getNodeInformationProvider().getDirectlyDependingNodes(node));
-
-        // process dependencies
-        Set<Node> dependencies = ops.getNodeInformationProvider().getDirectDependencies(node);
-        for (Node dependency: dependencies) {
-            if (!directlyDependingNodes.containsKey(dependency)) {
-                directlyDependingNodes.put(dependency, new HashSet<Node>());
-            }
-            directlyDependingNodes.get(dependency).add(node);
-        }
-
-        // recurse
-        for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
-            fetchDirectDependentsFromSubtree(node.jjtGetChild(i));
+        Candidate(Node node, int size) {
+            this.node = node;
+            this.size = size;
         }
     }
 
-    /**
-     * This method implements Depth-First Search.
-     *
-     * Vertex state is determined by the <code>transitivelyDependingNodes.get(node)</code>:
-     * <ul>
-     *     <li><code>null</code> means this vertex is being visited for the first time</li>
-     *     <li>empty set means this vertex was visited before (and one should check its directly dependent vertices)</li>
-     *     <li>non-empty set means this vertex is fully processed</li>
-     * </ul>
-     */
-    private Set<Node> indirectlyDependentNodesFor(Node currentNode) {
-        final Set<Node> oldValue = transitivelyDependingNodes.get(currentNode);
-        if (oldValue == null) {
-            // mark this node as entered
-            transitivelyDependingNodes.put(currentNode, new HashSet<Node>());
-
-            // create separate set for ongoing calculation, see vertex state
-            final HashSet<Node> calculated = new HashSet<>();
-            // recurse
-            final HashSet<Node> directlyDepending = directlyDependingNodes.get(currentNode);
-            for (Node dependingNode: directlyDepending) {
-                calculated.addAll(indirectlyDependentNodesFor(dependingNode));
-            }
-            calculated.add(currentNode);
+    private static final Comparator<Candidate> LARGEST_FIRST = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate o1, Candidate o2) {
+            return Integer.compare(o2.size, o1.size);
+        }
+    };
 
-            // finally, put real result to map
-            transitivelyDependingNodes.put(currentNode, Collections.unmodifiableSet(calculated));
+    private final boolean largestFirst;
 
-            return calculated;
-        } else {
-            // in other two cases no need to do anything
-            return oldValue;
-        }
+    private GreedyStrategy(Configuration configuration) {
+        super(configuration);
+        largestFirst = configuration.largestFirst;
     }
 
-    private void collectNodesToRemove(Set<Node> result, Node node) {
-        result.addAll(indirectlyDependentNodesFor(node));
-        for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
-            collectNodesToRemove(result, node.jjtGetChild(i));
-        }
+    private DependencyGraph dependencies;
+
+    @Override
+    public void initialize(MinimizerOperations ops) {
+        super.initialize(ops);
+        dependencies = new DependencyGraph(ops.getNodeInformationProvider());
     }
 
     private int previousPosition;
     private int positionCountdown;
     private int restartCount;
 
+    // Largest-first mode: the candidates not yet tried in this round and the ones failed to be removed
+    private PriorityQueue<Candidate> queue = new PriorityQueue<>(11, LARGEST_FIRST);
+    private List<Candidate> failed = new ArrayList<>();
+    // the last tried removal, still set on restart if it was successful
+    private Candidate pendingCandidate;
+    private boolean removedInThisRound;
+    private int trialCount;
+
     private void tryRemoveAt(Node currentNode) throws Exception {
         List<Collection<Node>> variants = new ArrayList<>();
 
         if (currentNode.jjtGetParent() != null) {
             // try dropping this node, if this is not the AST root
             Set<Node> toRemoveWithThis = new HashSet<>();
-            collectNodesToRemove(toRemoveWithThis, currentNode);
+            dependencies.collectNodesToRemove(toRemoveWithThis, currentNode);
             variants.add(toRemoveWithThis);
         }
 
@@ -125,9 +113,9 @@ public class GreedyStrategy extends AbstractMinimizationStrategy {
         Set<Node> toRemoveSecondHalf = new HashSet<>();
         for (int i = 0; i < currentNode.jjtGetNumChildren(); ++i) {
             if (i < currentNode.jjtGetNumChildren() / 2) {
-                collectNodesToRemove(toRemoveFirstHalf, currentNode.jjtGetChild(i));
+                dependencies.collectNodesToRemove(toRemoveFirstHalf, currentNode.jjtGetChild(i));
             } else {
-                collectNodesToRemove(toRemoveSecondHalf, currentNode.jjtGetChild(i));
+                dependencies.collectNodesToRemove(toRemoveSecondHalf, currentNode.jjtGetChild(i));
             }
         }
         variants.add(toRemoveFirstHalf);
@@ -159,15 +147,111 @@ public class GreedyStrategy extends AbstractMinimizationStrategy {
         }
     }
 
+    /**
+     * Whether the node is queued in the largest-first mode: every node except for the AST roots,
+     * just like every node is tried to be dropped in document order.
+     */
+    private static boolean isCandidate(Node node) {
+        return node.jjtGetParent() != null;
+    }
+
+    private int getRemovedSize(Node node) {
+        Set<Node> nodesToRemove = new HashSet<>();
+        dependencies.collectNodesToRemove(nodesToRemove, node);
+        return ops.getRemovedSize(nodesToRemove);
+    }
+
+    /**
+     * Re-targets the candidates to the re-parsed nodes, dropping the cut off ones.
+     */
+    private List<Candidate> carryOver(Collection<Candidate> candidates, Set<Node> known) {
+        List<Candidate> result = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            Node node = dependencies.getCounterpart(candidate.node);
+            if (node != null && known.add(node) && isCandidate(node)) {
+                result.add(new Candidate(node, candidate.size));
+            }
+        }
+        return result;
+    }
+
+    private void enqueueUnknown(Node node, Set<Node> known) {
+        if (isCandidate(node) && known.add(node)) {
+            queue.add(new Candidate(node, getRemovedSize(node)));
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+            enqueueUnknown(node.jjtGetChild(i), known);
+        }
+    }
+
+    /**
+     * Updates the queue after the source has changed: the candidates keep their sizes that are upper bounds now,
+     * the nodes without old counterparts are measured.
+     */
+    private void updateQueue(List<Node> roots) {
+        Set<Node> known = new HashSet<>();
+        List<Candidate> queued = carryOver(queue, known);
+        failed = carryOver(failed, known);
+        queue = new PriorityQueue<>(Math.max(11, queued.size()), LARGEST_FIRST);
+        queue.addAll(queued);
+        for (Node root : roots) {
+            enqueueUnknown(root, known);
+        }
+    }
+
+    /**
+     * Tries the candidates from the largest one, re-measuring each before trying,
+     * as it could shrink since being measured. Repeats while anything is removed.
+     */
+    private void performLargestFirstPass(List<Node> roots) throws Exception {
+        if (pendingCandidate != null) {
+            // restarted after success
+            pendingCandidate = null;
+            removedInThisRound = true;
+        }
+        updateQueue(roots);
+        while (true) {
+            while (!queue.isEmpty()) {
+                Candidate candidate = queue.poll();
+                Set<Node> nodesToRemove = new HashSet<>();
+                dependencies.collectNodesToRemove(nodesToRemove, candidate.node);
+                int size = ops.getRemovedSize(nodesToRemove);
+                if (size < candidate.size && !queue.isEmpty() && size < queue.peek().size) {
+                    // is not the largest one anymore
+                    candidate.size = size;
+                    queue.add(candidate);
+                    continue;
+                }
+                candidate.size = size;
+                pendingCandidate = candidate;
+                trialCount += 1;
+                ops.tryRemoveNodes(nodesToRemove);
+
+                // not removed
+                pendingCandidate = null;
+                failed.add(candidate);
+            }
+            if (!removedInThisRound) {
+                return;
+            }
+            // the failed ones could become removable since
+            removedInThisRound = false;
+            restartCount += 1;
+            queue.addAll(failed);
+            failed.clear();
+        }
+    }
+
     @Override
     public void performSinglePass(List<Node> roots) throws Exception {
+        if (largestFirst) {
+            dependencies.update(roots);
+            performLargestFirstPass(roots);
+            return;
+        }
         positionCountdown = previousPosition;
         previousPosition = 0;
-        directlyDependingNodes.clear();
-        transitivelyDependingNodes.clear();
-        for (Node root : roots) {
-            fetchDirectDependentsFromSubtree(root);
-        }
+        dependencies.update(roots);
         for (Node currentRoot : roots) {
             findNodeToRemove(currentRoot);
         }
@@ -181,8 +265,31 @@ public class GreedyStrategy extends AbstractMinimizationStrategy {
         }
     }
 
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        out.writeInt(previousPosition);
+        out.writeInt(restartCount);
+        // the queue consists of nodes, so it is rebuilt on resume
+        out.writeBoolean(removedInThisRound || pendingCandidate != null);
+        out.writeInt(trialCount);
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        previousPosition = in.readInt();
+        restartCount = in.readInt();
+        removedInThisRound = in.readBoolean();
+        trialCount = in.readInt();
+    }
+
     @Override
     public void printStatistics(PrintStream stream) {
-        stream.println("Greedy strategy restart count: " + restartCount);
+        if (largestFirst) {
+            stream.println("Greedy strategy (largest first) trial count: " + trialCount + ", round count: " + (restartCount + 1)
+                    + ", dependency graph rebuilds: " + dependencies.getRebuildCount());
+        } else {
+            stream.println("Greedy strategy restart count: " + restartCount
+                    + ", dependency graph rebuilds: " + dependencies.getRebuildCount());
+        }
     }
 }
@@ -0,0 +1,157 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Hierarchical delta debugging: processes the AST level by level, from the top,
+ * running ddmin-like partitioning over all the nodes of the current depth.
+ *
+ * Every successful removal restarts the pass (see {@link MinimizerOperations}), so the current
+ * depth and granularity are remembered between passes instead of the nodes themselves.
+ * Once the deepest level is processed, the whole sweep is repeated while it removes anything.
+ */
+public class HierarchicalDeltaDebuggingStrategy extends AbstractMinimizationStrategy {
+    public static class Configuration extends AbstractConfiguration {
+        @Override
+        public MinimizationStrategy createStrategy() {
+            return new HierarchicalDeltaDebuggingStrategy(this);
+        }
+    }
+
+    public static final MinimizationStrategyConfigurationFactory FACTORY = new AbstractFactory("hdd") {
+        @Override
+        public MinimizationStrategyConfiguration createConfiguration() {
+            return new Configuration();
+        }
+    };
+
+    private HierarchicalDeltaDebuggingStrategy(Configuration configuration) {
+        super(configuration);
+    }
+
+    private DependencyGraph dependencies;
+
+    // roots themselves are not removed
+    private int currentLevel = 1;
+    // number of parts the nodes of the current level are split into, 1 means "try removing all of them"
+    private int granularity = 1;
+    private boolean removedInThisSweep;
+
+    private int sweepCount = 1;
+    private int batchCount;
+
+    @Override
+    public void initialize(MinimizerOperations ops) {
+        super.initialize(ops);
+        dependencies = new DependencyGraph(ops.getNodeInformationProvider());
+    }
+
+    private static void collectLevel(List<Node> result, Node node, int depth) {
+        if (depth == 0) {
+            result.add(node);
+            return;
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+            collectLevel(result, node.jjtGetChild(i), depth - 1);
+        }
+    }
+
+    private Set<Node> collectNodesToRemove(List<Node> nodes, int from, int to) {
+        Set<Node> result = new HashSet<>();
+        for (int i = from; i < to; ++i) {
+            dependencies.collectNodesToRemove(result, nodes.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Runs ddmin over the nodes of the current level, starting from the remembered granularity.
+     */
+    private void minimizeLevel(List<Node> nodes) throws Exception {
+        granularity = Math.min(granularity, nodes.size());
+        while (true) {
+            List<Collection<Node>> variants = new ArrayList<>();
+            for (int i = 0; i < granularity; ++i) {
+                // keep the complement of the i-th part
+                variants.add(collectNodesToRemove(nodes, i * nodes.size() / granularity, (i + 1) * nodes.size() / granularity));
+            }
+            final int triedGranularity = granularity;
+            final boolean removedBefore = removedInThisSweep;
+            // On success, the pass is restarted with the rest of the nodes to be split into one part less
+            granularity = Math.max(triedGranularity - 1, 2);
+            removedInThisSweep = true;
+            batchCount += 1;
+            ops.tryRemoveMultipleVariants(variants);
+
+            // nothing removed
+            removedInThisSweep = removedBefore;
+            if (triedGranularity == nodes.size()) {
+                return;
+            }
+            granularity = Math.min(2 * triedGranularity, nodes.size());
+        }
+    }
+
+    @Override
+    public void performSinglePass(List<Node> roots) throws Exception {
+        dependencies.update(roots);
+        while (true) {
+            List<Node> nodes = new ArrayList<>();
+            for (Node root : roots) {
+                collectLevel(nodes, root, currentLevel);
+            }
+            if (nodes.isEmpty()) {
+                if (!removedInThisSweep) {
+                    // fixpoint reached
+                    return;
+                }
+                // repeat the whole sweep
+                sweepCount += 1;
+                currentLevel = 1;
+                granularity = 1;
+                removedInThisSweep = false;
+                continue;
+            }
+            minimizeLevel(nodes);
+            currentLevel += 1;
+            granularity = 1;
+        }
+    }
+
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        out.writeInt(currentLevel);
+        out.writeInt(granularity);
+        out.writeBoolean(removedInThisSweep);
+        out.writeInt(sweepCount);
+        out.writeInt(batchCount);
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        currentLevel = in.readInt();
+        granularity = in.readInt();
+        removedInThisSweep = in.readBoolean();
+        sweepCount = in.readInt();
+        batchCount = in.readInt();
+    }
+
+    @Override
+    public void printStatistics(PrintStream stream) {
+        stream.println("HDD strategy sweep count: " + sweepCount + ", variant batches: " + batchCount);
+    }
+}
@@ -4,6 +4,9 @@
 
 package net.sourceforge.pmd.scm.strategies;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
 
@@ -23,6 +26,17 @@ public interface MinimizationStrategy {
      */
     void performSinglePass(List<Node> roots) throws Exception;
 
+    /**
+     * Writes the state to be restored by {@link #loadState(DataInput)} when resuming the minimization
+     * in another process. Called between passes, so the AST nodes are not worth saving.
+     */
+    void saveState(DataOutput out) throws IOException;
+
+    /**
+     * Restores the state written by {@link #saveState(DataOutput)}, called after {@link #initialize(MinimizerOperations)}.
+     */
+    void loadState(DataInput in) throws IOException;
+
     /**
      * Print current statistics.
      */
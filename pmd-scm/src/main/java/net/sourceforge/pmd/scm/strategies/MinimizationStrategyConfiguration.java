@@ -17,4 +17,12 @@ public interface MinimizationStrategyConfiguration {
      * Future changes to this object do not affected the created strategy.
      */
     MinimizationStrategy createStrategy();
+
+    /**
+     * Tells why the strategy created according to the current state of this object can end the whole
+     * minimization, so that no other strategy could run after it.
+     *
+     * @return The reason to be reported, or <code>null</code> if the strategy can be followed by others
+     */
+    String getExitReason();
 }
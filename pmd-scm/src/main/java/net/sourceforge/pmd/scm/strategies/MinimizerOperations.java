@@ -19,6 +19,11 @@ public interface MinimizerOperations {
      */
     NodeInformationProvider getNodeInformationProvider();
 
+    /**
+     * Get how many characters of the current sources removing the specified nodes would drop, without trying it.
+     */
+    int getRemovedSize(Collection<Node> nodesToRemove);
+
     /**
      * Try cleaning up source code.
      *
@@ -43,6 +48,11 @@ public interface MinimizerOperations {
      */
     void tryRemoveMultipleVariants(Collection<Collection<Node>> variants) throws Exception;
 
+    /**
+     * Replace the node with its descendant, trimming everything else the node consists of.
+     */
+    void tryReplaceNode(Node node, Node replacement) throws Exception;
+
     /**
      * Removes the specified nodes (even if producing source code that cannot be re-parsed), then exits.
      */
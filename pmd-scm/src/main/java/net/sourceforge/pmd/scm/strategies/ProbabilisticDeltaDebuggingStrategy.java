@@ -0,0 +1,318 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Probabilistic delta debugging: every subtree has an estimated probability that it can be removed,
+ * initially taken from the statistics of its node type. Each step tries removing the set of subtrees
+ * with the largest expected gain (the number of removed characters times the probability all of them are removable),
+ * then updates the probabilities from the verdict.
+ *
+ * Every successful removal restarts the pass (see {@link MinimizerOperations}) with the new nodes
+ * getting their probabilities from the updated per-type statistics, so what was learned is kept between passes.
+ * The subtrees failed to be removed alone are remembered as well, and re-checked only once nothing else can be removed.
+ */
+public class ProbabilisticDeltaDebuggingStrategy extends AbstractMinimizationStrategy {
+    public static class Configuration extends AbstractConfiguration {
+        @Override
+        public MinimizationStrategy createStrategy() {
+            return new ProbabilisticDeltaDebuggingStrategy(this);
+        }
+    }
+
+    public static final MinimizationStrategyConfigurationFactory FACTORY = new AbstractFactory("probdd") {
+        @Override
+        public MinimizationStrategyConfiguration createConfiguration() {
+            return new Configuration();
+        }
+    };
+
+    // Removal probability of a node type without statistics, and how many trials it weighs
+    private static final double PRIOR_PROBABILITY = 0.9;
+    private static final double PRIOR_WEIGHT = 2;
+    // Until tried to be removed alone, a subtree is not considered necessary
+    private static final double MIN_PROBABILITY = 0.01;
+
+    private ProbabilisticDeltaDebuggingStrategy(Configuration configuration) {
+        super(configuration);
+    }
+
+    private static final class TypeStatistics {
+        double removed;
+        double tried;
+
+        double getRemovalProbability() {
+            return (removed + PRIOR_PROBABILITY * PRIOR_WEIGHT) / (tried + PRIOR_WEIGHT);
+        }
+    }
+
+    private static final class Candidate {
+        final Node node;
+        final long path;
+        // characters dropped by removing the subtree
+        final int size;
+        double probability;
+        // found necessary during some previous pass, not in this one
+        boolean assumedNecessary;
+
+        Candidate(Node node, long path, int size, double probability) {
+            this.node = node;
+            this.path = path;
+            this.size = size;
+            this.probability = probability;
+        }
+    }
+
+    private DependencyGraph dependencies;
+    private final Map<String, TypeStatistics> typeStatistics = new HashMap<>();
+    // Paths of the subtrees that failed to be removed alone. Nodes are recreated on restart,
+    // so they are identified by the types and images of their ancestors and the images of the ancestors' children
+    private final Set<Long> necessaryPaths = new HashSet<>();
+
+    // The last tried removal, still set on restart if it was successful
+    private List<Candidate> pendingRemoval;
+    private int trialCount;
+
+    @Override
+    public void initialize(MinimizerOperations ops) {
+        super.initialize(ops);
+        dependencies = new DependencyGraph(ops.getNodeInformationProvider());
+    }
+
+    private TypeStatistics getTypeStatistics(Node node) {
+        TypeStatistics result = typeStatistics.get(node.getXPathNodeName());
+        if (result == null) {
+            result = new TypeStatistics();
+            typeStatistics.put(node.getXPathNodeName(), result);
+        }
+        return result;
+    }
+
+    private static int getLabel(Node node) {
+        return node.getXPathNodeName().hashCode() * 31 + (node.getImage() == null ? 0 : node.getImage().hashCode());
+    }
+
+    /**
+     * Collects the non-root subtrees as candidates.
+     *
+     * @return Size of the subtree
+     */
+    private void collectCandidates(List<Candidate> result, Node node, long path) {
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+            Node child = node.jjtGetChild(i);
+            long childPath = path * 0x9E3779B97F4A7C15L + getLabel(child);
+            for (int j = 0; j < child.jjtGetNumChildren(); ++j) {
+                // distinguish siblings by names, such as method ones
+                if (child.jjtGetChild(j).getImage() != null) {
+                    childPath = childPath * 31 + getLabel(child.jjtGetChild(j));
+                }
+            }
+            collectCandidates(result, child, childPath);
+        }
+        Node parent = node.jjtGetParent();
+        // an only child is removed together with its parent, removing it alone would leave the parent's tokens as junk
+        if (parent != null && (parent.jjtGetParent() == null || parent.jjtGetNumChildren() > 1)) {
+            int size = ops.getRemovedSize(Collections.singleton(node));
+            Candidate candidate = new Candidate(node, path, size, getTypeStatistics(node).getRemovalProbability());
+            if (necessaryPaths.contains(path)) {
+                candidate.probability = 0;
+                candidate.assumedNecessary = true;
+            }
+            result.add(candidate);
+        }
+    }
+
+    /**
+     * Forgets the subtrees found necessary during the previous passes.
+     *
+     * @return Whether there was anything to forget
+     */
+    private boolean forgetAssumedNecessary(List<Candidate> candidates) {
+        necessaryPaths.clear();
+        boolean result = false;
+        for (Candidate candidate : candidates) {
+            if (candidate.assumedNecessary) {
+                candidate.probability = getTypeStatistics(candidate.node).getRemovalProbability();
+                candidate.assumedNecessary = false;
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    private void recordSuccess(List<Candidate> removal) {
+        for (Candidate candidate : removal) {
+            TypeStatistics statistics = getTypeStatistics(candidate.node);
+            statistics.removed += 1;
+            statistics.tried += 1;
+        }
+    }
+
+    private void recordFailure(List<Candidate> removal) {
+        double allRemovable = 1;
+        for (Candidate candidate : removal) {
+            allRemovable *= candidate.probability;
+        }
+        for (Candidate candidate : removal) {
+            // Bayes: at least one of them is not removable, this one with probability blame
+            double blame = Math.min(1, (1 - candidate.probability) / (1 - allRemovable));
+            getTypeStatistics(candidate.node).tried += blame;
+            if (removal.size() == 1) {
+                candidate.probability = 0;
+                necessaryPaths.add(candidate.path);
+            } else {
+                // only a subtree failed to be removed alone is known to be necessary
+                candidate.probability = Math.max(1 - blame, MIN_PROBABILITY);
+            }
+        }
+    }
+
+    /**
+     * Picks the subtrees to be removed together, maximizing the expected number of removed characters.
+     * The candidates are considered in the order of their own expected gain, so ancestors come before descendants
+     * unless known to be much less likely removable.
+     */
+    private List<Candidate> chooseRemoval(List<Candidate> candidates, Set<Node> nodesToRemove) {
+        Collections.sort(candidates, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate o1, Candidate o2) {
+                return Double.compare(o2.probability * o2.size, o1.probability * o1.size);
+            }
+        });
+        List<Candidate> result = new ArrayList<>();
+        double allRemovable = 1;
+        double expectedGain = 0;
+        for (Candidate candidate : candidates) {
+            if (candidate.probability == 0) {
+                // the rest are known to be necessary
+                break;
+            }
+            if (nodesToRemove.contains(candidate.node)) {
+                // already removed with some ancestor
+                continue;
+            }
+            Set<Node> added = new HashSet<>();
+            dependencies.collectNodesToRemove(added, candidate.node);
+            added.removeAll(nodesToRemove);
+            Set<Node> extended = new HashSet<>(nodesToRemove);
+            extended.addAll(added);
+            int extendedSize = ops.getRemovedSize(extended);
+            double extendedGain = extendedSize * allRemovable * candidate.probability;
+            if (extendedGain > expectedGain) {
+                result.add(candidate);
+                nodesToRemove.addAll(added);
+                allRemovable *= candidate.probability;
+                expectedGain = extendedGain;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void performSinglePass(List<Node> roots) throws Exception {
+        if (pendingRemoval != null) {
+            // restarted after success
+            recordSuccess(pendingRemoval);
+            pendingRemoval = null;
+        }
+        dependencies.update(roots);
+        List<Candidate> candidates = new ArrayList<>();
+        for (Node root : roots) {
+            collectCandidates(candidates, root, getLabel(root));
+        }
+        while (true) {
+            Set<Node> nodesToRemove = new HashSet<>();
+            List<Candidate> removal = chooseRemoval(candidates, nodesToRemove);
+            if (removal.isEmpty()) {
+                if (forgetAssumedNecessary(candidates)) {
+                    // the source has changed since, so re-check them
+                    continue;
+                }
+                return;
+            }
+            pendingRemoval = removal;
+            trialCount += 1;
+            ops.tryRemoveNodes(nodesToRemove);
+
+            // not removed
+            pendingRemoval = null;
+            recordFailure(removal);
+        }
+    }
+
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        if (pendingRemoval != null) {
+            // the last removal was successful, record it now instead of on restart
+            recordSuccess(pendingRemoval);
+            pendingRemoval = null;
+        }
+        out.writeInt(typeStatistics.size());
+        for (Map.Entry<String, TypeStatistics> entry : typeStatistics.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeDouble(entry.getValue().removed);
+            out.writeDouble(entry.getValue().tried);
+        }
+        out.writeInt(necessaryPaths.size());
+        for (long path : necessaryPaths) {
+            out.writeLong(path);
+        }
+        out.writeInt(trialCount);
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        typeStatistics.clear();
+        int typeCount = in.readInt();
+        for (int i = 0; i < typeCount; ++i) {
+            TypeStatistics statistics = new TypeStatistics();
+            String type = in.readUTF();
+            statistics.removed = in.readDouble();
+            statistics.tried = in.readDouble();
+            typeStatistics.put(type, statistics);
+        }
+        necessaryPaths.clear();
+        int pathCount = in.readInt();
+        for (int i = 0; i < pathCount; ++i) {
+            necessaryPaths.add(in.readLong());
+        }
+        trialCount = in.readInt();
+    }
+
+    @Override
+    public void printStatistics(PrintStream stream) {
+        stream.println("Probabilistic strategy trial count: " + trialCount + ", learned removal probabilities:");
+        List<Map.Entry<String, TypeStatistics>> entries = new ArrayList<>(typeStatistics.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, TypeStatistics>>() {
+            @Override
+            public int compare(Map.Entry<String, TypeStatistics> o1, Map.Entry<String, TypeStatistics> o2) {
+                return Double.compare(o2.getValue().tried, o1.getValue().tried);
+            }
+        });
+        for (Map.Entry<String, TypeStatistics> entry : entries) {
+            TypeStatistics statistics = entry.getValue();
+            if (statistics.tried > 0) {
+                stream.println(String.format(Locale.ROOT, "  %s: %.2f (removed %.0f of %.1f)", entry.getKey(),
+                        statistics.getRemovalProbability(), statistics.removed, statistics.tried));
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.scm.NodeInformationProvider;
+
+/**
+ * Perses-like reduction: traverses the AST like {@link GreedyStrategy}, but proposes only the changes
+ * the grammar allows (see {@link NodeInformationProvider#isOptional(Node)}), so no variant is wasted
+ * on being unparseable. For every node, its optional children are dropped in ever smaller chunks,
+ * then the node is replaced with each of its outermost compatible descendants.
+ *
+ * For languages without known grammar every child is considered optional and nothing is replaced.
+ */
+public class SyntaxGuidedStrategy extends AbstractMinimizationStrategy {
+    public static class Configuration extends AbstractConfiguration {
+        @Override
+        public MinimizationStrategy createStrategy() {
+            return new SyntaxGuidedStrategy(this);
+        }
+    }
+
+    public static final MinimizationStrategyConfigurationFactory FACTORY = new AbstractFactory("syntax") {
+        @Override
+        public MinimizationStrategyConfiguration createConfiguration() {
+            return new Configuration();
+        }
+    };
+
+    private SyntaxGuidedStrategy(Configuration configuration) {
+        super(configuration);
+    }
+
+    private NodeInformationProvider syntax;
+    private DependencyGraph dependencies;
+
+    private int previousPosition;
+    private int positionCountdown;
+    private int restartCount;
+    private int batchCount;
+    private int replacementCount;
+
+    @Override
+    public void initialize(MinimizerOperations ops) {
+        super.initialize(ops);
+        syntax = ops.getNodeInformationProvider();
+        dependencies = new DependencyGraph(syntax);
+    }
+
+    private void tryRemoveOptionalChildren(Node currentNode) throws Exception {
+        List<Node> optionalChildren = new ArrayList<>();
+        for (int i = 0; i < currentNode.jjtGetNumChildren(); ++i) {
+            Node child = currentNode.jjtGetChild(i);
+            if (!Boolean.FALSE.equals(syntax.isOptional(child))) {
+                optionalChildren.add(child);
+            }
+        }
+        for (int granularity = 1; granularity <= optionalChildren.size(); granularity *= 2) {
+            List<Collection<Node>> variants = new ArrayList<>();
+            for (int i = 0; i < granularity; ++i) {
+                Set<Node> nodesToRemove = new HashSet<>();
+                int from = i * optionalChildren.size() / granularity;
+                int to = (i + 1) * optionalChildren.size() / granularity;
+                for (int j = from; j < to; ++j) {
+                    dependencies.collectNodesToRemove(nodesToRemove, optionalChildren.get(j));
+                }
+                variants.add(nodesToRemove);
+            }
+            batchCount += 1;
+            ops.tryRemoveMultipleVariants(variants);
+        }
+    }
+
+    /**
+     * Collects the compatible descendants not nested in other compatible ones, in document order.
+     */
+    private void collectReplacements(List<Node> result, Node replacedNode, Node currentNode) {
+        for (int i = 0; i < currentNode.jjtGetNumChildren(); ++i) {
+            Node child = currentNode.jjtGetChild(i);
+            if (Boolean.TRUE.equals(syntax.isReplaceableWith(replacedNode, child))) {
+                result.add(child);
+            } else {
+                collectReplacements(result, replacedNode, child);
+            }
+        }
+    }
+
+    private void tryReplace(Node currentNode) throws Exception {
+        List<Node> replacements = new ArrayList<>();
+        collectReplacements(replacements, currentNode, currentNode);
+        for (Node replacement : replacements) {
+            replacementCount += 1;
+            ops.tryReplaceNode(currentNode, replacement);
+        }
+    }
+
+    /**
+     * Traverse the passed subtree until successfully changing something.
+     *
+     * @see GreedyStrategy
+     */
+    private void findNodeToReduce(Node currentNode) throws Exception {
+        previousPosition += 1;
+        positionCountdown -= 1;
+        if (positionCountdown <= 0) {
+            tryRemoveOptionalChildren(currentNode);
+            tryReplace(currentNode);
+            // if exception was not thrown, then nothing has changed
+        }
+
+        for (int i = 0; i < currentNode.jjtGetNumChildren(); ++i) {
+            findNodeToReduce(currentNode.jjtGetChild(i));
+        }
+    }
+
+    @Override
+    public void performSinglePass(List<Node> roots) throws Exception {
+        boolean fromScratch = previousPosition == 0;
+        positionCountdown = previousPosition;
+        previousPosition = 0;
+        dependencies.update(roots);
+        for (Node currentRoot : roots) {
+            findNodeToReduce(currentRoot);
+        }
+        if (fromScratch) {
+            return;
+        }
+        // the nodes before the restart position could become reducible
+        previousPosition = 0;
+        positionCountdown = 0;
+        restartCount += 1;
+        for (Node currentRoot : roots) {
+            findNodeToReduce(currentRoot);
+        }
+    }
+
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        out.writeInt(previousPosition);
+        out.writeInt(restartCount);
+        out.writeInt(batchCount);
+        out.writeInt(replacementCount);
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        previousPosition = in.readInt();
+        restartCount = in.readInt();
+        batchCount = in.readInt();
+        replacementCount = in.readInt();
+    }
+
+    @Override
+    public void printStatistics(PrintStream stream) {
+        stream.println("Syntax-guided strategy restart count: " + restartCount
+                + ", removal batches: " + batchCount + ", replacements tried: " + replacementCount);
+    }
+}
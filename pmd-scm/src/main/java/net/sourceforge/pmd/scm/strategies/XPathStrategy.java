@@ -4,10 +4,16 @@
 
 package net.sourceforge.pmd.scm.strategies;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.xpath.SaxonXPathRuleQuery;
@@ -18,16 +24,33 @@ import com.beust.jcommander.Parameter;
 
 /**
  * Drops all nodes matched by the specified XPath 2.0 expression, then exits.
+ *
+ * With <code>--xpath-keep-invariant</code>, drops only the matched nodes the invariant allows to drop:
+ * tries removing all the matches at once, then ever smaller parts of them, until every match is
+ * either removed or found necessary.
  */
 public class XPathStrategy extends AbstractMinimizationStrategy {
     public static class Configuration extends AbstractConfiguration {
         @Parameter(names = "--xpath-expression", description = "XPath 2.0 expression to drop matched subtrees", required = true)
         private String expression;
 
+        @Parameter(names = "--xpath-keep-invariant",
+                description = "Drop only the matched subtrees whose removal keeps the invariant, instead of all of them")
+        private boolean keepInvariant;
+
         public String getExpression() {
             return expression;
         }
 
+        public boolean isKeepInvariant() {
+            return keepInvariant;
+        }
+
+        @Override
+        public String getExitReason() {
+            return keepInvariant ? null : "without --xpath-keep-invariant, it exits after dropping all the matches";
+        }
+
         @Override
         public MinimizationStrategy createStrategy() {
             return new XPathStrategy(this);
@@ -42,25 +65,113 @@ public class XPathStrategy extends AbstractMinimizationStrategy {
     };
 
     private final XPathRuleQuery query;
+    private final boolean keepInvariant;
+
+    private DependencyGraph dependencies;
+
+    // Matches found necessary, every successful removal restarts the pass, so they are looked up
+    // by their counterparts in the re-parsed trees
+    private Set<Node> necessaryMatches = new HashSet<>();
+    // number of parts the remaining matches are split into, 1 means "try removing all of them"
+    private int granularity = 1;
+    private int batchCount;
 
     private XPathStrategy(Configuration configuration) {
         super(configuration);
         query = new SaxonXPathRuleQuery();
         query.setProperties(new HashMap<PropertyDescriptor<?>, Object>());
         query.setXPath(configuration.expression);
+        keepInvariant = configuration.keepInvariant;
     }
 
     @Override
-    public void performSinglePass(List<Node> roots) throws Exception {
-        List<Node> nodesToRemove = new ArrayList<>();
+    public void initialize(MinimizerOperations ops) {
+        super.initialize(ops);
+        dependencies = new DependencyGraph(ops.getNodeInformationProvider());
+    }
+
+    private List<Node> findMatches(List<Node> roots) {
+        List<Node> result = new ArrayList<>();
         for (Node root : roots) {
-            nodesToRemove.addAll(query.evaluate(root, null));
+            result.addAll(query.evaluate(root, null));
+        }
+        return result;
+    }
+
+    private void updateNecessaryMatches() {
+        Set<Node> result = new HashSet<>();
+        for (Node node : necessaryMatches) {
+            Node counterpart = dependencies.getCounterpart(node);
+            if (counterpart != null) {
+                result.add(counterpart);
+            }
+        }
+        necessaryMatches = result;
+    }
+
+    private Set<Node> collectNodesToRemove(List<Node> matches, int from, int to) {
+        Set<Node> result = new HashSet<>();
+        for (int i = from; i < to; ++i) {
+            dependencies.collectNodesToRemove(result, matches.get(i));
         }
-        ops.forceRemoveNodesAndExit(nodesToRemove);
+        return result;
+    }
+
+    /**
+     * Bisects the matches not known to be necessary, starting from the remembered granularity.
+     */
+    private void removeKeepingInvariant(List<Node> roots) throws Exception {
+        dependencies.update(roots);
+        updateNecessaryMatches();
+        List<Node> matches = findMatches(roots);
+        matches.removeAll(necessaryMatches);
+        while (!matches.isEmpty()) {
+            granularity = Math.min(granularity, matches.size());
+            List<Collection<Node>> variants = new ArrayList<>();
+            for (int i = 0; i < granularity; ++i) {
+                int from = i * matches.size() / granularity;
+                int to = (i + 1) * matches.size() / granularity;
+                variants.add(collectNodesToRemove(matches, from, to));
+            }
+            batchCount += 1;
+            ops.tryRemoveMultipleVariants(variants);
+
+            // nothing removed
+            if (granularity == matches.size()) {
+                // every remaining match failed to be removed alone
+                necessaryMatches.addAll(matches);
+                return;
+            }
+            granularity *= 2;
+        }
+    }
+
+    @Override
+    public void performSinglePass(List<Node> roots) throws Exception {
+        if (keepInvariant) {
+            removeKeepingInvariant(roots);
+            return;
+        }
+        ops.forceRemoveNodesAndExit(findMatches(roots));
+    }
+
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        // the necessary matches are nodes, their verdicts are remembered as checked variants anyway
+        out.writeInt(granularity);
+        out.writeInt(batchCount);
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        granularity = in.readInt();
+        batchCount = in.readInt();
     }
 
     @Override
     public void printStatistics(PrintStream stream) {
-        // do nothing
+        if (keepInvariant) {
+            stream.println("XPath strategy batch count: " + batchCount + ", necessary matches: " + necessaryMatches.size());
+        }
     }
 }
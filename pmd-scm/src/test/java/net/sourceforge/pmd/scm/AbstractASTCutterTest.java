@@ -82,6 +82,7 @@ public abstract class AbstractASTCutterTest {
 
     protected void testExactRemoval(List<Node> nodesToRemove) throws IOException {
         cutter.writeTrimmedSource(nodesToRemove);
+        cutter.syncScratchFile();
         Node trimmedRoot = load(tempFile);
         assertEqualsAfterRemoval(originalRoot, new HashSet<Node>(nodesToRemove), trimmedRoot);
     }
@@ -0,0 +1,150 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import net.sourceforge.pmd.scm.strategies.MinimizationStrategy;
+
+public class CheckpointTest {
+    @Test
+    public void finishedRunIsResumedFromCheckpoint() throws Exception {
+        Path directory = Files.createTempDirectory("pmd-test-");
+        Path outputFile = directory.resolve("output.txt");
+        String cmdline = (SystemUtils.IS_OS_WINDOWS ? "type " : "cat ") + outputFile.toString();
+        Path inputFile = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("test-input.txt"), ".in");
+        int[] spawnCounts = new int[2];
+        for (int run = 0; run < 2; ++run) {
+            SCMConfiguration configuration = new SCMConfiguration();
+            String[] args = {
+                "--language", "java", "--input-file", inputFile.toString(), "--output-file", outputFile.toString(),
+                "--invariant", "message", "--printed-message", "testRemoval", "--command-line", cmdline,
+                "--strategy", "greedy", "--checkpoint-dir", directory.resolve("checkpoint").toString(),
+                "--checkpoint-interval", "0",
+            };
+            configuration.parse(run == 0 ? args : ArrayUtils.add(args, "--resume"));
+            Assert.assertNull(configuration.getErrorString());
+            SourceCodeMinimizer minimizer = new SourceCodeMinimizer(configuration);
+            minimizer.runMinimization();
+            TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-test-retained-testRemoval.txt"), outputFile);
+            spawnCounts[run] = TestHelper.getSpawnCount(minimizer);
+        }
+        Assert.assertTrue(spawnCounts[0] > 0);
+        Assert.assertEquals(0, spawnCounts[1]);
+    }
+
+    private static long getTimeLimit(SourceCodeMinimizer minimizer) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(bytes, true, "UTF-8");
+        minimizer.getInvariant().printStatistics(stream);
+        Matcher matcher = Pattern.compile("time limit: (\\d+) ms").matcher(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertTrue(matcher.find());
+        return Long.parseLong(matcher.group(1));
+    }
+
+    @Test
+    public void adaptiveTimeLimitIsRestored() throws Exception {
+        Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+        Path directory = Files.createTempDirectory("pmd-test-");
+        Path outputFile = directory.resolve("output.txt");
+        Path inputFile = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("test-input.txt"), ".in");
+        // the original input takes much longer than the minimized one
+        String cmdline = "grep -q BufferedReader " + outputFile + " && sleep 0.5; cat " + outputFile;
+        SourceCodeMinimizer[] minimizers = new SourceCodeMinimizer[2];
+        for (int run = 0; run < 2; ++run) {
+            SCMConfiguration configuration = new SCMConfiguration();
+            String[] args = {
+                "--language", "java", "--input-file", inputFile.toString(), "--output-file", outputFile.toString(),
+                "--invariant", "message", "--printed-message", "testRemoval", "--command-line", cmdline,
+                "--adaptive-timeout", "3", "--strategy", "greedy",
+                "--checkpoint-dir", directory.resolve("checkpoint").toString(), "--checkpoint-interval", "0",
+            };
+            configuration.parse(run == 0 ? args : ArrayUtils.add(args, "--resume"));
+            Assert.assertNull(configuration.getErrorString());
+            minimizers[run] = new SourceCodeMinimizer(configuration);
+            minimizers[run].runMinimization();
+            TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-test-retained-testRemoval.txt"), outputFile);
+        }
+        // the resumed run neither measures the minimized source nor runs anything else
+        Assert.assertTrue(getTimeLimit(minimizers[0]) >= 1500);
+        Assert.assertEquals(getTimeLimit(minimizers[0]), getTimeLimit(minimizers[1]));
+        Assert.assertEquals(0, TestHelper.getSpawnCount(minimizers[1]));
+    }
+
+    private static String getStatistics(MinimizationStrategy strategy) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(bytes, true, "UTF-8");
+        strategy.printStatistics(stream);
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Minimizes the large input, then minimizes it again resuming the checkpoint as of the specified check
+     * of the first run, as if the first run was killed in the middle of that check.
+     * Both runs are to reach the same state in the end, but the resumed one with fewer checks.
+     */
+    private void resumeInterruptedRun(int interruptedAt, String... extraArgs) throws Exception {
+        Path directory = Files.createTempDirectory("pmd-test-");
+        Path outputFile = directory.resolve("output.txt");
+        Path checkpointDirectory = directory.resolve("checkpoint");
+        Path snapshot = directory.resolve("snapshot.bin");
+        Path script = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("checkpoint-snapshot-cat.sh"), ".sh");
+        Path inputFile = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("greedy-large-input.txt"), ".in");
+        String[] args = {
+            "--language", "java", "--input-file", inputFile.toString(), "--output-file", outputFile.toString(),
+            "--invariant", "message", "--printed-message", "Available languages:",
+            "--command-line", "sh " + script + " " + outputFile + " " + checkpointDirectory + " " + interruptedAt + " " + snapshot,
+            "--checkpoint-dir", checkpointDirectory.toString(), "--checkpoint-interval", "0",
+        };
+        args = ArrayUtils.addAll(args, extraArgs);
+        SourceCodeMinimizer[] minimizers = new SourceCodeMinimizer[2];
+        for (int run = 0; run < 2; ++run) {
+            if (run == 1) {
+                Files.copy(snapshot, checkpointDirectory.resolve("checkpoint.bin"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            SCMConfiguration configuration = new SCMConfiguration();
+            configuration.parse(run == 0 ? args : ArrayUtils.add(args, "--resume"));
+            Assert.assertNull(configuration.getErrorString());
+            minimizers[run] = new SourceCodeMinimizer(configuration);
+            minimizers[run].runMinimization();
+            TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-large-output.txt"), outputFile);
+        }
+        // only the checks made since the last checkpoint are repeated
+        int spawnCount = TestHelper.getSpawnCount(minimizers[0]);
+        int resumedSpawnCount = TestHelper.getSpawnCount(minimizers[1]);
+        Assert.assertTrue(resumedSpawnCount < spawnCount);
+        Assert.assertTrue(spawnCount - resumedSpawnCount < interruptedAt);
+        // the passes and the strategy counters are continued rather than started over
+        Assert.assertEquals(minimizers[0].getPassNumber(), minimizers[1].getPassNumber());
+        Assert.assertEquals(getStatistics(minimizers[0].getStrategy()), getStatistics(minimizers[1].getStrategy()));
+    }
+
+    @Test
+    public void interruptedRunIsResumedFromCheckpoint() throws Exception {
+        Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+        resumeInterruptedRun(20, "--strategy", "greedy");
+    }
+
+    @Test
+    public void interruptedPipelineIsResumedAtItsStage() throws Exception {
+        Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+        // interrupted within the greedy stage, the xpath one is not to be run again
+        resumeInterruptedRun(25, "--strategy", "xpath,greedy",
+                "--xpath-expression", "//ClassOrInterfaceBodyDeclaration", "--xpath-keep-invariant");
+    }
+}
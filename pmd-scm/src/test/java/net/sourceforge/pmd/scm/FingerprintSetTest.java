@@ -0,0 +1,132 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FingerprintSetTest {
+    // the size of the initial table, so it cannot grow at all
+    private static final long SMALL_LIMIT = 2 * 1024 * 8;
+    private static final Fingerprint ZERO = new Fingerprint(0, 0);
+
+    private static List<Fingerprint> randomFingerprints(long seed, int count) {
+        Random random = new Random(seed);
+        List<Fingerprint> result = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            result.add(new Fingerprint(random.nextLong(), random.nextLong()));
+        }
+        return result;
+    }
+
+    private static FingerprintSet saveAndLoad(FingerprintSet set) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.save(new DataOutputStream(bytes));
+        FingerprintSet loaded = new FingerprintSet(0);
+        loaded.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        return loaded;
+    }
+
+    private static int countContained(FingerprintSet set, List<Fingerprint> fingerprints) {
+        int result = 0;
+        for (Fingerprint fingerprint : fingerprints) {
+            result += set.contains(fingerprint) ? 1 : 0;
+        }
+        return result;
+    }
+
+    @Test
+    public void exactSetGrowsWithoutLimit() {
+        FingerprintSet set = new FingerprintSet(0);
+        List<Fingerprint> added = randomFingerprints(1, 10000);
+        for (Fingerprint fingerprint : added) {
+            Assert.assertTrue(set.add(fingerprint));
+        }
+        for (Fingerprint fingerprint : added) {
+            Assert.assertFalse(set.add(fingerprint));
+        }
+        Assert.assertFalse(set.isApproximate());
+        Assert.assertEquals(added.size(), countContained(set, added));
+        Assert.assertEquals(0, countContained(set, randomFingerprints(2, 10000)));
+    }
+
+    @Test
+    public void switchesToBloomFilterAtMemoryLimit() {
+        FingerprintSet set = new FingerprintSet(SMALL_LIMIT);
+        List<Fingerprint> added = randomFingerprints(1, 2000);
+        // the table is kept at most half full
+        for (Fingerprint fingerprint : added.subList(0, 512)) {
+            set.add(fingerprint);
+        }
+        Assert.assertFalse(set.isApproximate());
+        for (Fingerprint fingerprint : added.subList(512, added.size())) {
+            set.add(fingerprint);
+        }
+        Assert.assertTrue(set.isApproximate());
+        // nothing is ever forgotten, only a few false positives are allowed
+        Assert.assertEquals(added.size(), countContained(set, added));
+        Assert.assertTrue(countContained(set, randomFingerprints(2, 10000)) < 100);
+    }
+
+    @Test
+    public void allZeroFingerprintIsNotAnEmptySlot() {
+        FingerprintSet set = new FingerprintSet(SMALL_LIMIT);
+        Assert.assertFalse(set.contains(ZERO));
+        Assert.assertTrue(set.add(ZERO));
+        Assert.assertFalse(set.add(ZERO));
+        Assert.assertTrue(set.contains(ZERO));
+        Assert.assertFalse(set.contains(new Fingerprint(0, 1)));
+
+        // kept when switching to the Bloom filter
+        for (Fingerprint fingerprint : randomFingerprints(1, 1000)) {
+            set.add(fingerprint);
+        }
+        Assert.assertTrue(set.isApproximate());
+        Assert.assertTrue(set.contains(ZERO));
+    }
+
+    @Test
+    public void exactSetIsSavedAndLoaded() throws IOException {
+        FingerprintSet set = new FingerprintSet(0);
+        List<Fingerprint> added = randomFingerprints(1, 3000);
+        for (Fingerprint fingerprint : added) {
+            set.add(fingerprint);
+        }
+        set.add(ZERO);
+
+        FingerprintSet loaded = saveAndLoad(set);
+        Assert.assertFalse(loaded.isApproximate());
+        Assert.assertEquals(added.size(), countContained(loaded, added));
+        Assert.assertTrue(loaded.contains(ZERO));
+        Assert.assertEquals(0, countContained(loaded, randomFingerprints(2, 10000)));
+    }
+
+    @Test
+    public void bloomFilterIsSavedAndLoaded() throws IOException {
+        FingerprintSet set = new FingerprintSet(SMALL_LIMIT);
+        List<Fingerprint> added = randomFingerprints(1, 2000);
+        for (Fingerprint fingerprint : added) {
+            set.add(fingerprint);
+        }
+        List<Fingerprint> others = randomFingerprints(2, 10000);
+
+        FingerprintSet loaded = saveAndLoad(set);
+        Assert.assertTrue(loaded.isApproximate());
+        Assert.assertEquals(added.size(), countContained(loaded, added));
+        // the very same filter, including its false positives
+        for (Fingerprint fingerprint : others) {
+            Assert.assertEquals(set.contains(fingerprint), loaded.contains(fingerprint));
+        }
+    }
+}
@@ -7,46 +7,50 @@ package net.sourceforge.pmd.scm;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
-import net.sourceforge.pmd.scm.invariants.AbstractExternalProcessInvariant;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 public class GreedyStrategyTest {
     private int getSpawnCount(SourceCodeMinimizer minimizer) {
-        return ((AbstractExternalProcessInvariant) minimizer.getInvariant()).getSpawnCount();
+        return TestHelper.getSpawnCount(minimizer);
     }
 
     private void testRetention(String textToRetain, int maxSpawns, String inputFileName, String referenceFileName) throws Exception {
+        testRetention("greedy", textToRetain, maxSpawns, inputFileName, referenceFileName);
+    }
+
+    private void testRetention(String strategy, String textToRetain, int maxSpawns, String inputFileName, String referenceFileName,
+                               String... extraArgs) throws Exception {
+        int spawnCount = TestHelper.minimizeRetaining(strategy, textToRetain, inputFileName, referenceFileName, extraArgs);
+        Assert.assertTrue(spawnCount <= maxSpawns);
+    }
+
+    @Test
+    public void textRetentionTest() throws Exception {
+        testRetention("testRemoval", 17, "test-input.txt", "greedy-test-retained-testRemoval.txt");
+    }
+
+    @Test
+    public void inProcessPmdViolationMinimization() throws Exception {
         SCMConfiguration configuration = new SCMConfiguration();
-        Path inputFile = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream(inputFileName), ".in");
+        Path inputFile = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("pmd-violation.java"), ".java");
         Path outputFile = Files.createTempFile("pmd-test-", ".out");
-        String cmdline;
-        if (SystemUtils.IS_OS_WINDOWS) {
-            cmdline = "type " + outputFile.toString();
-        } else {
-            cmdline = "cat " + outputFile.toString();
-        }
         String[] args = {
             "--language", "java", "--input-file", inputFile.toString(), "--output-file", outputFile.toString(),
-            "--invariant", "message", "--printed-message", textToRetain, "--command-line", cmdline,
+            "--invariant", "pmd", "--ruleset", "category/java/bestpractices.xml", "--rule", "UnusedPrivateField",
             "--strategy", "greedy",
         };
         configuration.parse(args);
         Assert.assertNull(configuration.getErrorString());
         SourceCodeMinimizer minimizer = new SourceCodeMinimizer(configuration);
         minimizer.runMinimization();
-        TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource(referenceFileName), outputFile);
-        Assert.assertTrue(getSpawnCount(minimizer) <= maxSpawns);
-    }
-
-    @Test
-    public void textRetentionTest() throws Exception {
-        testRetention("testRemoval", 17, "test-input.txt", "greedy-test-retained-testRemoval.txt");
+        TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("pmd-violation.out.java"), outputFile);
     }
 
     @Test
@@ -55,29 +59,68 @@ public class GreedyStrategyTest {
         testRetention("Available languages:", 38, "greedy-large-input.txt", "greedy-large-output.txt");
     }
 
-    @Test
-    public void multiFileJavaMinimization() throws Exception {
+    /**
+     * Minimizes the large input, logging the size of every checked variant that retains the message.
+     *
+     * @return The size of the committed source after each invariant check
+     */
+    private List<Integer> minimizeLoggingSizes(String... extraArgs) throws Exception {
         SCMConfiguration configuration = new SCMConfiguration();
-        Path input1 = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("greedy-multifile-1.java"), ".java");
-        Path input2 = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("greedy-multifile-2.java"), ".java");
-
-        Path fileList = Files.createTempFile("pmd-test-file-list", ".txt");
-        List<String> fileNames = new ArrayList<>();
-        fileNames.add(input1.toString());
-        fileNames.add(input2.toString());
-        Files.write(fileList, fileNames, StandardOpenOption.WRITE);
+        Path inputFile = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("greedy-large-input.txt"), ".in");
+        Path outputFile = Files.createTempFile("pmd-test-", ".out");
+        Path logFile = Files.createTempFile("pmd-test-", ".log");
+        Path script = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("size-logging-cat.sh"), ".sh");
         String[] args = {
-                "--language", "java", "--input-file", "@" + fileList.toString(), "--output-file", "@" + fileList.toString(),
-                "--invariant", "message", "--printed-message", "error: incompatible types: int cannot be converted to String",
-                "--command-line", "javac " + input1.toString() + " " + input2.toString(),
-                "--strategy", "greedy",
+            "--language", "java", "--input-file", inputFile.toString(), "--output-file", outputFile.toString(),
+            "--invariant", "message", "--printed-message", "Available languages:",
+            "--command-line", "sh " + script.toString() + " " + outputFile.toString() + " " + logFile.toString(),
+            "--strategy", "greedy",
         };
-        configuration.parse(args);
+        configuration.parse(ArrayUtils.addAll(args, extraArgs));
         Assert.assertNull(configuration.getErrorString());
         SourceCodeMinimizer minimizer = new SourceCodeMinimizer(configuration);
         minimizer.runMinimization();
-        TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-multifile-1.out.java"), input1);
-        TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-multifile-2.out.java"), input2);
+        TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-large-output.txt"), outputFile);
+
+        List<Integer> result = new ArrayList<>();
+        int committedSize = (int) Files.size(inputFile);
+        for (String line : Files.readAllLines(logFile, StandardCharsets.UTF_8)) {
+            if (!"-".equals(line)) {
+                committedSize = Math.min(committedSize, Integer.parseInt(line.trim()));
+            }
+            result.add(committedSize);
+        }
+        return result;
+    }
+
+    private static int getFirstRemovedSize(List<Integer> sizes) {
+        for (int size : sizes) {
+            if (size < sizes.get(0)) {
+                return sizes.get(0) - size;
+            }
+        }
+        return 0;
+    }
+
+    @Test
+    public void largestFirstPerformanceTest() throws Exception {
+        Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+        List<Integer> documentOrder = minimizeLoggingSizes();
+        List<Integer> largestFirst = minimizeLoggingSizes("--largest-first");
+        // the same result in the end (checked above), the first successful removal is the largest one,
+        // but it takes more checks in total
+        Assert.assertTrue(getFirstRemovedSize(largestFirst) > getFirstRemovedSize(documentOrder));
+        Assert.assertTrue(largestFirst.size() <= 77);
+    }
+
+    @Test
+    public void multiFileJavaMinimization() throws Exception {
+        SourceCodeMinimizer minimizer = TestHelper.minimizeMultiFileJava(false);
         Assert.assertTrue(getSpawnCount(minimizer) <= 29);
     }
+
+    @Test
+    public void inProcessJavaCompilerMinimization() throws Exception {
+        TestHelper.minimizeMultiFileJava(true);
+    }
 }
@@ -0,0 +1,135 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InvariantResultCacheTest {
+    private static final int RECORD_LENGTH = 17;
+
+    private static Fingerprint key(int run, int index) {
+        return new Fingerprint(run, index);
+    }
+
+    @Test
+    public void verdictsAreReusedByLaterRuns() throws Exception {
+        Path directory = Files.createTempDirectory("pmd-test-");
+        try (InvariantResultCache cache = new InvariantResultCache(directory, 1 << 20, "config")) {
+            cache.store(key(0, 1), true);
+            cache.store(key(0, 2), false);
+            Assert.assertEquals(Boolean.TRUE, cache.lookup(key(0, 1)));
+        }
+        try (InvariantResultCache cache = new InvariantResultCache(directory, 1 << 20, "config")) {
+            Assert.assertEquals(Boolean.TRUE, cache.lookup(key(0, 1)));
+            Assert.assertEquals(Boolean.FALSE, cache.lookup(key(0, 2)));
+            Assert.assertNull(cache.lookup(key(0, 3)));
+        }
+        try (InvariantResultCache cache = new InvariantResultCache(directory, 1 << 20, "other config")) {
+            Assert.assertNull(cache.lookup(key(0, 1)));
+        }
+    }
+
+    @Test
+    public void oldestVerdictsAreEvicted() throws Exception {
+        Path directory = Files.createTempDirectory("pmd-test-");
+        // segments of two records each, eight of them at most
+        long maxSize = 8 * 2 * RECORD_LENGTH;
+        int count = 100;
+        try (InvariantResultCache cache = new InvariantResultCache(directory, maxSize, "config")) {
+            for (int i = 0; i < count; ++i) {
+                cache.store(key(0, i), i % 2 == 0);
+            }
+            // forgotten by the run that stored them as well
+            Assert.assertNull(cache.lookup(key(0, 0)));
+            Assert.assertNull(cache.lookup(key(0, count / 2)));
+            Assert.assertEquals(Boolean.FALSE, cache.lookup(key(0, count - 1)));
+        }
+        long totalSize = 0;
+        for (Path path : Files.newDirectoryStream(directory, "*.bin")) {
+            totalSize += Files.size(path);
+        }
+        Assert.assertTrue(totalSize <= maxSize);
+        try (InvariantResultCache cache = new InvariantResultCache(directory, maxSize, "config")) {
+            Assert.assertNull(cache.lookup(key(0, 0)));
+            Assert.assertEquals(Boolean.TRUE, cache.lookup(key(0, count - 2)));
+        }
+    }
+
+    @Test
+    public void concurrentRunsWriteSegmentsAtTheSameTime() throws Exception {
+        final Path directory = Files.createTempDirectory("pmd-test-");
+        final int count = 300;
+        // several segments are started while both runs are writing, but nothing is evicted
+        final long maxSize = 8 * 100 * RECORD_LENGTH;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?>[] runs = new Future<?>[2];
+            for (int run = 0; run < runs.length; ++run) {
+                final int runNumber = run;
+                runs[run] = executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try (InvariantResultCache cache = new InvariantResultCache(directory, maxSize, "config")) {
+                            for (int i = 0; i < count; ++i) {
+                                cache.store(key(runNumber, i), (i + runNumber) % 3 == 0);
+                                // look for the verdicts of the other run meanwhile
+                                cache.lookup(key(1 - runNumber, i));
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        try (InvariantResultCache cache = new InvariantResultCache(directory, maxSize, "config")) {
+            for (int run = 0; run < 2; ++run) {
+                for (int i = 0; i < count; ++i) {
+                    Assert.assertEquals((i + run) % 3 == 0, cache.lookup(key(run, i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void verdictsAreReusedByLaterMinimization() throws Exception {
+        Path directory = Files.createTempDirectory("pmd-test-");
+        Path outputFile = directory.resolve("output.txt");
+        String cmdline = (SystemUtils.IS_OS_WINDOWS ? "type " : "cat ") + outputFile.toString();
+        int[] spawnCounts = new int[2];
+        for (int run = 0; run < 2; ++run) {
+            SCMConfiguration configuration = new SCMConfiguration();
+            Path inputFile = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("test-input.txt"), ".in");
+            String[] args = {
+                "--language", "java", "--input-file", inputFile.toString(), "--output-file", outputFile.toString(),
+                "--invariant", "message", "--printed-message", "testRemoval", "--command-line", cmdline,
+                "--strategy", "greedy", "--cache-dir", directory.resolve("cache").toString(),
+            };
+            configuration.parse(args);
+            Assert.assertNull(configuration.getErrorString());
+            SourceCodeMinimizer minimizer = new SourceCodeMinimizer(configuration);
+            minimizer.runMinimization();
+            TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-test-retained-testRemoval.txt"), outputFile);
+            spawnCounts[run] = TestHelper.getSpawnCount(minimizer);
+        }
+        Assert.assertTrue(spawnCounts[0] > 0);
+        Assert.assertEquals(0, spawnCounts[1]);
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class ParallelCheckingTest {
+    @Test
+    public void onlyWholeTokensAreReplaced() throws Exception {
+        Path output = Paths.get("/x/A.java");
+        SCMConfiguration.FileMapping mapping = new SCMConfiguration.FileMapping(output, output);
+        try (ScratchWorker worker = new ScratchWorker(Arrays.asList(mapping), null, StandardCharsets.UTF_8, null, null, null)) {
+            String copy = worker.getScratchFiles().get(0).toString();
+            Assert.assertEquals("javac " + copy + " /x/A.java.bak '" + copy + "' lib/A.java",
+                    worker.adaptCommandLine("javac /x/A.java /x/A.java.bak '/x/A.java' lib/A.java"));
+        }
+    }
+
+    @Test
+    public void relativePathsWorkWithJobs() throws Exception {
+        Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+        // the script is referred to relative to the current directory, as users usually do
+        Path scriptDirectory = Files.createTempDirectory(Paths.get("target"), "pmd-test-");
+        try {
+            Path script = scriptDirectory.resolve("check.sh");
+            Files.copy(getClass().getResourceAsStream("print-file.sh"), script);
+            Path relativeScript = Paths.get("").toAbsolutePath().relativize(script.toAbsolutePath());
+            Assert.assertFalse(relativeScript.isAbsolute());
+
+            SCMConfiguration configuration = new SCMConfiguration();
+            Path inputFile = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("test-input.txt"), ".in");
+            Path outputFile = Files.createTempFile("pmd-test-", ".out");
+            String[] args = {
+                "--language", "java", "--input-file", inputFile.toString(), "--output-file", outputFile.toString(),
+                "--invariant", "message", "--printed-message", "testRemoval",
+                "--command-line", "sh " + relativeScript + " " + outputFile,
+                "--strategy", "greedy", "--jobs", "2",
+            };
+            configuration.parse(args);
+            Assert.assertNull(configuration.getErrorString());
+            SourceCodeMinimizer minimizer = new SourceCodeMinimizer(configuration);
+            minimizer.runMinimization();
+            TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-test-retained-testRemoval.txt"), outputFile);
+        } finally {
+            FileUtils.deleteDirectory(scriptDirectory.toFile());
+        }
+    }
+
+    @Test
+    public void multiFileJavaMinimization() throws Exception {
+        // the first successful variant is committed, so the result should not depend on the job count
+        TestHelper.minimizeMultiFileJava(false, "--jobs", "3");
+    }
+}
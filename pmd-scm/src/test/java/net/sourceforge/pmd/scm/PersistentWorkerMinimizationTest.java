@@ -0,0 +1,35 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class PersistentWorkerMinimizationTest {
+    @Test
+    public void textRetentionTest() throws Exception {
+        Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+        SCMConfiguration configuration = new SCMConfiguration();
+        Path inputFile = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("test-input.txt"), ".in");
+        Path outputFile = Files.createTempFile("pmd-test-", ".out");
+        Path workerScript = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("persistent-worker.sh"), ".sh");
+        String[] args = {
+            "--language", "java", "--input-file", inputFile.toString(), "--output-file", outputFile.toString(),
+            "--invariant", "worker", "--expected-output", "testRemoval", "--command-line", "sh " + workerScript.toString(),
+            "--strategy", "greedy",
+        };
+        configuration.parse(args);
+        Assert.assertNull(configuration.getErrorString());
+        SourceCodeMinimizer minimizer = new SourceCodeMinimizer(configuration);
+        minimizer.runMinimization();
+        TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-test-retained-testRemoval.txt"), outputFile);
+    }
+}
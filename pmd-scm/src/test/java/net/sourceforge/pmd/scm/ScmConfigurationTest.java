@@ -4,16 +4,32 @@
 
 package net.sourceforge.pmd.scm;
 
+import java.util.Arrays;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import net.sourceforge.pmd.scm.invariants.PrintedMessageInvariant;
+import net.sourceforge.pmd.scm.strategies.GreedyStrategy;
 import net.sourceforge.pmd.scm.strategies.XPathStrategy;
 
 public class ScmConfigurationTest {
     private static final String DEFAULT_GENERIC_USAGE_TEXT =
           "Usage: scm [options]\n"
         + "  Options:\n"
+        + "    --cache-dir\n"
+        + "       Directory to keep the invariant verdicts in across runs (can be shared by\n"
+        + "       several simultaneous runs)\n"
+        + "    --cache-size\n"
+        + "       Maximum size of the cache directory in megabytes, the oldest verdicts are\n"
+        + "       evicted first\n"
+        + "       Default: 64\n"
+        + "    --checkpoint-dir\n"
+        + "       Directory to save the state of the run to periodically, so it can be\n"
+        + "       continued with --resume after being killed\n"
+        + "    --checkpoint-interval\n"
+        + "       Minimum time between checkpoints in seconds\n"
+        + "       Default: 60\n"
         + "    --encoding, -e\n"
         + "       Encoding of the source file to be minimized\n"
         + "       Default: UTF-8\n"
@@ -26,6 +42,14 @@ public class ScmConfigurationTest {
         + "    --invariant, -I\n"
         + "       Invariant to preserve during minimization\n"
         + "       Default: dummy\n"
+        + "    --jobs, -j\n"
+        + "       Number of variants to check in parallel, each one with private copies of\n"
+        + "       the output files substituted for the command line arguments naming them\n"
+        + "       Default: 1\n"
+        + "    --known-variants-memory\n"
+        + "       Memory limit in megabytes for remembering the checked variants, then a\n"
+        + "       Bloom filter is used that may skip a few unchecked ones (0 for no limit)\n"
+        + "       Default: 0\n"
         + "  * --language, -l\n"
         + "       Source code language\n"
         + "    --language-version, -v\n"
@@ -33,13 +57,32 @@ public class ScmConfigurationTest {
         + "  * --output-file, -o\n"
         + "       Output file (used as a scratch file, too), or list of such files\n"
         + "       Default: []\n"
+        + "    --resume\n"
+        + "       Continue from the checkpoint in the checkpoint directory, if any, instead\n"
+        + "       of starting from the input files\n"
+        + "       Default: false\n"
         + "  * --strategy, -S\n"
-        + "       Minimization strategy\n"
+        + "       Minimization strategy, or comma-separated list of strategies to run one\n"
+        + "       after another, each one until it cannot make any step\n"
+        + "       Default: []\n"
         + "Available languages: " + MinimizerLanguageFactory.INSTANCE.getSupportedLanguagesWithVersions() + "\n";
 
     private static final String DEFAULT_DUMMY_USAGE_TEXT =
           "Usage: scm [options]\n"
         + "  Options:\n"
+        + "    --cache-dir\n"
+        + "       Directory to keep the invariant verdicts in across runs (can be shared by\n"
+        + "       several simultaneous runs)\n"
+        + "    --cache-size\n"
+        + "       Maximum size of the cache directory in megabytes, the oldest verdicts are\n"
+        + "       evicted first\n"
+        + "       Default: 64\n"
+        + "    --checkpoint-dir\n"
+        + "       Directory to save the state of the run to periodically, so it can be\n"
+        + "       continued with --resume after being killed\n"
+        + "    --checkpoint-interval\n"
+        + "       Minimum time between checkpoints in seconds\n"
+        + "       Default: 60\n"
         + "    --encoding, -e\n"
         + "       Encoding of the source file to be minimized\n"
         + "       Default: UTF-8\n"
@@ -52,6 +95,14 @@ public class ScmConfigurationTest {
         + "    --invariant, -I\n"
         + "       Invariant to preserve during minimization\n"
         + "       Default: dummy\n"
+        + "    --jobs, -j\n"
+        + "       Number of variants to check in parallel, each one with private copies of\n"
+        + "       the output files substituted for the command line arguments naming them\n"
+        + "       Default: 1\n"
+        + "    --known-variants-memory\n"
+        + "       Memory limit in megabytes for remembering the checked variants, then a\n"
+        + "       Bloom filter is used that may skip a few unchecked ones (0 for no limit)\n"
+        + "       Default: 0\n"
         + "  * --language, -l\n"
         + "       Source code language\n"
         + "    --language-version, -v\n"
@@ -59,8 +110,14 @@ public class ScmConfigurationTest {
         + "  * --output-file, -o\n"
         + "       Output file (used as a scratch file, too), or list of such files\n"
         + "       Default: []\n"
+        + "    --resume\n"
+        + "       Continue from the checkpoint in the checkpoint directory, if any, instead\n"
+        + "       of starting from the input files\n"
+        + "       Default: false\n"
         + "  * --strategy, -S\n"
-        + "       Minimization strategy\n"
+        + "       Minimization strategy, or comma-separated list of strategies to run one\n"
+        + "       after another, each one until it cannot make any step\n"
+        + "       Default: []\n"
         + "Available languages: " + MinimizerLanguageFactory.INSTANCE.getSupportedLanguagesWithVersions() + "\n"
         + "=== Parameters specific to language: dummy\n"
         + "--- Parameters specific to strategy: xpath\n"
@@ -68,13 +125,34 @@ public class ScmConfigurationTest {
         + "  Options:\n"
         + "  * --xpath-expression\n"
         + "       XPath 2.0 expression to drop matched subtrees\n"
+        + "    --xpath-keep-invariant\n"
+        + "       Drop only the matched subtrees whose removal keeps the invariant, instead\n"
+        + "       of all of them\n"
+        + "       Default: false\n"
         + "--- Parameters specific to strategy: greedy\n"
         + "Usage:  [options]\n"
+        + "  Options:\n"
+        + "    --largest-first\n"
+        + "       Try removing the subtrees dropping most of the source first instead of\n"
+        + "       going in document order, usually at the cost of more checks in total\n"
+        + "       Default: false\n"
+        + "--- Parameters specific to strategy: hdd\n"
+        + "Usage:  [options]\n"
+        + "--- Parameters specific to strategy: ddmin\n"
+        + "Usage:  [options]\n"
+        + "--- Parameters specific to strategy: probdd\n"
+        + "Usage:  [options]\n"
+        + "--- Parameters specific to strategy: syntax\n"
+        + "Usage:  [options]\n"
         + "--- Parameters specific to invariant: dummy\n"
         + "Usage:  [options]\n"
         + "--- Parameters specific to invariant: exitcode\n"
         + "Usage:  [options]\n"
         + "  Options:\n"
+        + "    --adaptive-timeout\n"
+        + "       Limit compiler runs to this many times the duration of the first one (on\n"
+        + "       the initial input), 0 to disable\n"
+        + "       Default: 0.0\n"
         + "  * --command-line\n"
         + "       Command line for running a compiler on a source to be minimized\n"
         + "    --exact-return\n"
@@ -87,16 +165,108 @@ public class ScmConfigurationTest {
         + "    --min-return\n"
         + "       Minimum exit code value (inclusive)\n"
         + "       Default: 1\n"
+        + "    --output-contains\n"
+        + "       Text the compiler output should contain (can be repeated)\n"
+        + "       Default: []\n"
+        + "    --output-matches\n"
+        + "       Regular expression some line of the compiler output should match (can be\n"
+        + "       repeated)\n"
+        + "       Default: []\n"
+        + "    --output-not-contains\n"
+        + "       Text the compiler output should not contain (can be repeated)\n"
+        + "       Default: []\n"
+        + "    --output-not-matches\n"
+        + "       Regular expression no line of the compiler output should match (can be\n"
+        + "       repeated)\n"
+        + "       Default: []\n"
+        + "    --timeout\n"
+        + "       Time limit for a single compiler run in milliseconds, 0 for no limit\n"
+        + "       Default: 0\n"
+        + "    --timeout-satisfies\n"
+        + "       Consider compiler runs exceeding the time limit as satisfying the\n"
+        + "       invariant (for minimizing hangs)\n"
+        + "       Default: false\n"
         + "--- Parameters specific to invariant: message\n"
         + "Usage:  [options]\n"
         + "  Options:\n"
+        + "    --adaptive-timeout\n"
+        + "       Limit compiler runs to this many times the duration of the first one (on\n"
+        + "       the initial input), 0 to disable\n"
+        + "       Default: 0.0\n"
         + "  * --command-line\n"
         + "       Command line for running a compiler on a source to be minimized\n"
+        + "    --output-contains\n"
+        + "       Text the compiler output should contain (can be repeated)\n"
+        + "       Default: []\n"
+        + "    --output-matches\n"
+        + "       Regular expression some line of the compiler output should match (can be\n"
+        + "       repeated)\n"
+        + "       Default: []\n"
+        + "    --output-not-contains\n"
+        + "       Text the compiler output should not contain (can be repeated)\n"
+        + "       Default: []\n"
+        + "    --output-not-matches\n"
+        + "       Regular expression no line of the compiler output should match (can be\n"
+        + "       repeated)\n"
+        + "       Default: []\n"
         + "  * --printed-message\n"
         + "       Message that should be printed by the compiler\n"
         + "    --printed-message-encoding\n"
         + "       Encoding of compiler output\n"
-        + "       Default: UTF-8\n";
+        + "       Default: UTF-8\n"
+        + "    --timeout\n"
+        + "       Time limit for a single compiler run in milliseconds, 0 for no limit\n"
+        + "       Default: 0\n"
+        + "    --timeout-satisfies\n"
+        + "       Consider compiler runs exceeding the time limit as satisfying the\n"
+        + "       invariant (for minimizing hangs)\n"
+        + "       Default: false\n"
+        + "--- Parameters specific to invariant: worker\n"
+        + "Usage:  [options]\n"
+        + "  Options:\n"
+        + "    --adaptive-timeout\n"
+        + "       Limit compiler runs to this many times the duration of the first one (on\n"
+        + "       the initial input), 0 to disable\n"
+        + "       Default: 0.0\n"
+        + "  * --command-line\n"
+        + "       Command line for running a compiler on a source to be minimized\n"
+        + "    --expected-exit-code\n"
+        + "       Exit code the worker should report\n"
+        + "    --expected-output\n"
+        + "       Text the output reported by the worker should contain\n"
+        + "    --output-contains\n"
+        + "       Text the compiler output should contain (can be repeated)\n"
+        + "       Default: []\n"
+        + "    --output-matches\n"
+        + "       Regular expression some line of the compiler output should match (can be\n"
+        + "       repeated)\n"
+        + "       Default: []\n"
+        + "    --output-not-contains\n"
+        + "       Text the compiler output should not contain (can be repeated)\n"
+        + "       Default: []\n"
+        + "    --output-not-matches\n"
+        + "       Regular expression no line of the compiler output should match (can be\n"
+        + "       repeated)\n"
+        + "       Default: []\n"
+        + "    --timeout\n"
+        + "       Time limit for a single compiler run in milliseconds, 0 for no limit\n"
+        + "       Default: 0\n"
+        + "    --timeout-satisfies\n"
+        + "       Consider compiler runs exceeding the time limit as satisfying the\n"
+        + "       invariant (for minimizing hangs)\n"
+        + "       Default: false\n"
+        + "--- Parameters specific to invariant: pmd\n"
+        + "Usage:  [options]\n"
+        + "  Options:\n"
+        + "    --exception-pattern\n"
+        + "       Regular expression some line of the stack trace of an analysis error\n"
+        + "       should match (instead of a violation)\n"
+        + "    --rule\n"
+        + "       Name of the rule that should report a violation\n"
+        + "  * --ruleset\n"
+        + "       Comma-separated list of rulesets to run\n"
+        + "    --violation-message\n"
+        + "       Text the violation message should contain\n";
 
     @Test
     public void testGenericUsageText() {
@@ -129,6 +299,66 @@ public class ScmConfigurationTest {
         Assert.assertEquals("Unknown strategy: nonexistent", configuration.getErrorString());
     }
 
+    @Test
+    public void testStrategyPipeline() {
+        SCMConfiguration configuration = new SCMConfiguration();
+        String[] args = {
+                "--language", "java", "--strategy", "xpath,hdd", "-S", "greedy", "--invariant", "dummy",
+                "--xpath-expression", "//Annotation", "--xpath-keep-invariant", "--largest-first",
+                "--input-file", "a", "--output-file", "b",
+        };
+        Assert.assertTrue(configuration.parse(args));
+        Assert.assertEquals(Arrays.asList("xpath", "hdd", "greedy"), configuration.getStrategyNames());
+        Assert.assertEquals("//Annotation", ((XPathStrategy.Configuration) configuration.getStrategyConfigs().get(0)).getExpression());
+        Assert.assertTrue(((GreedyStrategy.Configuration) configuration.getStrategyConfigs().get(2)).isLargestFirst());
+    }
+
+    @Test
+    public void testExitingStrategyNotLast() {
+        SCMConfiguration configuration = new SCMConfiguration();
+        String[] args = {
+                "--language", "java", "--strategy", "xpath,hdd,greedy", "--invariant", "dummy",
+                "--xpath-expression", "//Annotation",
+                "--input-file", "a", "--output-file", "b",
+        };
+        Assert.assertFalse(configuration.parse(args));
+        Assert.assertEquals("Strategy xpath has to be the last one: "
+                + "without --xpath-keep-invariant, it exits after dropping all the matches", configuration.getErrorString());
+    }
+
+    @Test
+    public void testExitingStrategyLast() {
+        SCMConfiguration configuration = new SCMConfiguration();
+        String[] args = {
+                "--language", "java", "--strategy", "hdd,xpath", "--invariant", "dummy",
+                "--xpath-expression", "//Annotation",
+                "--input-file", "a", "--output-file", "b",
+        };
+        Assert.assertTrue(configuration.parse(args));
+    }
+
+    @Test
+    public void testRepeatedStrategy() {
+        SCMConfiguration configuration = new SCMConfiguration();
+        String[] args = {
+                "--language", "java", "--strategy", "greedy,hdd,greedy", "--invariant", "dummy",
+                "--input-file", "a", "--output-file", "b",
+        };
+        Assert.assertFalse(configuration.parse(args));
+        Assert.assertEquals("Strategy is listed more than once: greedy", configuration.getErrorString());
+    }
+
+    @Test
+    public void testResumeWithoutCheckpointDirectory() {
+        SCMConfiguration configuration = new SCMConfiguration();
+        String[] args = {
+                "--language", "java", "--strategy", "greedy", "--invariant", "dummy",
+                "--input-file", "a", "--output-file", "b", "--resume",
+        };
+        Assert.assertFalse(configuration.parse(args));
+        Assert.assertEquals("--resume requires --checkpoint-dir", configuration.getErrorString());
+    }
+
     @Test
     public void testUnknownInvariant() {
         SCMConfiguration configuration = new SCMConfiguration();
@@ -165,10 +395,10 @@ public class ScmConfigurationTest {
         Assert.assertNull(configuration.getErrorString());
         Assert.assertTrue(success);
 
-        Assert.assertTrue(configuration.getStrategyConfig() instanceof XPathStrategy.Configuration);
+        Assert.assertTrue(configuration.getStrategyConfigs().get(0) instanceof XPathStrategy.Configuration);
         Assert.assertTrue(configuration.getInvariantCheckerConfig() instanceof PrintedMessageInvariant.Configuration);
 
-        XPathStrategy.Configuration xpathConfig = (XPathStrategy.Configuration) configuration.getStrategyConfig();
+        XPathStrategy.Configuration xpathConfig = (XPathStrategy.Configuration) configuration.getStrategyConfigs().get(0);
         PrintedMessageInvariant.Configuration invariantConfig = (PrintedMessageInvariant.Configuration) configuration.getInvariantCheckerConfig();
 
         Assert.assertEquals("//Comment", xpathConfig.getExpression());
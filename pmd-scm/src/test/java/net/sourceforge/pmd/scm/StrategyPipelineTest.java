@@ -0,0 +1,74 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StrategyPipelineTest {
+    private static final String TEXT_TO_RETAIN = "Available languages:";
+    private static final String[] XPATH_ARGS = { "--xpath-expression", "//ClassOrInterfaceBodyDeclaration" };
+
+    private Path outputFile;
+
+    /**
+     * Minimizes the large input keeping it print the message.
+     *
+     * @return The number of the invariant checks made
+     */
+    private int minimize(String strategies, String... extraArgs) throws Exception {
+        SCMConfiguration configuration = new SCMConfiguration();
+        Path inputFile = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream("greedy-large-input.txt"), ".in");
+        outputFile = Files.createTempFile("pmd-test-", ".out");
+        String cmdline = (SystemUtils.IS_OS_WINDOWS ? "type " : "cat ") + outputFile.toString();
+        String[] args = {
+            "--language", "java", "--input-file", inputFile.toString(), "--output-file", outputFile.toString(),
+            "--invariant", "message", "--printed-message", TEXT_TO_RETAIN, "--command-line", cmdline,
+            "--strategy", strategies,
+        };
+        configuration.parse(ArrayUtils.addAll(args, extraArgs));
+        Assert.assertNull(configuration.getErrorString());
+        SourceCodeMinimizer minimizer = new SourceCodeMinimizer(configuration);
+        minimizer.runMinimization();
+        return TestHelper.getSpawnCount(minimizer);
+    }
+
+    private String getOutput() throws Exception {
+        return new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void laterStageReusesCheckedVariants() throws Exception {
+        int greedySpawnCount = minimize("greedy");
+        String greedyOutput = getOutput();
+        // hdd alone needs checks of its own, but everything it could remove after greedy was already tried
+        Assert.assertEquals(greedySpawnCount, minimize("greedy,hdd"));
+        Assert.assertEquals(greedyOutput, getOutput());
+        TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-large-output.txt"), outputFile);
+    }
+
+    @Test
+    public void repeatedStrategyIsRejected() {
+        SCMConfiguration configuration = new SCMConfiguration();
+        configuration.parse(new String[] {
+            "--language", "java", "--input-file", "input.java", "--output-file", "output.java",
+            "--strategy", "greedy,hdd,greedy",
+        });
+        Assert.assertEquals("Strategy is listed more than once: greedy", configuration.getErrorString());
+    }
+
+    @Test
+    public void performanceTest() throws Exception {
+        int spawnCount = minimize("xpath,hdd,greedy", ArrayUtils.add(XPATH_ARGS, "--xpath-keep-invariant"));
+        TestHelper.assertResultedSourceEquals(StandardCharsets.UTF_8, getClass().getResource("greedy-large-output.txt"), outputFile);
+        Assert.assertTrue(spawnCount <= 37);
+    }
+}
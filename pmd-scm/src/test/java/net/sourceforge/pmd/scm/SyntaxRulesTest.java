@@ -0,0 +1,85 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.Parser;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.modelica.ModelicaLanguageModule;
+
+/**
+ * Checks that the changes the grammar rules allow keep the sources used by the other tests parseable.
+ */
+public class SyntaxRulesTest {
+    private int checkedCount;
+
+    private void checkOptionalChildren(SyntaxRules rules, ASTCutter cutter, Parser parser, Node node) {
+        if (rules.isOptional(node)) {
+            checkedCount += 1;
+            String text = cutter.trimSource(Collections.singletonList(node));
+            Assert.assertTrue("cannot cut off " + Helper.explainNode(node), cutter.isParseable(parser, text));
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+            checkOptionalChildren(rules, cutter, parser, node.jjtGetChild(i));
+        }
+    }
+
+    private void checkReplacements(SyntaxRules rules, ASTCutter cutter, Parser parser, Node node, Node descendant) {
+        for (int i = 0; i < descendant.jjtGetNumChildren(); ++i) {
+            Node child = descendant.jjtGetChild(i);
+            if (rules.isReplaceableWith(node, child)) {
+                TreeSnapshot snapshot = cutter.getSnapshot();
+                String text = cutter.replaceNode(snapshot.indexOf(node), snapshot.indexOf(child));
+                checkedCount += 1;
+                Assert.assertTrue("cannot replace " + Helper.explainNode(node) + " with " + Helper.explainNode(child),
+                        cutter.isParseable(parser, text));
+            } else {
+                checkReplacements(rules, cutter, parser, node, child);
+            }
+        }
+        if (node == descendant) {
+            for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+                checkReplacements(rules, cutter, parser, node.jjtGetChild(i), node.jjtGetChild(i));
+            }
+        }
+    }
+
+    private void checkRules(Language language, String resourceName) throws IOException {
+        SyntaxRules rules = SyntaxRules.forLanguage(language.getTerseName());
+        Parser parser = new MinimizerLanguageModuleAdapter(language).getDefaultParser();
+        Path file = TestHelper.copyToTemporaryFile(getClass().getResourceAsStream(resourceName), ".tmp");
+        try (ASTCutter cutter = new ASTCutter(parser, StandardCharsets.UTF_8, file)) {
+            Node root = cutter.commitChange();
+            checkedCount = 0;
+            checkOptionalChildren(rules, cutter, parser, root);
+            Assert.assertTrue(checkedCount > 0);
+            checkedCount = 0;
+            checkReplacements(rules, cutter, parser, root, root);
+            Assert.assertTrue(checkedCount > 0);
+        }
+    }
+
+    @Test
+    public void javaRulesKeepSourcesParseable() throws IOException {
+        checkRules(new JavaLanguageModule(), "greedy-large-input.txt");
+        checkRules(new JavaLanguageModule(), "test-input.txt");
+        checkRules(new JavaLanguageModule(), "pmd-violation.java");
+        checkRules(new JavaLanguageModule(), "greedy-multifile-1.java");
+    }
+
+    @Test
+    public void modelicaRulesKeepSourcesParseable() throws IOException {
+        checkRules(new ModelicaLanguageModule(), "TestPackage.mo");
+    }
+}
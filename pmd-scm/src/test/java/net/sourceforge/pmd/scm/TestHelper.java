@@ -8,13 +8,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.SystemUtils;
 import org.junit.Assert;
 
+import net.sourceforge.pmd.scm.invariants.AbstractExternalProcessInvariant;
+
 public final class TestHelper {
     private TestHelper() { }
 
@@ -29,4 +38,79 @@ public final class TestHelper {
         Files.copy(stream, file, StandardCopyOption.REPLACE_EXISTING);
         return file;
     }
+
+    public static int getSpawnCount(SourceCodeMinimizer minimizer) {
+        return ((AbstractExternalProcessInvariant) minimizer.getInvariant()).getSpawnCount();
+    }
+
+    /**
+     * Minimizes the Java source from the resource file keeping it print the specified text, and compares the result
+     * to the reference resource file.
+     *
+     * @return The number of the invariant checks made
+     */
+    public static int minimizeRetaining(String strategy, String textToRetain, String inputFileName, String referenceFileName,
+                                        String... extraArgs) throws Exception {
+        SCMConfiguration configuration = new SCMConfiguration();
+        Path inputFile = copyToTemporaryFile(TestHelper.class.getResourceAsStream(inputFileName), ".in");
+        Path outputFile = Files.createTempFile("pmd-test-", ".out");
+        String cmdline;
+        if (SystemUtils.IS_OS_WINDOWS) {
+            cmdline = "type " + outputFile.toString();
+        } else {
+            cmdline = "cat " + outputFile.toString();
+        }
+        String[] args = {
+            "--language", "java", "--input-file", inputFile.toString(), "--output-file", outputFile.toString(),
+            "--invariant", "message", "--printed-message", textToRetain, "--command-line", cmdline,
+            "--strategy", strategy,
+        };
+        configuration.parse(ArrayUtils.addAll(args, extraArgs));
+        Assert.assertNull(configuration.getErrorString());
+        SourceCodeMinimizer minimizer = new SourceCodeMinimizer(configuration);
+        minimizer.runMinimization();
+        assertResultedSourceEquals(StandardCharsets.UTF_8, TestHelper.class.getResource(referenceFileName), outputFile);
+        return getSpawnCount(minimizer);
+    }
+
+    /**
+     * Minimizes the pair of Java files keeping the type error reported by the compiler, and compares the results
+     * to the reference resource files.
+     *
+     * @param inProcess Whether to run the compiler in-process instead of the external javac
+     */
+    public static SourceCodeMinimizer minimizeMultiFileJava(boolean inProcess, String... extraArgs) throws Exception {
+        SCMConfiguration configuration = new SCMConfiguration();
+        Path input1 = copyToTemporaryFile(TestHelper.class.getResourceAsStream("greedy-multifile-1.java"), ".java");
+        Path input2 = copyToTemporaryFile(TestHelper.class.getResourceAsStream("greedy-multifile-2.java"), ".java");
+
+        Path fileList = Files.createTempFile("pmd-test-file-list", ".txt");
+        List<String> fileNames = new ArrayList<>();
+        fileNames.add(input1.toString());
+        fileNames.add(input2.toString());
+        Files.write(fileList, fileNames, StandardOpenOption.WRITE);
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--language", "java", "--input-file", "@" + fileList.toString(), "--output-file", "@" + fileList.toString(),
+                "--strategy", "greedy"
+        ));
+        if (inProcess) {
+            args.addAll(Arrays.asList(
+                    "--invariant", "javac", "--diagnostic-code", "compiler.err.prob.found.req",
+                    "--diagnostic-message", "incompatible types: int cannot be converted to java.lang.String"
+            ));
+        } else {
+            args.addAll(Arrays.asList(
+                    "--invariant", "message", "--printed-message", "error: incompatible types: int cannot be converted to String",
+                    "--command-line", "javac " + input1.toString() + " " + input2.toString()
+            ));
+        }
+        args.addAll(Arrays.asList(extraArgs));
+        configuration.parse(args.toArray(new String[0]));
+        Assert.assertNull(configuration.getErrorString());
+        SourceCodeMinimizer minimizer = new SourceCodeMinimizer(configuration);
+        minimizer.runMinimization();
+        assertResultedSourceEquals(StandardCharsets.UTF_8, TestHelper.class.getResource("greedy-multifile-1.out.java"), input1);
+        assertResultedSourceEquals(StandardCharsets.UTF_8, TestHelper.class.getResource("greedy-multifile-2.out.java"), input2);
+        return minimizer;
+    }
 }
@@ -0,0 +1,21 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+
+/**
+ * Fails on the methods whose name starts with "crash", like a buggy rule would.
+ */
+public class CrashingTestRule extends AbstractJavaRule {
+    @Override
+    public Object visit(ASTMethodDeclaration node, Object data) {
+        if (node.getName().startsWith("crash")) {
+            throw new IllegalStateException("Rule crashed on " + node.getName());
+        }
+        return super.visit(node, data);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.beust.jcommander.JCommander;
+
+public class ExternalProcessInvariantTest {
+    private StubInvariantOperations ops;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+        ops = new StubInvariantOperations();
+    }
+
+    private Invariant createExitCodeInvariant(String... args) {
+        ExitCodeInvariant.Configuration configuration = new ExitCodeInvariant.Configuration();
+        new JCommander(configuration).parse(args);
+        Invariant invariant = configuration.createChecker();
+        invariant.initialize(ops);
+        return invariant;
+    }
+
+    @Test
+    public void abortedCheckDoesNotWaitForCompiler() throws Exception {
+        // the shell keeps the output pipe open while sleeping, so the reading thread cannot be interrupted
+        final Invariant invariant = createExitCodeInvariant("--exact-return", "0", "--command-line", "sleep 60");
+        Thread checker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    invariant.checkIsSatisfied();
+                } catch (Exception ex) {
+                    // interrupted, as expected
+                }
+            }
+        });
+        checker.start();
+        Thread.sleep(500);
+        checker.interrupt();
+        invariant.abortCheck();
+        checker.join(10000);
+        Assert.assertFalse(checker.isAlive());
+    }
+
+    @Test
+    public void timeLimitIsCalibratedOnOriginalInput() throws Exception {
+        // variants marked as failing fail instantly, the other ones take as long as the original input
+        String[] args = {
+            "--exact-return", "0", "--adaptive-timeout", "4",
+            "--command-line", "grep -q failing " + ops.getScratchFile() + " && exit 1; sleep 0.5; exit 0",
+        };
+        Invariant main = createExitCodeInvariant(args);
+        Invariant worker = createExitCodeInvariant(args);
+        ops.setContents("original");
+        main.calibrate();
+        worker.copyCalibration(main);
+
+        // the first variant checked by the worker must not make the limit too tight for the next ones
+        ops.setContents("failing variant");
+        Assert.assertFalse(worker.checkIsSatisfied());
+        ops.setContents("retaining variant");
+        Assert.assertTrue(worker.checkIsSatisfied());
+        Assert.assertTrue(main.checkIsSatisfied());
+    }
+
+    @Test
+    public void outputOptionsAreApplied() throws Exception {
+        Invariant invariant = createExitCodeInvariant("--exact-return", "0",
+                "--output-contains", "error, with a comma", "--output-not-matches", "^fatal",
+                "--command-line", "cat " + ops.getScratchFile());
+        ops.setContents("A.java:1: error, with a comma\n");
+        Assert.assertTrue(invariant.checkIsSatisfied());
+        ops.setContents("A.java:1: error, with a comma\nfatal: giving up\n");
+        Assert.assertFalse(invariant.checkIsSatisfied());
+        ops.setContents("A.java:1: error\n");
+        Assert.assertFalse(invariant.checkIsSatisfied());
+    }
+
+    @Test
+    public void timedOutVerdictIsNotReproducible() throws Exception {
+        Invariant invariant = createExitCodeInvariant("--exact-return", "0", "--timeout", "200", "--timeout-satisfies",
+                "--command-line", "grep -q slow " + ops.getScratchFile() + " && sleep 60; exit 0");
+        ops.setContents("fast");
+        Assert.assertTrue(invariant.checkIsSatisfied());
+        Assert.assertTrue(invariant.isLastVerdictReproducible());
+        ops.setContents("slow");
+        Assert.assertTrue(invariant.checkIsSatisfied());
+        Assert.assertFalse(invariant.isLastVerdictReproducible());
+    }
+}
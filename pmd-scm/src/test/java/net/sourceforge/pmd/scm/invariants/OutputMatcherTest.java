@@ -0,0 +1,125 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OutputMatcherTest {
+    private static final List<String> NONE = Collections.emptyList();
+
+    private static OutputMatcher literals(List<String> required, List<String> forbidden) {
+        return new OutputMatcher(required, forbidden, NONE, NONE, StandardCharsets.UTF_8);
+    }
+
+    private static OutputMatcher regexes(List<String> required, List<String> forbidden) {
+        return new OutputMatcher(NONE, NONE, required, forbidden, StandardCharsets.UTF_8);
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the prefix, then the filler byte forever.
+     */
+    private static InputStream endless(final String prefix) {
+        final byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        return new InputStream() {
+            private int position;
+
+            @Override
+            public int read() {
+                return position < bytes.length ? bytes[position++] : 'x';
+            }
+        };
+    }
+
+    @Test
+    public void overlappingLiterals() throws IOException {
+        OutputMatcher matcher = literals(Arrays.asList("abcd", "bcde", "cd", "d"), NONE);
+        Assert.assertTrue(matcher.matches("xxabcdexx"));
+        Assert.assertTrue(matcher.matches(stream("xxabcdexx"), true));
+        // only prefixes of "bcde" occur, the automaton must not report them
+        Assert.assertFalse(matcher.matches("abcdx bcd"));
+        Assert.assertTrue(literals(Arrays.asList("aab"), NONE).matches("aaab"));
+    }
+
+    @Test
+    public void literalSplitAcrossReadBuffer() throws IOException {
+        // the matcher reads the stream by 8192 bytes
+        String text = StringUtils.repeat('x', 8190) + "needle" + StringUtils.repeat('x', 100);
+        Assert.assertTrue(literals(Arrays.asList("needle"), NONE).matches(stream(text), true));
+        Assert.assertFalse(literals(NONE, Arrays.asList("needle")).matches(stream(text), true));
+    }
+
+    @Test
+    public void lineSplitAcrossReadBuffer() throws IOException {
+        String text = StringUtils.repeat('x', 8180) + "\nerror: A.java:1: broken\nok\n";
+        OutputMatcher matcher = regexes(Arrays.asList("^error: \\w+\\.java:\\d+: broken$"), NONE);
+        Assert.assertTrue(matcher.matches(stream(text), true));
+        Assert.assertTrue(matcher.matches(stream(text), false));
+    }
+
+    @Test
+    public void forbiddenOnly() throws IOException {
+        OutputMatcher matcher = literals(NONE, Arrays.asList("panic"));
+        Assert.assertTrue(matcher.matches(stream("all good"), false));
+        Assert.assertFalse(matcher.matches(stream("kernel panic"), false));
+        // the verdict is known as soon as a forbidden pattern is found
+        Assert.assertFalse(matcher.matches(endless("panic"), true));
+    }
+
+    @Test
+    public void requiredFoundStopsReading() throws IOException {
+        OutputMatcher matcher = literals(Arrays.asList("found"), NONE);
+        Assert.assertTrue(matcher.matches(endless("found"), false));
+    }
+
+    @Test
+    public void regexesMatchSingleLines() {
+        OutputMatcher matcher = regexes(Arrays.asList("^a.*b$"), NONE);
+        Assert.assertTrue(matcher.matches("x\na-b\r\ny"));
+        Assert.assertTrue(matcher.matches("a--b"));
+        Assert.assertFalse(matcher.matches("a\nb"));
+
+        OutputMatcher forbidden = regexes(NONE, Arrays.asList("^warning:"));
+        Assert.assertTrue(forbidden.matches("note: see warning: above"));
+        Assert.assertFalse(forbidden.matches("ok\nwarning: unchecked"));
+    }
+
+    @Test
+    public void mixedPatterns() {
+        OutputMatcher matcher = new OutputMatcher(Arrays.asList("error"), Arrays.asList("OutOfMemoryError"),
+                Arrays.asList("^\\S+\\.java:\\d+"), NONE, StandardCharsets.UTF_8);
+        Assert.assertTrue(matcher.matches("A.java:12: error: incompatible types"));
+        Assert.assertFalse(matcher.matches("A.java:12: error\njava.lang.OutOfMemoryError"));
+        Assert.assertFalse(matcher.matches("error: no line number"));
+    }
+
+    @Test
+    public void stateIsResetBetweenRuns() {
+        OutputMatcher matcher = literals(Arrays.asList("ab"), NONE);
+        Assert.assertTrue(matcher.matches("xab"));
+        // would be found if the automaton state of the previous run survived
+        Assert.assertFalse(matcher.matches("b"));
+    }
+
+    @Test
+    public void noPatterns() {
+        OutputMatcher matcher = literals(NONE, NONE);
+        Assert.assertTrue(matcher.isEmpty());
+        Assert.assertTrue(matcher.matches("anything"));
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.beust.jcommander.JCommander;
+
+public class PersistentWorkerInvariantTest {
+    private StubInvariantOperations ops;
+    private Path startLog;
+    private Invariant invariant;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+        ops = new StubInvariantOperations();
+        startLog = Files.createTempFile("pmd-test-", ".log");
+        Path script = Files.createTempFile("pmd-test-", ".sh");
+        Files.copy(getClass().getResourceAsStream("scripted-worker.sh"), script, StandardCopyOption.REPLACE_EXISTING);
+
+        PersistentWorkerInvariant.Configuration configuration = new PersistentWorkerInvariant.Configuration();
+        new JCommander(configuration).parse("--expected-output", "ok", "--command-line", "sh " + script + " " + startLog);
+        invariant = configuration.createChecker();
+        invariant.initialize(ops);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (invariant != null) {
+            invariant.close();
+        }
+    }
+
+    private int getStartCount() throws Exception {
+        return Files.readAllLines(startLog, StandardCharsets.UTF_8).size();
+    }
+
+    private void waitForStartCount(int expected) throws Exception {
+        for (int i = 0; i < 100 && getStartCount() < expected; ++i) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(expected, getStartCount());
+    }
+
+    @Test
+    public void workerIsStartedBeforeFirstCheck() throws Exception {
+        waitForStartCount(1);
+        ops.setContents("ok");
+        Assert.assertTrue(invariant.checkIsSatisfied());
+        ops.setContents("failed");
+        Assert.assertFalse(invariant.checkIsSatisfied());
+        Assert.assertEquals(1, getStartCount());
+    }
+
+    @Test
+    public void wronglyTypedReplyRestartsWorker() throws Exception {
+        String[] replies = { "{\"satisfied\": null}", "{\"exitCode\": \"1\"}", "{\"output\": {\"text\": \"ok\"}}" };
+        for (int i = 0; i < replies.length; ++i) {
+            ops.setContents(replies[i]);
+            Assert.assertFalse(invariant.checkIsSatisfied());
+            ops.setContents("ok");
+            Assert.assertTrue(invariant.checkIsSatisfied());
+            Assert.assertEquals(i + 2, getStartCount());
+        }
+    }
+
+    @Test
+    public void abortedCheckStopsBusyWorker() throws Exception {
+        waitForStartCount(1);
+        // an idle worker is kept
+        invariant.abortCheck();
+        ops.setContents("ok");
+        Assert.assertTrue(invariant.checkIsSatisfied());
+        Assert.assertEquals(1, getStartCount());
+
+        ops.setContents("slow");
+        Thread checker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    invariant.checkIsSatisfied();
+                } catch (Exception ex) {
+                    // interrupted, as expected
+                }
+            }
+        });
+        checker.start();
+        Thread.sleep(500);
+        checker.interrupt();
+        invariant.abortCheck();
+        checker.join(10000);
+        Assert.assertFalse(checker.isAlive());
+
+        // the busy worker could not take the next request
+        ops.setContents("ok");
+        Assert.assertTrue(invariant.checkIsSatisfied());
+        Assert.assertEquals(2, getStartCount());
+    }
+}
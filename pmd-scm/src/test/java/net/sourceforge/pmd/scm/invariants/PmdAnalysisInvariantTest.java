@@ -0,0 +1,65 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.LanguageRegistry;
+
+import com.beust.jcommander.JCommander;
+
+public class PmdAnalysisInvariantTest {
+    private static final String CRASHING_RULESET = "net/sourceforge/pmd/scm/invariants/crashing-ruleset.xml";
+
+    private StubInvariantOperations ops;
+
+    @Before
+    public void setUp() throws Exception {
+        ops = new StubInvariantOperations();
+        ops.setLanguageVersion(LanguageRegistry.getLanguage("Java").getDefaultVersion());
+    }
+
+    private Invariant createPmdInvariant(String... args) {
+        PmdAnalysisInvariant.Configuration configuration = new PmdAnalysisInvariant.Configuration();
+        new JCommander(configuration).parse(args);
+        Invariant invariant = configuration.createChecker();
+        invariant.initialize(ops);
+        return invariant;
+    }
+
+    @Test
+    public void exceptionPatternMatchesStackTrace() throws Exception {
+        Invariant invariant = createPmdInvariant("--ruleset", CRASHING_RULESET,
+                "--exception-pattern", "IllegalStateException: Rule crashed on crashFirst$");
+        ops.setContents("class A { void crashFirst() { } }");
+        Assert.assertTrue(invariant.checkIsSatisfied());
+        // crashes differently
+        ops.setContents("class A { void crashSecond() { } }");
+        Assert.assertFalse(invariant.checkIsSatisfied());
+        ops.setContents("class A { void fine() { } }");
+        Assert.assertFalse(invariant.checkIsSatisfied());
+    }
+
+    @Test
+    public void pmdLoggerLevelIsRestored() throws Exception {
+        Logger logger = Logger.getLogger("net.sourceforge.pmd");
+        Level originalLevel = logger.getLevel();
+        logger.setLevel(Level.FINE);
+        try {
+            Invariant invariant = createPmdInvariant("--ruleset", CRASHING_RULESET, "--exception-pattern", "crashed");
+            Assert.assertEquals(Level.FINE, logger.getLevel());
+            ops.setContents("class A { void crash() { } }");
+            Assert.assertTrue(invariant.checkIsSatisfied());
+            Assert.assertEquals(Level.FINE, logger.getLevel());
+        } finally {
+            logger.setLevel(originalLevel);
+        }
+    }
+}
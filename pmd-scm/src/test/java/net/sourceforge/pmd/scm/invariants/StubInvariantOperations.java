@@ -0,0 +1,75 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.invariants;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+
+/**
+ * A single scratch file with the contents set by the test, always parseable.
+ */
+final class StubInvariantOperations implements InvariantOperations {
+    private final Path scratchFile;
+    private String contents = "";
+    private LanguageVersion languageVersion;
+
+    StubInvariantOperations() throws IOException {
+        scratchFile = Files.createTempFile("pmd-test-", ".txt");
+        scratchFile.toFile().deleteOnExit();
+    }
+
+    Path getScratchFile() {
+        return scratchFile;
+    }
+
+    void setContents(String contents) {
+        this.contents = contents;
+    }
+
+    void setLanguageVersion(LanguageVersion languageVersion) {
+        this.languageVersion = languageVersion;
+    }
+
+    @Override
+    public boolean allInputsAreParseable() {
+        return true;
+    }
+
+    @Override
+    public LanguageVersion getLanguageVersion() {
+        return languageVersion;
+    }
+
+    @Override
+    public List<Path> getScratchFiles() {
+        return Collections.singletonList(scratchFile);
+    }
+
+    @Override
+    public String getScratchFileContents(int index) {
+        return contents;
+    }
+
+    @Override
+    public void writeScratchFiles() throws IOException {
+        Files.write(scratchFile, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Path getWorkingDirectory() {
+        return null;
+    }
+
+    @Override
+    public String adaptCommandLine(String commandLine) {
+        return commandLine;
+    }
+}
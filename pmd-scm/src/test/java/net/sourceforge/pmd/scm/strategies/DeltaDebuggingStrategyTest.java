@@ -0,0 +1,100 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.scm.TestHelper;
+
+public class DeltaDebuggingStrategyTest {
+    private static final int UNIT_COUNT = 16;
+
+    private static MinimizationStrategy createStrategy() {
+        return new DeltaDebuggingStrategy.Configuration().createStrategy();
+    }
+
+    private static Node units() {
+        Node[] children = new Node[UNIT_COUNT];
+        for (int i = 0; i < UNIT_COUNT; ++i) {
+            children[i] = new TestNode("Unit", "u" + i);
+        }
+        // the class contains most of the nodes, so it is expanded into its members
+        return new TestNode("Root", "r", new TestNode("Class", "c", children));
+    }
+
+    /**
+     * Get the number of variants submitted by the first batch after the specified number of checks.
+     */
+    private static int getNextBatchSize(SimulatedMinimizer minimizer, int checkCount) {
+        List<Integer> starts = minimizer.getBatchStarts();
+        for (int i = 0; i < starts.size(); ++i) {
+            if (starts.get(i) >= checkCount) {
+                return minimizer.getBatchSizes().get(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int getFirstSuccessfulCheck(SimulatedMinimizer minimizer, Set<String> removal) {
+        int result = minimizer.getCheckedRemovals().indexOf(removal);
+        Assert.assertTrue(result >= 0);
+        return result + 1;
+    }
+
+    @Test
+    public void subsetsAndComplementsAreSubmittedTogether() throws Exception {
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(units(), SimulatedMinimizer.retaining("u1", "u14"));
+        minimizer.run(createStrategy());
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r", "c", "u1", "u14")), minimizer.getRemaining());
+        // two halves, then four subsets with four complements
+        Assert.assertEquals(Arrays.asList(2, 8), minimizer.getBatchSizes().subList(0, 2));
+    }
+
+    @Test
+    public void reductionToSubsetStartsOver() throws Exception {
+        // satisfied by the second quarter, but not by any half
+        SimulatedMinimizer.Oracle oracle = new SimulatedMinimizer.Oracle() {
+            @Override
+            public boolean isSatisfied(Set<String> remaining) {
+                return remaining.contains("u4") && !remaining.contains("u0");
+            }
+        };
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(units(), oracle);
+        minimizer.run(createStrategy());
+
+        Set<String> subsetRemoval = new HashSet<>(Arrays.asList("u0", "u1", "u2", "u3",
+                "u8", "u9", "u10", "u11", "u12", "u13", "u14", "u15"));
+        int restart = getFirstSuccessfulCheck(minimizer, subsetRemoval);
+        // four units left are split into halves again, not into three parts
+        Assert.assertEquals(2, getNextBatchSize(minimizer, restart));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r", "c", "u4")), minimizer.getRemaining());
+    }
+
+    @Test
+    public void reductionToComplementKeepsGranularity() throws Exception {
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(units(), SimulatedMinimizer.retaining("u0", "u8"));
+        minimizer.run(createStrategy());
+
+        Set<String> complementRemoval = new HashSet<>(Arrays.asList("u4", "u5", "u6", "u7"));
+        int restart = getFirstSuccessfulCheck(minimizer, complementRemoval);
+        // twelve units left are split into three parts, one less than before: three subsets and three complements
+        Assert.assertEquals(6, getNextBatchSize(minimizer, restart));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r", "c", "u0", "u8")), minimizer.getRemaining());
+    }
+
+    @Test
+    public void performanceTest() throws Exception {
+        Assert.assertTrue(TestHelper.minimizeRetaining("ddmin", "Available languages:",
+                "greedy-large-input.txt", "ddmin-large-output.txt") <= 18);
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.ast.Node;
+
+public class DependencyGraphTest {
+    private static Set<Node> nodesToRemove(DependencyGraph graph, Node node) {
+        Set<Node> result = new HashSet<>();
+        graph.collectNodesToRemove(result, node);
+        return result;
+    }
+
+    /**
+     * Leaves under a common root, so the nodes to remove with a leaf are exactly its closure.
+     */
+    private static final class FlatGraph {
+        final List<Node> leaves = new ArrayList<>();
+        final Node root;
+        // dependents.get(i) are the indices of the leaves depending on the leaf i
+        final List<Set<Integer>> dependents = new ArrayList<>();
+        final StubNodeInformationProvider provider = new StubNodeInformationProvider();
+
+        FlatGraph(int leafCount) {
+            for (int i = 0; i < leafCount; ++i) {
+                leaves.add(new TestNode("Leaf", "n" + i));
+                dependents.add(new HashSet<Integer>());
+            }
+            root = new TestNode("Root", null, leaves.toArray(new Node[0]));
+        }
+
+        void addDependency(int node, int dependency) {
+            provider.addDependency(leaves.get(node), leaves.get(dependency));
+            dependents.get(dependency).add(node);
+        }
+
+        /**
+         * Computes the closure by a plain search over all the edges, skipping the removed leaves.
+         */
+        Set<Integer> naiveClosure(int start, Set<Integer> removed) {
+            Set<Integer> result = new HashSet<>();
+            Deque<Integer> pending = new ArrayDeque<>();
+            pending.push(start);
+            while (!pending.isEmpty()) {
+                int node = pending.pop();
+                if (!removed.contains(node) && result.add(node)) {
+                    pending.addAll(dependents.get(node));
+                }
+            }
+            return result;
+        }
+    }
+
+    private static void assertClosure(Set<Integer> expected, List<Node> leaves, Set<Node> actual) {
+        Set<Node> expectedNodes = new HashSet<>();
+        for (int index : expected) {
+            expectedNodes.add(leaves.get(index));
+        }
+        Assert.assertEquals(expectedNodes, actual);
+    }
+
+    private static void assertClosuresAreNaive(FlatGraph graph) {
+        DependencyGraph dependencies = new DependencyGraph(graph.provider);
+        dependencies.update(Collections.singletonList(graph.root));
+        for (int i = 0; i < graph.leaves.size(); ++i) {
+            Set<Integer> expected = graph.naiveClosure(i, Collections.<Integer>emptySet());
+            assertClosure(expected, graph.leaves, nodesToRemove(dependencies, graph.leaves.get(i)));
+        }
+    }
+
+    private static Node method(String name) {
+        // the methods differ only by their descendants, just like in the Java AST
+        return new TestNode("Method", null, new TestNode("Name", name));
+    }
+
+    @Test
+    public void removedMiddleSiblingWithSameLabel() {
+        Node fieldA = new TestNode("Field", "a");
+        Node fieldB = new TestNode("Field", "b");
+        Node methodA = method("a");
+        Node methodB = method("b");
+        Node oldRoot = new TestNode("Class", null, fieldA, fieldB, methodA, methodB, method("c"));
+
+        // the same tree re-parsed after methodA was cut off
+        Node newFieldA = new TestNode("Field", "a");
+        Node newFieldB = new TestNode("Field", "b");
+        Node newMethodB = method("b");
+        Node newRoot = new TestNode("Class", null, newFieldA, newFieldB, newMethodB, method("c"));
+
+        StubNodeInformationProvider provider = new StubNodeInformationProvider()
+                .addDependency(methodA, fieldA)
+                .addDependency(methodB, fieldB)
+                .addDependency(newMethodB, newFieldB);
+        DependencyGraph graph = new DependencyGraph(provider);
+        graph.update(Collections.singletonList(oldRoot));
+        Assert.assertTrue(nodesToRemove(graph, fieldB).contains(methodB));
+
+        graph.update(Collections.singletonList(newRoot));
+        Assert.assertEquals(1, graph.getRebuildCount());
+        Assert.assertEquals(Collections.singleton(newFieldA), nodesToRemove(graph, newFieldA));
+        Assert.assertTrue(nodesToRemove(graph, newFieldB).contains(newMethodB));
+    }
+
+    @Test
+    public void cycleIsRemovedAsAWhole() {
+        FlatGraph graph = new FlatGraph(10);
+        for (int i = 0; i < 10; ++i) {
+            graph.addDependency((i + 1) % 10, i);
+        }
+        assertClosuresAreNaive(graph);
+    }
+
+    @Test
+    public void cyclesChainedTogether() {
+        // two cycles, the second one depending on the first one, and a tail depending on the second one
+        FlatGraph graph = new FlatGraph(8);
+        graph.addDependency(1, 0);
+        graph.addDependency(2, 1);
+        graph.addDependency(0, 2);
+        graph.addDependency(4, 3);
+        graph.addDependency(3, 4);
+        graph.addDependency(3, 1);
+        graph.addDependency(5, 4);
+        graph.addDependency(6, 5);
+        assertClosuresAreNaive(graph);
+    }
+
+    @Test
+    public void longChainDoesNotOverflowStack() {
+        int length = 20000;
+        FlatGraph graph = new FlatGraph(length);
+        for (int i = 1; i < length; ++i) {
+            graph.addDependency(i, i - 1);
+        }
+        // the closure of the head is the whole chain
+        DependencyGraph dependencies = new DependencyGraph(graph.provider);
+        dependencies.update(Collections.singletonList(graph.root));
+        Assert.assertEquals(new HashSet<>(graph.leaves), nodesToRemove(dependencies, graph.leaves.get(0)));
+        for (int i = 0; i < length; i += 997) {
+            assertClosure(graph.naiveClosure(i, Collections.<Integer>emptySet()), graph.leaves,
+                    nodesToRemove(dependencies, graph.leaves.get(i)));
+        }
+    }
+
+    @Test
+    public void randomGraphWithManyComponents() {
+        Random random = new Random(42);
+        int size = 200;
+        FlatGraph graph = new FlatGraph(size);
+        for (int i = 0; i < 300; ++i) {
+            graph.addDependency(random.nextInt(size), random.nextInt(size));
+        }
+        assertClosuresAreNaive(graph);
+    }
+
+    @Test
+    public void closuresAreUpdatedAfterRemoval() {
+        Random random = new Random(7);
+        int size = 100;
+        FlatGraph graph = new FlatGraph(size);
+        for (int i = 0; i < 150; ++i) {
+            graph.addDependency(random.nextInt(size), random.nextInt(size));
+        }
+        DependencyGraph dependencies = new DependencyGraph(graph.provider);
+        dependencies.update(Collections.singletonList(graph.root));
+        // compute all the closures before they are invalidated
+        for (Node leaf : graph.leaves) {
+            nodesToRemove(dependencies, leaf);
+        }
+
+        // the same tree re-parsed without every tenth leaf
+        Set<Integer> removed = new HashSet<>();
+        List<Node> newLeaves = new ArrayList<>();
+        List<Node> newChildren = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            Node newLeaf = null;
+            if (i % 10 == 3) {
+                removed.add(i);
+            } else {
+                newLeaf = new TestNode("Leaf", "n" + i);
+                newChildren.add(newLeaf);
+            }
+            newLeaves.add(newLeaf);
+        }
+        dependencies.update(Collections.<Node>singletonList(new TestNode("Root", null, newChildren.toArray(new Node[0]))));
+        Assert.assertEquals(1, dependencies.getRebuildCount());
+        for (int i = 0; i < size; ++i) {
+            if (!removed.contains(i)) {
+                assertClosure(graph.naiveClosure(i, removed), newLeaves, nodesToRemove(dependencies, newLeaves.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void wideNodeWithScatteredRemovals() {
+        int width = 20000;
+        Node[] oldMethods = new Node[width];
+        List<Node> newMethods = new ArrayList<>();
+        StubNodeInformationProvider provider = new StubNodeInformationProvider();
+        for (int i = 0; i < width; ++i) {
+            oldMethods[i] = method("m" + i);
+            if (i % 2 == 1) {
+                provider.addDependency(oldMethods[i], oldMethods[i - 1]);
+            }
+            // every hundredth method is cut off
+            newMethods.add(i % 100 == 50 ? null : method("m" + i));
+        }
+        List<Node> newChildren = new ArrayList<>(newMethods);
+        newChildren.removeAll(Collections.singleton(null));
+        DependencyGraph graph = new DependencyGraph(provider);
+        graph.update(Collections.<Node>singletonList(new TestNode("Class", null, oldMethods)));
+        graph.update(Collections.<Node>singletonList(new TestNode("Class", null, newChildren.toArray(new Node[0]))));
+
+        Assert.assertEquals(1, graph.getRebuildCount());
+        for (int i = 0; i < width; ++i) {
+            Assert.assertSame(newMethods.get(i), graph.getCounterpart(oldMethods[i]));
+        }
+        // the dependencies are carried over as well
+        Node method = newMethods.get(52);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(method, method.jjtGetChild(0), newMethods.get(53))),
+                nodesToRemove(graph, method));
+    }
+
+    @Test
+    public void deepTreeDoesNotOverflowStack() {
+        int depth = 20000;
+        Node oldNode = new TestNode("Leaf", null);
+        Node newNode = new TestNode("Leaf", null);
+        for (int i = 0; i < depth; ++i) {
+            if (i == depth / 2) {
+                // cut off from the new tree
+                oldNode = new TestNode("Block", null, oldNode, new TestNode("Leaf", "cut"));
+            } else {
+                oldNode = new TestNode("Block", null, oldNode);
+            }
+            newNode = new TestNode("Block", null, newNode);
+        }
+        DependencyGraph graph = new DependencyGraph(new StubNodeInformationProvider());
+        graph.update(Collections.singletonList(oldNode));
+        graph.update(Collections.singletonList(newNode));
+
+        Assert.assertEquals(1, graph.getRebuildCount());
+        Assert.assertSame(newNode, graph.getCounterpart(oldNode));
+        Assert.assertEquals(depth + 1, nodesToRemove(graph, newNode).size());
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.scm.TestHelper;
+
+public class HierarchicalDeltaDebuggingStrategyTest {
+    private static MinimizationStrategy createStrategy() {
+        return new HierarchicalDeltaDebuggingStrategy.Configuration().createStrategy();
+    }
+
+    private static Node leaves(String type, String image, int count) {
+        Node[] children = new Node[count];
+        for (int i = 0; i < count; ++i) {
+            children[i] = new TestNode("Leaf", "l" + i);
+        }
+        return new TestNode(type, image, children);
+    }
+
+    /**
+     * Get the depth of the outermost removed nodes, failing if they are at different depths.
+     */
+    private static int getRemovedLevel(SimulatedMinimizer minimizer, Set<String> removal) {
+        int result = Integer.MAX_VALUE;
+        for (String image : removal) {
+            result = Math.min(result, minimizer.getDepth(image));
+        }
+        for (String image : removal) {
+            int depth = minimizer.getDepth(image);
+            // every deeper node is some descendant of the outermost ones, which are removed anyway
+            Assert.assertTrue("mixed levels in " + removal, depth >= result);
+        }
+        return result;
+    }
+
+    @Test
+    public void levelsAreSweptFromTheTop() throws Exception {
+        List<Node> members = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            members.add(new TestNode("Member", "m" + i, new TestNode("Statement", "s" + i, new TestNode("Expression", "e" + i))));
+        }
+        Node root = new TestNode("Root", "r", new TestNode("Class", "c", members.toArray(new Node[0])));
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(root, SimulatedMinimizer.retaining("e3"));
+        minimizer.run(createStrategy());
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r", "c", "m3", "s3", "e3")), minimizer.getRemaining());
+        // the first sweep goes from the top down to the deepest level, only then the next one starts from the top again
+        List<Integer> levels = new ArrayList<>();
+        for (Set<String> removal : minimizer.getCheckedRemovals()) {
+            levels.add(getRemovedLevel(minimizer, removal));
+        }
+        Assert.assertEquals(Integer.valueOf(1), levels.get(0));
+        int firstSweepEnd = 1;
+        while (firstSweepEnd < levels.size() && levels.get(firstSweepEnd) >= levels.get(firstSweepEnd - 1)) {
+            firstSweepEnd += 1;
+        }
+        Assert.assertEquals(Integer.valueOf(4), levels.get(firstSweepEnd - 1));
+        for (int i = firstSweepEnd + 1; i < levels.size(); ++i) {
+            Assert.assertTrue(levels.get(i) >= levels.get(i - 1));
+        }
+    }
+
+    @Test
+    public void levelIsSplitWithIncreasingGranularity() throws Exception {
+        Node root = leaves("Root", "r", 32);
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(root, SimulatedMinimizer.retaining("l5"));
+        minimizer.run(createStrategy());
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r", "l5")), minimizer.getRemaining());
+        // all the nodes, then halves, each granularity as a single batch
+        Assert.assertEquals(Arrays.asList(1, 2), minimizer.getBatchSizes().subList(0, 2));
+        // the successful granularity is kept after restart, so a single necessary node is found by bisection
+        // instead of removing one leaf at a time (31 checks)
+        Assert.assertTrue(minimizer.getCheckCount() <= 2 * 5 + 2);
+    }
+
+    @Test
+    public void performanceTest() throws Exception {
+        Assert.assertTrue(TestHelper.minimizeRetaining("hdd", "Available languages:",
+                "greedy-large-input.txt", "greedy-large-output.txt") <= 35);
+    }
+}
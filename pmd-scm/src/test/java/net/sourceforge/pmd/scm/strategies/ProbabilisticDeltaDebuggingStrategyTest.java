@@ -0,0 +1,134 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.scm.TestHelper;
+
+public class ProbabilisticDeltaDebuggingStrategyTest {
+    private static final int PAIR_COUNT = 10;
+
+    private static MinimizationStrategy createStrategy() {
+        return new ProbabilisticDeltaDebuggingStrategy.Configuration().createStrategy();
+    }
+
+    /**
+     * Removable "Junk" nodes interleaved with necessary "Needed" ones, with the specified image prefixes.
+     */
+    private static Node mixedTree(String junkPrefix, String neededPrefix) {
+        Node[] children = new Node[2 * PAIR_COUNT];
+        for (int i = 0; i < PAIR_COUNT; ++i) {
+            children[2 * i] = new TestNode("Needed", neededPrefix + i);
+            children[2 * i + 1] = new TestNode("Junk", junkPrefix + i);
+        }
+        return new TestNode("Root", "r", children);
+    }
+
+    private static SimulatedMinimizer.Oracle retainingAll(final String neededPrefix) {
+        return new SimulatedMinimizer.Oracle() {
+            @Override
+            public boolean isSatisfied(Set<String> remaining) {
+                for (int i = 0; i < PAIR_COUNT; ++i) {
+                    if (!remaining.contains(neededPrefix + i)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    private static double getLearnedProbability(MinimizationStrategy strategy, String type) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        strategy.printStatistics(new PrintStream(bytes, true));
+        Matcher matcher = Pattern.compile("^  " + type + ": ([0-9.]+) ", Pattern.MULTILINE)
+                .matcher(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertTrue(matcher.find());
+        return Double.parseDouble(matcher.group(1));
+    }
+
+    private static boolean containsPrefix(Set<String> images, String prefix) {
+        for (String image : images) {
+            if (image.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void removalOddsAreLearnedPerNodeType() throws Exception {
+        MinimizationStrategy strategy = createStrategy();
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(mixedTree("j", "n"), retainingAll("n"));
+        minimizer.run(strategy);
+
+        Assert.assertFalse(containsPrefix(minimizer.getRemaining(), "j"));
+        Assert.assertEquals(PAIR_COUNT + 1, minimizer.getRemaining().size());
+        // the failures are blamed mostly on the necessary type
+        double junkProbability = getLearnedProbability(strategy, "Junk");
+        double neededProbability = getLearnedProbability(strategy, "Needed");
+        Assert.assertTrue(neededProbability < 0.1);
+        Assert.assertTrue(junkProbability > 4 * neededProbability);
+    }
+
+    @Test
+    public void gainIsWeightedBySourceText() throws Exception {
+        // a single node with a lot of text, and a group of many nodes with little text in total
+        Node[] members = new Node[20];
+        for (int i = 0; i < members.length; ++i) {
+            members[i] = new TestNode("Member", "g" + i);
+        }
+        Node tree = new TestNode("Root", "r", new TestNode("Text", "big"), new TestNode("Group", "g", members));
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(tree, SimulatedMinimizer.retaining("r"));
+        minimizer.setSize("big", 1000);
+        minimizer.run(createStrategy());
+
+        // the removal most likely to drop most of the text is tried first, not the one with most nodes
+        Assert.assertEquals(Collections.singleton("big"), minimizer.getCheckedRemovals().get(0));
+    }
+
+    @Test
+    public void learnedOddsGuideTheChoice() throws Exception {
+        MinimizationStrategy trained = createStrategy();
+        new SimulatedMinimizer(mixedTree("j", "n"), retainingAll("n")).run(trained);
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        trained.saveState(new DataOutputStream(state));
+
+        // the same types with other images, so nothing is known about the nodes themselves
+        MinimizationStrategy resumed = createStrategy();
+        resumed.loadState(new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+        SimulatedMinimizer informed = new SimulatedMinimizer(mixedTree("a", "b"), retainingAll("b"));
+        informed.run(resumed);
+        SimulatedMinimizer uninformed = new SimulatedMinimizer(mixedTree("a", "b"), retainingAll("b"));
+        uninformed.run(createStrategy());
+
+        Assert.assertEquals(uninformed.getRemaining(), informed.getRemaining());
+        // without statistics, the first removal is a guess mixing both types
+        Assert.assertTrue(containsPrefix(uninformed.getCheckedRemovals().get(0), "b"));
+        // with them, it starts with the junk only
+        Assert.assertFalse(containsPrefix(informed.getCheckedRemovals().get(0), "b"));
+        Assert.assertTrue(informed.getCheckCount() < uninformed.getCheckCount());
+    }
+
+    @Test
+    public void performanceTest() throws Exception {
+        Assert.assertTrue(TestHelper.minimizeRetaining("probdd", "Available languages:",
+                "greedy-large-input.txt", "greedy-large-output.txt") <= 63);
+    }
+}
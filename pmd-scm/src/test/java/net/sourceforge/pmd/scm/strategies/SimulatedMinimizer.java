@@ -0,0 +1,269 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.scm.NodeInformationProvider;
+
+/**
+ * Runs a strategy on a tree built by hand instead of a parsed source, with the invariant decided by the test
+ * from the images of the remaining nodes, so every node of the tree needs a distinct image.
+ *
+ * Like the real minimizer, every successful change restarts the pass with a freshly built tree,
+ * and the variants already checked are not checked again. Every check is recorded for the test to inspect.
+ */
+final class SimulatedMinimizer implements MinimizerOperations {
+    interface Oracle {
+        boolean isSatisfied(Set<String> remaining);
+    }
+
+    private static final class ContinueSignal extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class ExitSignal extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final Node original;
+    private final Map<String, Node> originalNodes = new HashMap<>();
+    private final NodeInformationProvider provider;
+    private final Oracle oracle;
+
+    private final Set<String> removed = new HashSet<>();
+    private final Map<String, String> replacements = new HashMap<>();
+    private final Set<Set<String>> knownVariants = new HashSet<>();
+    // the number of characters each node contributes to the source, 1 if not set
+    private final Map<String, Integer> sizes = new HashMap<>();
+
+    private final List<Set<String>> checkedRemovals = new ArrayList<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+    // the number of checks made before each batch
+    private final List<Integer> batchStarts = new ArrayList<>();
+    private int passCount;
+
+    SimulatedMinimizer(Node original, NodeInformationProvider provider, Oracle oracle) {
+        this.original = original;
+        this.provider = provider;
+        this.oracle = oracle;
+        indexOriginal(original);
+    }
+
+    SimulatedMinimizer(Node original, Oracle oracle) {
+        this(original, new StubNodeInformationProvider(), oracle);
+    }
+
+    /**
+     * The invariant holds while all the nodes with the specified images are left.
+     */
+    static Oracle retaining(String... images) {
+        final List<String> required = Arrays.asList(images);
+        return new Oracle() {
+            @Override
+            public boolean isSatisfied(Set<String> remaining) {
+                return remaining.containsAll(required);
+            }
+        };
+    }
+
+    /**
+     * Sets how many characters of the source the node itself (without its children) takes.
+     */
+    void setSize(String image, int size) {
+        sizes.put(image, size);
+    }
+
+    private void indexOriginal(Node node) {
+        if (originalNodes.put(node.getImage(), node) != null) {
+            throw new IllegalArgumentException("Duplicate image " + node.getImage());
+        }
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+            indexOriginal(node.jjtGetChild(i));
+        }
+    }
+
+    private TestNode build(Node originalNode) {
+        String replacement = replacements.get(originalNode.getImage());
+        if (replacement != null) {
+            return build(originalNodes.get(replacement));
+        }
+        List<Node> children = new ArrayList<>();
+        for (int i = 0; i < originalNode.jjtGetNumChildren(); ++i) {
+            Node child = originalNode.jjtGetChild(i);
+            // a replaced node is removed, but the replacement takes its place
+            if (!removed.contains(child.getImage()) || replacements.containsKey(child.getImage())) {
+                children.add(build(child));
+            }
+        }
+        return new TestNode(originalNode.getXPathNodeName(), originalNode.getImage(), children.toArray(new Node[0]));
+    }
+
+    private static void collectImages(Set<String> result, Node node) {
+        result.add(node.getImage());
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+            collectImages(result, node.jjtGetChild(i));
+        }
+    }
+
+    /**
+     * Runs the strategy until it cannot change anything.
+     */
+    void run(MinimizationStrategy strategy) throws Exception {
+        strategy.initialize(this);
+        while (true) {
+            passCount += 1;
+            TestNode root = build(original);
+            root.placeFrom(1);
+            try {
+                strategy.performSinglePass(Collections.<Node>singletonList(root));
+                return;
+            } catch (ContinueSignal ex) {
+                // restart
+            } catch (ExitSignal ex) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks the variant without the specified nodes, commits it if the invariant holds.
+     */
+    private void check(Set<String> removal) {
+        if (removal.isEmpty()) {
+            return;
+        }
+        Set<String> remaining = getRemaining();
+        remaining.removeAll(removal);
+        if (!knownVariants.add(remaining)) {
+            return;
+        }
+        checkedRemovals.add(removal);
+        if (oracle.isSatisfied(remaining)) {
+            removed.addAll(removal);
+            throw new ContinueSignal();
+        }
+    }
+
+    Set<String> getRemaining() {
+        Set<String> result = new HashSet<>(originalNodes.keySet());
+        result.removeAll(removed);
+        return result;
+    }
+
+    /**
+     * Get the images of the nodes removed by each checked variant, in the order of the checks.
+     */
+    List<Set<String>> getCheckedRemovals() {
+        return checkedRemovals;
+    }
+
+    int getCheckCount() {
+        return checkedRemovals.size();
+    }
+
+    /**
+     * Get the number of variants passed to each {@link #tryRemoveMultipleVariants(Collection)} call.
+     */
+    List<Integer> getBatchSizes() {
+        return batchSizes;
+    }
+
+    /**
+     * Get the number of checks made before each {@link #tryRemoveMultipleVariants(Collection)} call.
+     */
+    List<Integer> getBatchStarts() {
+        return batchStarts;
+    }
+
+    int getPassCount() {
+        return passCount;
+    }
+
+    /**
+     * Get the depth of the node in the original tree, the root having zero.
+     */
+    int getDepth(String image) {
+        int result = 0;
+        for (Node node = originalNodes.get(image); node.jjtGetParent() != null; node = node.jjtGetParent()) {
+            result += 1;
+        }
+        return result;
+    }
+
+    @Override
+    public NodeInformationProvider getNodeInformationProvider() {
+        return provider;
+    }
+
+    @Override
+    public int getRemovedSize(Collection<Node> nodesToRemove) {
+        Set<String> removal = new HashSet<>();
+        for (Node node : nodesToRemove) {
+            collectImages(removal, node);
+        }
+        int result = 0;
+        for (String image : removal) {
+            Integer size = sizes.get(image);
+            result += size == null ? 1 : size;
+        }
+        return result;
+    }
+
+    @Override
+    public void tryCleanup() {
+        // no white space
+    }
+
+    @Override
+    public void tryRemoveNodes(Collection<Node> nodesToRemove) {
+        Set<String> removal = new HashSet<>();
+        for (Node node : nodesToRemove) {
+            collectImages(removal, node);
+        }
+        check(removal);
+    }
+
+    @Override
+    public void tryRemoveMultipleVariants(Collection<Collection<Node>> variants) {
+        batchSizes.add(variants.size());
+        batchStarts.add(checkedRemovals.size());
+        for (Collection<Node> variant : variants) {
+            tryRemoveNodes(variant);
+        }
+    }
+
+    @Override
+    public void tryReplaceNode(Node node, Node replacement) {
+        Set<String> removal = new HashSet<>();
+        collectImages(removal, node);
+        Set<String> kept = new HashSet<>();
+        collectImages(kept, replacement);
+        removal.removeAll(kept);
+        try {
+            check(removal);
+        } catch (ContinueSignal ex) {
+            replacements.put(node.getImage(), replacement.getImage());
+            throw ex;
+        }
+    }
+
+    @Override
+    public void forceRemoveNodesAndExit(Collection<Node> nodesToRemove) {
+        for (Node node : nodesToRemove) {
+            collectImages(removed, node);
+        }
+        throw new ExitSignal();
+    }
+}
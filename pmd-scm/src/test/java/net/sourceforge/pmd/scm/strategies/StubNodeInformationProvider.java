@@ -0,0 +1,59 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.scm.NodeInformationProvider;
+
+/**
+ * Answers the dependency queries from the explicitly added edges, knows no grammar.
+ */
+final class StubNodeInformationProvider implements NodeInformationProvider {
+    private final Map<Node, Set<Node>> dependencies = new HashMap<>();
+    private final Map<Node, Set<Node>> dependingNodes = new HashMap<>();
+
+    private static Set<Node> get(Map<Node, Set<Node>> edges, Node node) {
+        Set<Node> result = edges.get(node);
+        if (result == null) {
+            result = new HashSet<>();
+            edges.put(node, result);
+        }
+        return result;
+    }
+
+    /**
+     * Records that <code>node</code> has to be removed whenever <code>dependency</code> is.
+     */
+    StubNodeInformationProvider addDependency(Node node, Node dependency) {
+        get(dependencies, node).add(dependency);
+        get(dependingNodes, dependency).add(node);
+        return this;
+    }
+
+    @Override
+    public Set<Node> getDirectDependencies(Node node) {
+        return new HashSet<>(get(dependencies, node));
+    }
+
+    @Override
+    public Set<Node> getDirectlyDependingNodes(Node node) {
+        return new HashSet<>(get(dependingNodes, node));
+    }
+
+    @Override
+    public Boolean isOptional(Node node) {
+        return null;
+    }
+
+    @Override
+    public Boolean isReplaceableWith(Node node, Node descendant) {
+        return null;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.scm.NodeInformationProvider;
+import net.sourceforge.pmd.scm.TestHelper;
+
+public class SyntaxGuidedStrategyTest {
+    /**
+     * A grammar where only "Statement", "Block" and "Expression" nodes can be cut off,
+     * and an expression can be replaced with a nested one.
+     */
+    private static final Set<String> OPTIONAL_TYPES = new HashSet<>(Arrays.asList("Statement", "Block", "Expression"));
+
+    private static final NodeInformationProvider GRAMMAR = new NodeInformationProvider() {
+        @Override
+        public Set<Node> getDirectDependencies(Node node) {
+            return new HashSet<>();
+        }
+
+        @Override
+        public Set<Node> getDirectlyDependingNodes(Node node) {
+            return new HashSet<>();
+        }
+
+        @Override
+        public Boolean isOptional(Node node) {
+            return OPTIONAL_TYPES.contains(node.getXPathNodeName());
+        }
+
+        @Override
+        public Boolean isReplaceableWith(Node node, Node descendant) {
+            return "Expression".equals(node.getXPathNodeName()) && "Expression".equals(descendant.getXPathNodeName());
+        }
+    };
+
+    private static MinimizationStrategy createStrategy() {
+        return new SyntaxGuidedStrategy.Configuration().createStrategy();
+    }
+
+    private static Node createTree() {
+        return new TestNode("Root", "r",
+                new TestNode("Block", "b",
+                        new TestNode("Mandatory", "m"),
+                        new TestNode("Statement", "s0"),
+                        new TestNode("Statement", "s1"),
+                        new TestNode("Expression", "e0",
+                                new TestNode("Parentheses", "p",
+                                        new TestNode("Expression", "e1", new TestNode("Leaf", "l"))))));
+    }
+
+    @Test
+    public void onlyOptionalNodesAreRemoved() throws Exception {
+        // the invariant itself does not need the mandatory node, only the grammar does
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(createTree(), GRAMMAR, SimulatedMinimizer.retaining("l"));
+        minimizer.run(createStrategy());
+
+        // a mandatory node is removed only together with its parent
+        for (Set<String> removal : minimizer.getCheckedRemovals()) {
+            Assert.assertFalse(removal.contains("m") && !removal.contains("b"));
+            Assert.assertFalse(removal.contains("p") && !removal.contains("e0"));
+            Assert.assertFalse(removal.contains("l") && !removal.contains("e1"));
+        }
+        Assert.assertTrue(minimizer.getRemaining().contains("m"));
+    }
+
+    @Test
+    public void nodeIsReplacedWithCompatibleDescendant() throws Exception {
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(createTree(), GRAMMAR, SimulatedMinimizer.retaining("l"));
+        minimizer.run(createStrategy());
+
+        // the outer expression together with the parentheses is replaced with the inner one
+        Assert.assertTrue(minimizer.getCheckedRemovals().contains(new HashSet<>(Arrays.asList("e0", "p"))));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r", "b", "m", "e1", "l")), minimizer.getRemaining());
+    }
+
+    @Test
+    public void everyChildIsOptionalWithoutGrammar() throws Exception {
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(createTree(), SimulatedMinimizer.retaining("l"));
+        minimizer.run(createStrategy());
+
+        Assert.assertFalse(minimizer.getRemaining().contains("m"));
+        // nothing is replaced, so the outer expression stays
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r", "b", "e0", "p", "e1", "l")), minimizer.getRemaining());
+    }
+
+    @Test
+    public void performanceTest() throws Exception {
+        Assert.assertTrue(TestHelper.minimizeRetaining("syntax", "Available languages:",
+                "greedy-large-input.txt", "syntax-large-output.txt") <= 26);
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import net.sourceforge.pmd.lang.ast.AbstractNode;
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * A language-neutral AST node for building trees by hand.
+ */
+final class TestNode extends AbstractNode {
+    private final String name;
+
+    TestNode(String name, String image, Node... children) {
+        super(0);
+        this.name = name;
+        setImage(image);
+        for (int i = 0; i < children.length; ++i) {
+            jjtAddChild(children[i], i);
+            children[i].jjtSetParent(this);
+        }
+    }
+
+    /**
+     * Puts every node of the subtree on its own line in document order, as some queries sort the nodes by position.
+     *
+     * @return The line after the subtree
+     */
+    int placeFrom(int line) {
+        beginLine = line;
+        beginColumn = 1;
+        int nextLine = line + 1;
+        for (int i = 0; i < jjtGetNumChildren(); ++i) {
+            nextLine = ((TestNode) jjtGetChild(i)).placeFrom(nextLine);
+        }
+        endLine = nextLine - 1;
+        endColumn = 1;
+        return nextLine;
+    }
+
+    @Override
+    public String getXPathNodeName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return getImage() == null ? name : name + ":" + getImage();
+    }
+}
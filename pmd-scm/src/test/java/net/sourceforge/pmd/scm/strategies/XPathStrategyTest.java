@@ -0,0 +1,93 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.scm.strategies;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.scm.TestHelper;
+
+import com.beust.jcommander.JCommander;
+
+public class XPathStrategyTest {
+    private static final int ANNOTATION_COUNT = 16;
+
+    private static MinimizationStrategy createStrategy(String... args) {
+        XPathStrategy.Configuration configuration = new XPathStrategy.Configuration();
+        new JCommander(configuration).parse(args);
+        return configuration.createStrategy();
+    }
+
+    private static Node createTree() {
+        Node[] members = new Node[ANNOTATION_COUNT + 2];
+        for (int i = 0; i < ANNOTATION_COUNT; ++i) {
+            members[i] = new TestNode("Annotation", "a" + i);
+        }
+        members[ANNOTATION_COUNT] = new TestNode("Method", "m0", new TestNode("Annotation", "inner"));
+        members[ANNOTATION_COUNT + 1] = new TestNode("Method", "m1");
+        return new TestNode("Root", "r", new TestNode("Class", "c", members));
+    }
+
+    private static boolean isMatch(String image) {
+        return image.startsWith("a") || "inner".equals(image);
+    }
+
+    @Test
+    public void necessaryMatchesAreKept() throws Exception {
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(createTree(), SimulatedMinimizer.retaining("a3", "a12"));
+        minimizer.run(createStrategy("--xpath-expression", "//Annotation", "--xpath-keep-invariant"));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r", "c", "m0", "m1", "a3", "a12")), minimizer.getRemaining());
+        List<Set<String>> removals = minimizer.getCheckedRemovals();
+        // all the matches at once first, then both halves of them
+        Set<String> allMatches = new HashSet<>(removals.get(0));
+        Assert.assertEquals(ANNOTATION_COUNT + 1, allMatches.size());
+        Assert.assertEquals(ANNOTATION_COUNT / 2, removals.get(1).size());
+        Set<String> halves = new HashSet<>(removals.get(1));
+        halves.addAll(removals.get(2));
+        Assert.assertEquals(allMatches, halves);
+        for (Set<String> removal : removals) {
+            for (String image : removal) {
+                Assert.assertTrue(isMatch(image));
+            }
+        }
+        // the necessary matches are the last ones left, each failing to be removed alone
+        Assert.assertEquals(Collections.singleton("a3"), removals.get(removals.size() - 2));
+        Assert.assertEquals(Collections.singleton("a12"), removals.get(removals.size() - 1));
+    }
+
+    @Test
+    public void unnecessaryMatchesAreRemovedAtOnce() throws Exception {
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(createTree(), SimulatedMinimizer.retaining("m1"));
+        minimizer.run(createStrategy("--xpath-expression", "//Annotation", "--xpath-keep-invariant"));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r", "c", "m0", "m1")), minimizer.getRemaining());
+        Assert.assertEquals(1, minimizer.getCheckCount());
+    }
+
+    @Test
+    public void allMatchesAreRemovedWithoutKeepingInvariant() throws Exception {
+        SimulatedMinimizer minimizer = new SimulatedMinimizer(createTree(), SimulatedMinimizer.retaining("a3"));
+        minimizer.run(createStrategy("--xpath-expression", "//Annotation"));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("r", "c", "m0", "m1")), minimizer.getRemaining());
+        Assert.assertEquals(0, minimizer.getCheckCount());
+    }
+
+    @Test
+    public void performanceTest() throws Exception {
+        // all the members except for the one printing the message
+        Assert.assertTrue(TestHelper.minimizeRetaining("xpath", "Available languages:",
+                "greedy-large-input.txt", "xpath-large-output.txt",
+                "--xpath-expression", "//ClassOrInterfaceBodyDeclaration", "--xpath-keep-invariant") <= 10);
+    }
+}
@@ -0,0 +1,10 @@
+#!/bin/sh
+# Prints the scratch file like cat, copying the checkpoint aside on the N-th run as if the minimizer was killed then
+# Arguments: scratch file, checkpoint directory, N, copy destination
+count=$(cat "$2.count" 2>/dev/null || echo 0)
+count=$((count + 1))
+echo "$count" > "$2.count"
+if [ "$count" -eq "$3" ]; then
+    cp "$2/checkpoint.bin" "$4"
+fi
+cat "$1"
@@ -0,0 +1,13 @@
+#!/bin/sh
+# Persistent worker for tests: logs every start to the file passed as the argument, then replies
+# with the requested file itself if it is a JSON object, hangs on "slow" and reports the file as the output otherwise
+echo started >> "$1"
+while IFS= read -r request; do
+    file=$(printf '%s' "$request" | sed 's/.*"files":\["\([^"]*\)".*/\1/')
+    contents=$(cat "$file")
+    case "$contents" in
+        "{"*) printf '%s\n' "$contents" ;;
+        slow) sleep 60 ;;
+        *) printf '{"output":"%s"}\n' "$contents" ;;
+    esac
+done
@@ -0,0 +1,7 @@
+#!/bin/sh
+# Trivial persistent worker: replies whether the first requested file mentions testRemoval
+while IFS= read -r request; do
+    file=$(printf '%s' "$request" | sed 's/.*"files":\["\([^"]*\)".*/\1/')
+    found=$(grep -o testRemoval "$file" | head -n 1)
+    printf '{"output":"%s"}\n' "$found"
+done
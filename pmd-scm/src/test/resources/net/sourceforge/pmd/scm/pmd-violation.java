@@ -0,0 +1,20 @@
+/**
+ * This is a test file for minimization retaining a PMD rule violation
+ */
+
+import java.util.List;
+
+public class PmdViolation {
+    private int used = 1;
+    private final String unusedField = "never read";
+
+    public int getUsed() {
+        return used;
+    }
+
+    public void print(List<String> lines) {
+        for (String line : lines) {
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,3 @@
+public class PmdViolation {
+    private final String unusedField = "never read";
+}
@@ -0,0 +1,3 @@
+#!/bin/sh
+# Prints the file like cat
+cat "$1"
@@ -0,0 +1,8 @@
+#!/bin/sh
+# Prints the scratch file like cat, logging its size if it still retains the message, or "-" otherwise
+if grep -q "Available languages:" "$1"; then
+    wc -c < "$1" | tr -d ' ' >> "$2"
+else
+    echo - >> "$2"
+fi
+cat "$1"